@@ -1,12 +1,25 @@
 package com.andyadc.zuul;
 
+import com.andyadc.zuul.constants.ZuulConstants;
 import com.andyadc.zuul.context.Debug;
 import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.context.RoutingTrace;
+import com.andyadc.zuul.exception.StacklessZuulException;
 import com.andyadc.zuul.exception.ZuulException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This the the core class to execute filters.
@@ -17,9 +30,26 @@ public class FilterProcessor {
 	private static FilterProcessor INSTANCE = new FilterProcessor();
 
 	private FilterUsageNotifier usageNotifier;
+	private ExecutorService timedFilterExecutor;
 
 	public FilterProcessor() {
-		usageNotifier = new BasicFilterUsageNotifier();
+		usageNotifier = new StripedFilterUsageNotifier();
+		timedFilterExecutor = newTimedFilterExecutor();
+	}
+
+	/**
+	 * Threads used to run filters that declare a time budget, at most "zuul.filter.timed.max-threads" (200 by default).
+	 * Idle threads are reclaimed. A filter that doesn't stop when interrupted holds its thread after a timeout, so the
+	 * pool also bounds the threads such filters can pile up; beyond it, timed filters are rejected as over their limit.
+	 */
+	private static ExecutorService newTimedFilterExecutor() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		int maxThreads = Integer.getInteger(ZuulConstants.ZUUL_FILTER_TIMED_MAX_THREADS, 200);
+		return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			Thread t = new Thread(r, "ZuulTimedFilter-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
 	}
 
 	/**
@@ -45,6 +75,20 @@ public class FilterProcessor {
 		this.usageNotifier = notifier;
 	}
 
+	/**
+	 * @return the current filter usage notifier
+	 */
+	public FilterUsageNotifier getFilterUsageNotifier() {
+		return usageNotifier;
+	}
+
+	/**
+	 * Override the executor used to run filters that declare a filterTimeoutMillis().
+	 */
+	public void setTimedFilterExecutor(ExecutorService executor) {
+		this.timedFilterExecutor = executor;
+	}
+
 	/**
 	 * runs "post" filters which are called after "route" filters. ZuulExceptions from ZuulFilters are thrown.
 	 * Any other Throwables are caught and a ZuulException is thrown out with a 500 status code
@@ -127,6 +171,8 @@ public class FilterProcessor {
 
 		RequestContext ctx = RequestContext.getCurrentContext();
 		boolean bDebug = ctx.debugRouting();
+		// with debugRouting on, the debug lines already go to the trace
+		RoutingTrace trace = bDebug ? null : ctx.getRoutingTrace();
 		final String metricPrefix = "zuul.filter-";
 		long execTime = 0;
 		String filterName = "";
@@ -134,16 +180,16 @@ public class FilterProcessor {
 			long ltime = System.currentTimeMillis();
 			filterName = filter.getClass().getSimpleName();
 
-			RequestContext copy = null;
+			int journalPosition = 0;
 			Object o = null;
 			Throwable t = null;
 
 			if (bDebug) {
 				Debug.addRoutingDebug("Filter " + filter.filterType() + " " + filter.filterOrder() + " " + filterName);
-				copy = ctx.copy();
+				journalPosition = ctx.startJournal(filterName);
 			}
 
-			ZuulFilterResult result = filter.runFilter();
+			ZuulFilterResult result = runFilter(filter, filterName);
 			ExecutionStatus s = result.getStatus();
 			execTime = System.currentTimeMillis() - ltime;
 
@@ -157,7 +203,7 @@ public class FilterProcessor {
 					ctx.addFilterExecutionSummary(filterName, ExecutionStatus.SUCCESS.name(), execTime);
 					if (bDebug) {
 						Debug.addRoutingDebug("Filter {" + filterName + " TYPE:" + filter.filterType() + " ORDER:" + filter.filterOrder() + "} Execution time = " + execTime + "ms");
-						Debug.compareContextState(filterName, copy);
+						Debug.compareContextState(filterName, journalPosition);
 					}
 					break;
 				default:
@@ -165,6 +211,9 @@ public class FilterProcessor {
 			}
 
 			if (t != null) throw t;
+			if (trace != null) {
+				trace.addFilterEvent(filter.filterType(), filter.filterOrder(), filterName, s.name(), execTime);
+			}
 
 			usageNotifier.notify(filter, s);
 			return o;
@@ -172,15 +221,98 @@ public class FilterProcessor {
 			if (bDebug) {
 				Debug.addRoutingDebug("Running Filter failed " + filterName + " type:" + filter.filterType() + " order:" + filter.filterOrder() + " " + e.getMessage());
 			}
+			if (trace != null) {
+				trace.addFilterEvent(filter.filterType(), filter.filterOrder(), filterName, ExecutionStatus.FAILED.name(), execTime);
+			}
 			usageNotifier.notify(filter, ExecutionStatus.FAILED);
 			if (e instanceof ZuulException) {
 				throw (ZuulException) e;
 			} else {
-				ZuulException ex = new ZuulException(e, "Filter threw Exception", 500, filter.filterType() + ":" + filterName);
+				// the cause already carries the stack trace, don't fill in another one for the wrapper
+				ZuulException ex = new StacklessZuulException(e, "Filter threw Exception", 500, filter.filterType() + ":" + filterName);
 				ctx.addFilterExecutionSummary(filterName, ExecutionStatus.FAILED.name(), execTime);
 				throw ex;
 			}
+		} finally {
+			if (bDebug) {
+				ctx.stopJournal();
+			}
+		}
+	}
+
+	/**
+	 * Runs a filter within its declared concurrency limit and time budget. Filters without a time budget run on the
+	 * calling thread; the others run on a worker thread bound to a fork() of the current RequestContext while the
+	 * caller waits for at most filterTimeoutMillis(). The fork is joined back when the filter completes in time and
+	 * dropped otherwise, so a filter that keeps running after its timeout can't change the request. Overruns fail
+	 * with a ZuulException, or result in SKIPPED for optional filters.
+	 *
+	 * @return the ZuulFilterResult of the filter
+	 */
+	ZuulFilterResult runFilter(final ZuulFilter filter, String filterName) throws ZuulException {
+		final Semaphore bulkhead = filter.bulkhead();
+		if (bulkhead != null && !bulkhead.tryAcquire()) {
+			return overrun(filter, filterName, false);
+		}
+		long timeout = filter.filterTimeoutMillis();
+		if (timeout <= 0) {
+			try {
+				return filter.runFilter();
+			} finally {
+				if (bulkhead != null) bulkhead.release();
+			}
+		}
+
+		final RequestContext ctx = RequestContext.getCurrentContext();
+		final RequestContext fork = ctx.fork();
+		Future<ZuulFilterResult> future;
+		try {
+			future = timedFilterExecutor.submit(() -> {
+				RequestContext.setCurrentContext(fork);
+				try {
+					return filter.runFilter();
+				} finally {
+					RequestContext.setCurrentContext(null);
+					if (bulkhead != null) bulkhead.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (bulkhead != null) bulkhead.release();
+			return overrun(filter, filterName, false);
+		}
+
+		try {
+			ZuulFilterResult result = future.get(timeout, TimeUnit.MILLISECONDS);
+			ctx.join(fork);
+			return result;
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			return overrun(filter, filterName, true);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ZuulException(e, 500, "FILTER_INTERRUPTED_" + filterName);
+		} catch (ExecutionException e) {
+			ctx.join(fork);
+			ZuulFilterResult result = new ZuulFilterResult(ExecutionStatus.FAILED);
+			result.setException(e.getCause());
+			return result;
+		}
+	}
+
+	private ZuulFilterResult overrun(ZuulFilter filter, String filterName, boolean timedOut) throws ZuulException {
+		if (filter.isOptionalFilter()) {
+			if (RequestContext.getCurrentContext().debugRouting()) {
+				Debug.addRoutingDebug("Skipping optional Filter " + filterName + (timedOut ? " on timeout" : " over concurrency limit"));
+			}
+			return new ZuulFilterResult(ExecutionStatus.SKIPPED);
+		}
+		// overruns are expected under load: don't fill in a stack trace, but create one per request as error filters
+		// may change the exception
+		if (timedOut) {
+			throw new StacklessZuulException("Filter " + filterName + " timed out", 504, "FILTER_TIMEOUT_" + filterName);
 		}
+		throw new StacklessZuulException("Filter " + filterName + " is over its concurrency limit", 503, "FILTER_CONCURRENCY_LIMIT_EXCEEDED_" + filterName);
 	}
 
 	/**
@@ -0,0 +1,232 @@
+package com.andyadc.zuul;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts filter executions by filter, filterType and ExecutionStatus. Filters are told apart by their fully qualified
+ * class name.
+ * Every filter gets an integer id on first use, so counting is an array lookup and a LongAdder increment;
+ * no metric names are built and nothing is allocated per call.
+ * Totals are available through snapshot(), and deltas since the last export can be pushed periodically to a
+ * UsageExporter.
+ */
+public class StripedFilterUsageNotifier implements FilterUsageNotifier {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StripedFilterUsageNotifier.class);
+	private static final ExecutionStatus[] STATUSES = ExecutionStatus.values();
+	private static final int DEFAULT_CAPACITY = 128;
+
+	// ids are shared by all notifiers so that a filter only needs to be resolved once
+	private static final Map<String, Integer> FILTER_IDS = new ConcurrentHashMap<>();
+	private static final AtomicInteger NEXT_FILTER_ID = new AtomicInteger();
+
+	private volatile Row[] rows;
+	private long[][] lastExported = new long[0][];
+	private ScheduledExecutorService exportScheduler;
+
+	public StripedFilterUsageNotifier() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity the number of distinct filters to size the counter matrix for
+	 */
+	public StripedFilterUsageNotifier(int initialCapacity) {
+		rows = new Row[Math.max(initialCapacity, 1)];
+	}
+
+	@Override
+	public void notify(ZuulFilter filter, ExecutionStatus status) {
+		int id = filterId(filter);
+		Row[] r = rows;
+		Row row = id < r.length ? r[id] : null;
+		if (row == null) {
+			row = addRow(id, filter);
+		}
+		row.counts[status.ordinal()].increment();
+	}
+
+	static int filterId(ZuulFilter filter) {
+		int id = filter.usageId;
+		if (id < 0) {
+			id = FILTER_IDS.computeIfAbsent(key(filter), k -> NEXT_FILTER_ID.getAndIncrement());
+			filter.usageId = id;
+		}
+		return id;
+	}
+
+	// the fully qualified name, so that filters of the same simple name in different packages are counted apart
+	private static String key(ZuulFilter filter) {
+		return filter.getClass().getName() + ":" + filter.filterType();
+	}
+
+	private synchronized Row addRow(int id, ZuulFilter filter) {
+		Row[] r = rows;
+		if (id >= r.length) {
+			Row[] grown = new Row[Math.max(id + 1, r.length * 2)];
+			System.arraycopy(r, 0, grown, 0, r.length);
+			r = grown;
+		}
+		Row row = r[id];
+		if (row == null) {
+			row = new Row(filter.getClass().getName(), filter.filterType());
+			r[id] = row;
+		}
+		rows = r;
+		return row;
+	}
+
+	/**
+	 * @return the total counts for every filter seen so far
+	 */
+	public List<FilterUsage> snapshot() {
+		Row[] r = rows;
+		List<FilterUsage> list = new ArrayList<>();
+		for (Row row : r) {
+			if (row != null) {
+				list.add(new FilterUsage(row.filterName, row.filterType, row.sum()));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the counts accumulated since the previous call. Filters without any new executions are left out.
+	 *
+	 * @return the per filter deltas
+	 */
+	public synchronized List<FilterUsage> deltaSnapshot() {
+		Row[] r = rows;
+		if (lastExported.length < r.length) {
+			long[][] grown = new long[r.length][];
+			System.arraycopy(lastExported, 0, grown, 0, lastExported.length);
+			lastExported = grown;
+		}
+		List<FilterUsage> list = new ArrayList<>();
+		for (int i = 0; i < r.length; i++) {
+			Row row = r[i];
+			if (row == null) continue;
+			long[] current = row.sum();
+			long[] previous = lastExported[i];
+			long[] delta = new long[current.length];
+			boolean changed = false;
+			for (int s = 0; s < current.length; s++) {
+				delta[s] = current[s] - (previous == null ? 0 : previous[s]);
+				changed |= delta[s] != 0;
+			}
+			lastExported[i] = current;
+			if (changed) {
+				list.add(new FilterUsage(row.filterName, row.filterType, delta));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Starts pushing deltaSnapshot() to the exporter every period. A previously started export is stopped first.
+	 */
+	public synchronized void startExport(long period, TimeUnit unit, final UsageExporter exporter) {
+		stopExport();
+		exportScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ZuulFilterUsageExporter");
+			t.setDaemon(true);
+			return t;
+		});
+		exportScheduler.scheduleAtFixedRate(() -> {
+			try {
+				List<FilterUsage> deltas = deltaSnapshot();
+				if (!deltas.isEmpty()) {
+					exporter.export(deltas);
+				}
+			} catch (Throwable e) {
+				LOG.error("Error exporting filter usage", e);
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Stops the periodic export
+	 */
+	public synchronized void stopExport() {
+		if (exportScheduler != null) {
+			exportScheduler.shutdownNow();
+			exportScheduler = null;
+		}
+	}
+
+	/**
+	 * Callback receiving the filter usage deltas
+	 */
+	public interface UsageExporter {
+		void export(List<FilterUsage> deltas);
+	}
+
+	/**
+	 * Immutable usage counts of one filter
+	 */
+	public static final class FilterUsage {
+		private final String filterName;
+		private final String filterType;
+		private final long[] counts;
+
+		FilterUsage(String filterName, String filterType, long[] counts) {
+			this.filterName = filterName;
+			this.filterType = filterType;
+			this.counts = counts;
+		}
+
+		public String getFilterName() {
+			return filterName;
+		}
+
+		public String getFilterType() {
+			return filterType;
+		}
+
+		public long getCount(ExecutionStatus status) {
+			return counts[status.ordinal()];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(filterName).append('[').append(filterType).append(']');
+			for (ExecutionStatus s : STATUSES) {
+				sb.append(' ').append(s.name()).append('=').append(counts[s.ordinal()]);
+			}
+			return sb.toString();
+		}
+	}
+
+	private static final class Row {
+		final String filterName;
+		final String filterType;
+		final LongAdder[] counts = new LongAdder[STATUSES.length];
+
+		Row(String filterName, String filterType) {
+			this.filterName = filterName;
+			this.filterType = filterType;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		long[] sum() {
+			long[] sums = new long[counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				sums[i] = counts[i].sum();
+			}
+			return sums;
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.andyadc.zuul;
 import com.andyadc.zuul.monitoring.Tracer;
 import com.andyadc.zuul.monitoring.TracerFactory;
 
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -18,10 +19,16 @@ import java.util.concurrent.atomic.AtomicReference;
  * ZuulFilters may be disabled using Archius Properties.
  * <p/>
  * By default ZuulFilters are static; they don't carry state. This may be overridden by overriding the isStaticFilter() property to false
+ * <p/>
+ * A filter may declare a time budget with filterTimeoutMillis() and a bulkhead with filterMaxConcurrency(). Both are
+ * enforced by the FilterProcessor. Overruns of an optional filter (see isOptionalFilter()) are treated as a skip.
  */
 public abstract class ZuulFilter implements IZuulFilter, Comparable<ZuulFilter> {
 
     private final AtomicReference<Boolean> filterDisabled = new AtomicReference<>(false);
+    private volatile Semaphore bulkhead;
+    int usageId = -1;
+    private String tracerName;
 
     /**
      * to classify a filter by type. Standard types in Zuul are "pre" for pre-routing filtering,
@@ -64,6 +71,54 @@ public abstract class ZuulFilter implements IZuulFilter, Comparable<ZuulFilter>
         return filterDisabled.get();
     }
 
+    /**
+     * The maximum time in milliseconds the run() method may take. When exceeded, the FilterProcessor stops waiting for
+     * the filter and either fails the request or skips the filter, depending on isOptionalFilter().
+     *
+     * @return the time budget in milliseconds, 0 or less for no limit (the default)
+     */
+    public long filterTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * The maximum number of concurrent executions of this filter. Requests over this limit are rejected immediately
+     * rather than queued, or skipped if isOptionalFilter() is true.
+     *
+     * @return the concurrency limit, 0 or less for no limit (the default)
+     */
+    public int filterMaxConcurrency() {
+        return 0;
+    }
+
+    /**
+     * An optional filter is skipped when it exceeds its time budget or concurrency limit instead of failing the request.
+     *
+     * @return false by default
+     */
+    public boolean isOptionalFilter() {
+        return false;
+    }
+
+    /**
+     * @return the semaphore enforcing filterMaxConcurrency(), or null if the filter has no concurrency limit
+     */
+    Semaphore bulkhead() {
+        Semaphore s = bulkhead;
+        if (s == null) {
+            int max = filterMaxConcurrency();
+            if (max <= 0) return null;
+            synchronized (this) {
+                s = bulkhead;
+                if (s == null) {
+                    s = new Semaphore(max);
+                    bulkhead = s;
+                }
+            }
+        }
+        return s;
+    }
+
     /**
      * runFilter checks !isFilterDisabled() and shouldFilter(). The run() method is invoked if both are true.
      *
@@ -73,12 +128,17 @@ public abstract class ZuulFilter implements IZuulFilter, Comparable<ZuulFilter>
         ZuulFilterResult zr = new ZuulFilterResult();
         if (!isFilterDisabled()) {
             if (shouldFilter()) {
-                Tracer t = TracerFactory.instance().startMicroTracer("ZUUL::" + this.getClass().getSimpleName());
+                String name = tracerName;
+                if (name == null) {
+                    name = "ZUUL::" + this.getClass().getSimpleName();
+                    tracerName = name;
+                }
+                Tracer t = TracerFactory.instance().startMicroTracer(name);
                 try {
                     Object res = run();
                     zr = new ZuulFilterResult(res, ExecutionStatus.SUCCESS);
                 } catch (Throwable e) {
-                    t.setName("ZUUL::" + this.getClass().getSimpleName() + " failed");
+                    t.setName(name + " failed");
                     zr = new ZuulFilterResult(ExecutionStatus.FAILED);
                     zr.setException(e);
                 } finally {
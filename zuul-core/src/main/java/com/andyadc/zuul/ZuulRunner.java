@@ -1,6 +1,7 @@
 package com.andyadc.zuul;
 
 import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.context.RoutingTraceSampler;
 import com.andyadc.zuul.exception.ZuulException;
 import com.andyadc.zuul.http.HttpServletRequestWrapper;
 import com.andyadc.zuul.http.HttpServletResponseWrapper;
@@ -43,6 +44,7 @@ public class ZuulRunner {
         }
 
         ctx.setResponse(new HttpServletResponseWrapper(servletResponse));
+        RoutingTraceSampler.getInstance().sample(ctx);
     }
 
     /**
@@ -0,0 +1,110 @@
+package com.andyadc.zuul.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Direct memory for the bodies of a ResponseCache. The memory is allocated in slabs of 1MB as the cache fills, up to
+ * the cache's size, and is never given back; the slabs are cut into blocks of BLOCK_SIZE bytes that bodies take and
+ * return. Storing and evicting bodies thus allocates no direct buffers and doesn't wait on the GC to free any.
+ * <p>
+ * A body's blocks need not be adjacent, so freed space is always reusable. Blocks are handed out and returned under
+ * this object's monitor; their contents are only written before the body is published.
+ */
+final class BodySlabs {
+
+	static final int BLOCK_SIZE = 1024;
+	private static final int BLOCKS_PER_SLAB = 1024;
+
+	private final int maxBlocks;
+	private final ByteBuffer[] slabs;
+	// guarded by this
+	private int[] free = new int[BLOCKS_PER_SLAB];
+	private int freeCount;
+	private int untouched;
+
+	/**
+	 * @param maxBytes the direct memory the slabs may take in all
+	 */
+	BodySlabs(long maxBytes) {
+		this.maxBlocks = (int) Math.min(Integer.MAX_VALUE - BLOCKS_PER_SLAB, maxBytes / BLOCK_SIZE);
+		this.slabs = new ByteBuffer[(maxBlocks + BLOCKS_PER_SLAB - 1) / BLOCKS_PER_SLAB];
+	}
+
+	/**
+	 * @return the bytes a body of the length takes in blocks
+	 */
+	static int footprint(int length) {
+		return (int) (((long) length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+	}
+
+	/**
+	 * Takes the blocks for a body
+	 *
+	 * @return the body, with one reference held by the caller; null if there aren't enough free blocks
+	 */
+	SlabBody allocate(int length) {
+		int count = footprint(length) / BLOCK_SIZE;
+		int[] blocks = new int[count];
+		synchronized (this) {
+			if (freeCount + maxBlocks - untouched < count) return null;
+			for (int i = 0; i < count; i++) {
+				blocks[i] = freeCount > 0 ? free[--freeCount] : touch();
+			}
+		}
+		return new SlabBody(this, blocks, length);
+	}
+
+	/**
+	 * @return a block never used before, allocating its slab if it is the first of it
+	 */
+	private int touch() {
+		int block = untouched++;
+		int slab = block / BLOCKS_PER_SLAB;
+		if (slabs[slab] == null) {
+			int blocks = Math.min(BLOCKS_PER_SLAB, maxBlocks - slab * BLOCKS_PER_SLAB);
+			slabs[slab] = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE);
+		}
+		return block;
+	}
+
+	/**
+	 * Returns the blocks of a body that is no longer used
+	 */
+	synchronized void free(int[] blocks) {
+		if (freeCount + blocks.length > free.length) {
+			free = Arrays.copyOf(free, Math.max(freeCount + blocks.length, free.length * 2));
+		}
+		System.arraycopy(blocks, 0, free, freeCount, blocks.length);
+		freeCount += blocks.length;
+	}
+
+	/**
+	 * @return a view of the block, positioned at its start
+	 */
+	ByteBuffer block(int block) {
+		ByteBuffer view = slabs[block / BLOCKS_PER_SLAB].duplicate();
+		int offset = (block % BLOCKS_PER_SLAB) * BLOCK_SIZE;
+		view.limit(offset + BLOCK_SIZE);
+		view.position(offset);
+		return view;
+	}
+
+	/**
+	 * @return the bytes of direct memory allocated so far
+	 */
+	synchronized long getAllocatedBytes() {
+		long bytes = 0;
+		for (ByteBuffer slab : slabs) {
+			if (slab != null) bytes += slab.capacity();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the bytes of the blocks taken by bodies
+	 */
+	synchronized long getUsedBytes() {
+		return (long) (untouched - freeCount) * BLOCK_SIZE;
+	}
+}
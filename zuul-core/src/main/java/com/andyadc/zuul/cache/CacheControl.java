@@ -0,0 +1,126 @@
+package com.andyadc.zuul.cache;
+
+import java.util.List;
+
+/**
+ * The directives of Cache-Control header values that matter to a shared cache
+ */
+public class CacheControl {
+
+	/**
+	 * no Cache-Control directives
+	 */
+	public static final CacheControl NONE = new CacheControl();
+
+	private boolean noStore;
+	private boolean noCache;
+	private boolean isPrivate;
+	private boolean isPublic;
+	private boolean mustRevalidate;
+	private long maxAge = -1;
+	private long sMaxAge = -1;
+
+	private CacheControl() {
+	}
+
+	/**
+	 * @param values the Cache-Control header values, may be empty
+	 */
+	public static CacheControl parse(List<String> values) {
+		if (values == null || values.isEmpty()) return NONE;
+		CacheControl cc = new CacheControl();
+		for (String value : values) {
+			if (value != null) cc.parseDirectives(value);
+		}
+		return cc;
+	}
+
+	/**
+	 * @param value a Cache-Control header value, may be null
+	 */
+	public static CacheControl parse(String value) {
+		if (value == null) return NONE;
+		CacheControl cc = new CacheControl();
+		cc.parseDirectives(value);
+		return cc;
+	}
+
+	private void parseDirectives(String value) {
+		int pos = 0;
+		int length = value.length();
+		while (pos < length) {
+			int end = value.indexOf(',', pos);
+			if (end < 0) end = length;
+			int eq = value.indexOf('=', pos);
+			String name = value.substring(pos, eq < 0 || eq > end ? end : eq).trim();
+			String arg = eq < 0 || eq > end ? null : unquote(value.substring(eq + 1, end).trim());
+			if (name.equalsIgnoreCase("no-store")) {
+				noStore = true;
+			} else if (name.equalsIgnoreCase("no-cache")) {
+				// no-cache="field" only restricts the fields; treat it as no-cache anyway, which is safe
+				noCache = true;
+			} else if (name.equalsIgnoreCase("private")) {
+				isPrivate = true;
+			} else if (name.equalsIgnoreCase("public")) {
+				isPublic = true;
+			} else if (name.equalsIgnoreCase("must-revalidate") || name.equalsIgnoreCase("proxy-revalidate")) {
+				mustRevalidate = true;
+			} else if (name.equalsIgnoreCase("max-age")) {
+				maxAge = seconds(arg);
+			} else if (name.equalsIgnoreCase("s-maxage")) {
+				sMaxAge = seconds(arg);
+			}
+			pos = end + 1;
+		}
+	}
+
+	private static String unquote(String s) {
+		return s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"' ? s.substring(1, s.length() - 1) : s;
+	}
+
+	/**
+	 * @return the delta-seconds argument, 0 if it is malformed (which makes the response stale)
+	 */
+	private static long seconds(String arg) {
+		if (arg == null) return 0;
+		try {
+			return Math.max(0, Long.parseLong(arg));
+		} catch (NumberFormatException e) {
+			return arg.matches("\\d+") ? Long.MAX_VALUE : 0;
+		}
+	}
+
+	public boolean isNoStore() {
+		return noStore;
+	}
+
+	public boolean isNoCache() {
+		return noCache;
+	}
+
+	public boolean isPrivate() {
+		return isPrivate;
+	}
+
+	public boolean isPublic() {
+		return isPublic;
+	}
+
+	public boolean isMustRevalidate() {
+		return mustRevalidate;
+	}
+
+	/**
+	 * @return max-age in seconds, -1 if absent
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @return s-maxage in seconds, -1 if absent
+	 */
+	public long getSMaxAge() {
+		return sMaxAge;
+	}
+}
@@ -0,0 +1,217 @@
+package com.andyadc.zuul.cache;
+
+import com.andyadc.zuul.http.ServletInputStreamWrapper;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.ServletInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cached response: status, headers and body. An entry stored in a ResponseCache holds its body in the cache's
+ * direct memory slabs, outside the Java heap, until it is evicted and no stream reads the body anymore; other entries
+ * hold it in a heap buffer. Entries are immutable; a revalidated response replaces its entry with a new one sharing
+ * the body.
+ */
+public class CacheEntry {
+
+	private static final int HEADER_OVERHEAD = 32;
+
+	private final int status;
+	private final List<Pair<String, String>> headers;
+	// one of the two is set
+	private final ByteBuffer body;
+	private final SlabBody slabBody;
+	private final int bodyLength;
+	private final long responseTimeMillis;
+	private final long initialAgeSeconds;
+	private final long lifetimeSeconds;
+	private final String[] varyNames;
+	private final String[] varyValues;
+	private final int size;
+
+	/**
+	 * @param headers            the response headers without Content-Length and hop-by-hop headers
+	 * @param body               the body
+	 * @param responseTimeMillis when the response was received
+	 * @param initialAgeSeconds  the age of the response when it was received, from its Age header
+	 * @param lifetimeSeconds    how long the response is fresh, counted from its initial age
+	 * @param varyNames          the lower case names of the request headers the response varies on
+	 * @param varyValues         the values of those headers in the request, normalized
+	 */
+	public CacheEntry(int status, List<Pair<String, String>> headers, ByteBuffer body, long responseTimeMillis,
+					  long initialAgeSeconds, long lifetimeSeconds, String[] varyNames, String[] varyValues) {
+		this.status = status;
+		this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+		this.body = body.asReadOnlyBuffer();
+		this.slabBody = null;
+		this.bodyLength = body.remaining();
+		this.responseTimeMillis = responseTimeMillis;
+		this.initialAgeSeconds = initialAgeSeconds;
+		this.lifetimeSeconds = lifetimeSeconds;
+		this.varyNames = varyNames;
+		this.varyValues = varyValues;
+		this.size = BodySlabs.footprint(bodyLength) + headerBytes(headers);
+	}
+
+	private CacheEntry(CacheEntry entry, List<Pair<String, String>> headers, ByteBuffer body, SlabBody slabBody,
+					   long responseTimeMillis, long initialAgeSeconds, long lifetimeSeconds) {
+		this.status = entry.status;
+		this.headers = headers;
+		this.body = body;
+		this.slabBody = slabBody;
+		this.bodyLength = entry.bodyLength;
+		this.responseTimeMillis = responseTimeMillis;
+		this.initialAgeSeconds = initialAgeSeconds;
+		this.lifetimeSeconds = lifetimeSeconds;
+		this.varyNames = entry.varyNames;
+		this.varyValues = entry.varyValues;
+		this.size = BodySlabs.footprint(bodyLength) + headerBytes(headers);
+	}
+
+	private static int headerBytes(List<Pair<String, String>> headers) {
+		int bytes = 0;
+		for (Pair<String, String> header : headers) {
+			bytes += HEADER_OVERHEAD + 2 * (header.first().length() + header.second().length());
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param headers            the headers of the entry updated by the revalidation, see mergeHeaders()
+	 * @param responseTimeMillis when the 304 response was received
+	 * @return an entry with the headers and freshness of a revalidated response, sharing this entry's body
+	 */
+	public CacheEntry revalidated(List<Pair<String, String>> headers, long responseTimeMillis, long initialAgeSeconds,
+								  long lifetimeSeconds) {
+		return new CacheEntry(this, Collections.unmodifiableList(new ArrayList<>(headers)), body, slabBody,
+			responseTimeMillis, initialAgeSeconds, lifetimeSeconds);
+	}
+
+	/**
+	 * @return the entry with its body in the slabs, holding a reference to it for the cache; null if there are not
+	 * enough free blocks, or if the body is in the slabs of another cache or has been freed
+	 */
+	CacheEntry storeIn(BodySlabs slabs) {
+		if (slabBody != null) {
+			return slabBody.isIn(slabs) && slabBody.retain() ? this : null;
+		}
+		SlabBody stored = slabs.allocate(bodyLength);
+		if (stored == null) return null;
+		stored.write(body);
+		return new CacheEntry(this, headers, null, stored, responseTimeMillis, initialAgeSeconds, lifetimeSeconds);
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public List<Pair<String, String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return the first value of the header, null if there is none
+	 */
+	public String getHeader(String name) {
+		return header(headers, name);
+	}
+
+	public int getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * Opens a stream over the body, shared with no one. A stream over a body in the cache's slabs keeps the body
+	 * until it is read to its end or closed, so it must be closed.
+	 *
+	 * @return the stream; null if the entry has been evicted and its body freed since it was looked up
+	 */
+	public ServletInputStream newBodyStream() {
+		return slabBody == null ? new ServletInputStreamWrapper(body) : slabBody.newInputStream();
+	}
+
+	/**
+	 * Keeps the body from being freed until releaseBody(), e.g. while the entry is being revalidated
+	 *
+	 * @return false if the entry has been evicted and its body freed since it was looked up
+	 */
+	public boolean retainBody() {
+		return slabBody == null || slabBody.retain();
+	}
+
+	/**
+	 * Gives back a reference to the body taken with retainBody(), or held by the cache for the stored entry
+	 */
+	public void releaseBody() {
+		if (slabBody != null) slabBody.release();
+	}
+
+	/**
+	 * @return the number of bytes the entry counts for in the cache: its body and an estimate for its headers
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public String[] getVaryNames() {
+		return varyNames;
+	}
+
+	public String[] getVaryValues() {
+		return varyValues;
+	}
+
+	public long getResponseTimeMillis() {
+		return responseTimeMillis;
+	}
+
+	public long getLifetimeSeconds() {
+		return lifetimeSeconds;
+	}
+
+	/**
+	 * @return the current age of the response in seconds
+	 */
+	public long getAgeSeconds(long nowMillis) {
+		return initialAgeSeconds + Math.max(0, nowMillis - responseTimeMillis) / 1000;
+	}
+
+	public boolean isFresh(long nowMillis) {
+		return getAgeSeconds(nowMillis) < lifetimeSeconds;
+	}
+
+	/**
+	 * @return true if the entry can be revalidated with a conditional request
+	 */
+	public boolean hasValidator() {
+		return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+	}
+
+	/**
+	 * @return the headers of an entry updated with the headers of a 304 response to its revalidation
+	 */
+	public static List<Pair<String, String>> mergeHeaders(List<Pair<String, String>> stored, List<Pair<String, String>> notModified) {
+		List<Pair<String, String>> merged = new ArrayList<>(stored.size() + notModified.size());
+		for (Pair<String, String> header : stored) {
+			if (header(notModified, header.first()) == null) merged.add(header);
+		}
+		for (Pair<String, String> header : notModified) {
+			if (!HeaderMap.nameEquals(header.first(), "Content-Length")) merged.add(header);
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the first value of the header in the list, null if there is none
+	 */
+	public static String header(List<Pair<String, String>> headers, String name) {
+		for (Pair<String, String> header : headers) {
+			if (HeaderMap.nameEquals(header.first(), name)) return header.second();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,128 @@
+package com.andyadc.zuul.cache;
+
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP caching rules for a shared cache (RFC 9111): which responses may be stored and for how long they are fresh.
+ * Freshness must be explicit, from s-maxage, max-age or Expires; no heuristic freshness is applied.
+ */
+public final class CachePolicy {
+
+	private CachePolicy() {
+	}
+
+	/**
+	 * @return true for status codes whose responses may be cached
+	 */
+	public static boolean isCacheableStatus(int status) {
+		switch (status) {
+			case 200:
+			case 203:
+			case 204:
+			case 300:
+			case 301:
+			case 308:
+			case 404:
+			case 405:
+			case 410:
+			case 414:
+			case 501:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * @param headers       the response headers
+	 * @param authorization true if the request had an Authorization header
+	 * @return true if a shared cache may store the response, given it has a cacheable status
+	 */
+	public static boolean isStorable(List<Pair<String, String>> headers, boolean authorization) {
+		CacheControl cc = CacheControl.parse(values(headers, "Cache-Control"));
+		if (cc.isNoStore() || cc.isPrivate()) return false;
+		if (authorization && !cc.isPublic() && cc.getSMaxAge() < 0 && !cc.isMustRevalidate()) return false;
+		// cookies are per client
+		if (CacheEntry.header(headers, "Set-Cookie") != null) return false;
+		if (ResponseCache.parseVary(String.join(",", values(headers, "Vary"))) == null) return false;
+		return lifetimeSeconds(headers) > 0
+			|| CacheEntry.header(headers, "ETag") != null || CacheEntry.header(headers, "Last-Modified") != null;
+	}
+
+	/**
+	 * @return how long the response is fresh in seconds, 0 if it must be revalidated before every use
+	 */
+	public static long lifetimeSeconds(List<Pair<String, String>> headers) {
+		CacheControl cc = CacheControl.parse(values(headers, "Cache-Control"));
+		if (cc.isNoCache()) return 0;
+		if (cc.getSMaxAge() >= 0) return cc.getSMaxAge();
+		if (cc.getMaxAge() >= 0) return cc.getMaxAge();
+		String expires = CacheEntry.header(headers, "Expires");
+		if (expires == null) return 0;
+		long expiresMillis = parseDate(expires);
+		if (expiresMillis < 0) return 0;
+		String date = CacheEntry.header(headers, "Date");
+		long dateMillis = date == null ? -1 : parseDate(date);
+		if (dateMillis < 0) dateMillis = System.currentTimeMillis();
+		return Math.max(0, (expiresMillis - dateMillis) / 1000);
+	}
+
+	/**
+	 * @return the Age of the response in seconds, 0 if it has none
+	 */
+	public static long initialAgeSeconds(List<Pair<String, String>> headers) {
+		String age = CacheEntry.header(headers, "Age");
+		if (age == null) return 0;
+		try {
+			return Math.max(0, Long.parseLong(age.trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param ifNoneMatch an If-None-Match header value
+	 * @return true if it matches the entity tag, by weak comparison
+	 */
+	public static boolean etagMatches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch.trim().equals("*")) return true;
+		String tag = weak(etag.trim());
+		for (String candidate : ifNoneMatch.split(",")) {
+			if (weak(candidate.trim()).equals(tag)) return true;
+		}
+		return false;
+	}
+
+	private static String weak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * @return the values of all headers of the name
+	 */
+	public static List<String> values(List<Pair<String, String>> headers, String name) {
+		List<String> values = new ArrayList<>(1);
+		for (Pair<String, String> header : headers) {
+			if (HeaderMap.nameEquals(header.first(), name)) values.add(header.second());
+		}
+		return values;
+	}
+
+	/**
+	 * @return the HTTP date in millis, -1 if it is malformed
+	 */
+	private static long parseDate(String date) {
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.andyadc.zuul.cache;
+
+import com.andyadc.zuul.util.BufferPool;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the body of a response as it is streamed to the client, and hands the copy to a Listener once the body
+ * has been read to its end. The copy is collected in pooled arrays and moved to a heap buffer at the end; a body
+ * that grows beyond the size limit, or that is closed or skipped early, is abandoned.
+ */
+public class CachingInputStream extends FilterInputStream {
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	/**
+	 * Receives the copy of the body
+	 */
+	public interface Listener {
+		/**
+		 * @param body the complete body, in a heap buffer
+		 */
+		void complete(ByteBuffer body);
+
+		/**
+		 * Called once if the body is not copied to its end
+		 */
+		default void abandoned() {
+		}
+	}
+
+	private final Listener listener;
+	private final int maxBytes;
+	private List<byte[]> chunks = new ArrayList<>();
+	private int position = CHUNK_SIZE;
+	private int length;
+
+	/**
+	 * @param maxBytes the largest body to copy
+	 */
+	public CachingInputStream(InputStream in, int maxBytes, Listener listener) {
+		super(in);
+		this.maxBytes = maxBytes;
+		this.listener = listener;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			complete();
+		} else if (chunks != null) {
+			copy(new byte[]{(byte) b}, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n == -1) {
+			complete();
+		} else if (chunks != null && n > 0) {
+			copy(b, off, n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		// skipped bytes can't be copied
+		abandon();
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		abandon();
+		super.close();
+	}
+
+	private void copy(byte[] b, int off, int len) {
+		if (length + len > maxBytes) {
+			abandon();
+			return;
+		}
+		length += len;
+		BufferPool buffers = BufferPool.getInstance();
+		while (len > 0) {
+			if (position == CHUNK_SIZE) {
+				chunks.add(buffers.acquire(CHUNK_SIZE));
+				position = 0;
+			}
+			int n = Math.min(len, CHUNK_SIZE - position);
+			System.arraycopy(b, off, chunks.get(chunks.size() - 1), position, n);
+			position += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void complete() {
+		if (chunks == null) return;
+		ByteBuffer body = ByteBuffer.wrap(new byte[length]);
+		int remaining = length;
+		for (byte[] chunk : chunks) {
+			int n = Math.min(remaining, CHUNK_SIZE);
+			body.put(chunk, 0, n);
+			remaining -= n;
+		}
+		body.flip();
+		release();
+		listener.complete(body);
+	}
+
+	private void abandon() {
+		if (chunks == null) return;
+		release();
+		listener.abandoned();
+	}
+
+	private void release() {
+		BufferPool buffers = BufferPool.getInstance();
+		for (byte[] chunk : chunks) {
+			buffers.release(chunk);
+		}
+		chunks = null;
+	}
+}
@@ -0,0 +1,83 @@
+package com.andyadc.zuul.cache;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were seen recently, for TinyLFU cache admission.
+ * Four counters per key, packed sixteen to a long, take about a byte per key tracked; the estimate is the smallest
+ * of the four. Once the number of increments reaches ten times the table size all counters are halved, so old
+ * popularity fades and the counters never saturate for long.
+ * <p>
+ * Not thread safe.
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private final long[] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * @param expectedKeys the number of keys to track with reasonable accuracy
+	 */
+	FrequencySketch(int expectedKeys) {
+		int size = Integer.highestOneBit(Math.max(64, Math.min(expectedKeys, 1 << 26)) - 1) << 1;
+		this.table = new long[size];
+		this.mask = size - 1;
+		this.sampleSize = 10 * size;
+	}
+
+	/**
+	 * @return the estimated recent frequency of the key, 0 to 15
+	 */
+	int frequency(int hash) {
+		int min = 15;
+		for (int i = 0; i < 4; i++) {
+			long h = rehash(hash, i);
+			int count = (int) ((table[index(h)] >>> offset(h)) & 0xfL);
+			if (count < min) min = count;
+		}
+		return min;
+	}
+
+	/**
+	 * Counts one more occurrence of the key
+	 */
+	void increment(int hash) {
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			long h = rehash(hash, i);
+			int index = index(h);
+			int offset = offset(h);
+			if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions >>>= 1;
+	}
+
+	private static long rehash(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		return h ^ (h >>> 29);
+	}
+
+	private int index(long h) {
+		return (int) h & mask;
+	}
+
+	private static int offset(long h) {
+		// one of the sixteen counters of the long, from bits not used by the index
+		return (int) (h >>> 60) << 2;
+	}
+}
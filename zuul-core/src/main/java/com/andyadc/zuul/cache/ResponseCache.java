@@ -0,0 +1,452 @@
+package com.andyadc.zuul.cache;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.util.HeaderMap;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of origin responses, bounded by the bytes of its entries ("zuul.response.cache.max-bytes").
+ * <p>
+ * Entries are evicted least recently used first, but a new entry is only admitted if it was requested more often
+ * recently than all the entries it would evict (TinyLFU): a FrequencySketch counts the lookups of every key, cached
+ * or not. A scan of one-off requests thus can't flush the popular entries. The victims are compared before any of
+ * them is evicted, so a rejected entry costs the cache nothing.
+ * <p>
+ * Lookups don't lock. They read a ConcurrentHashMap and record the access in one of a few striped ring buffers,
+ * dropping it if the buffer is full, as the order and frequencies only need to be about right. The buffers are
+ * drained into the sketch and the LRU order under a lock, by the lookup that fills a buffer if the lock is free, and
+ * before every store.
+ * <p>
+ * Responses with a Vary header are cached per variant. The header names a key varies on are kept per key, and the
+ * variant is picked by the values of those request headers. Entries larger than
+ * "zuul.response.cache.max-entry-bytes" are not cached.
+ * <p>
+ * Bodies are copied into direct memory slabs owned by the cache (see BodySlabs), allocated as it fills up to
+ * max-bytes and never freed, so they count against the JVM's direct memory limit (-XX:MaxDirectMemorySize) rather
+ * than the heap. An evicted body's blocks are reused as soon as no response is streaming it anymore, without
+ * waiting on the GC; an entry counts for the whole blocks its body takes. A store that needs blocks still held by
+ * evicted bodies being streamed is skipped.
+ */
+public class ResponseCache {
+
+	private static final ResponseCache INSTANCE = new ResponseCache(
+		Long.getLong(ZuulConstants.ZUUL_RESPONSE_CACHE_MAX_BYTES, 64L * 1024 * 1024),
+		Integer.getInteger(ZuulConstants.ZUUL_RESPONSE_CACHE_MAX_ENTRY_BYTES, 1024 * 1024));
+
+	private static final int AVERAGE_ENTRY_BYTES = 8 * 1024;
+
+	private final long maxBytes;
+	private final int maxEntryBytes;
+	private final ConcurrentHashMap<String, Node> entries = new ConcurrentHashMap<>(256);
+	private final ConcurrentHashMap<String, Variants> variants = new ConcurrentHashMap<>();
+	private final ReadBuffer[] readBuffers;
+	// guards the sketch, the LRU list, the variant counts and bytes
+	private final ReentrantLock lock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	private final BodySlabs slabs;
+	private Node head;
+	private Node tail;
+	private long bytes;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder hitBytes = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes      the bytes all entries may take
+	 * @param maxEntryBytes the bytes a single entry may take
+	 */
+	public ResponseCache(long maxBytes, int maxEntryBytes) {
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+		this.slabs = new BodySlabs(maxBytes);
+		this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / AVERAGE_ENTRY_BYTES)));
+		int stripes = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors() * 2) - 1) << 1;
+		this.readBuffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; i++) {
+			readBuffers[i] = new ReadBuffer();
+		}
+	}
+
+	/**
+	 * @return the shared ResponseCache
+	 */
+	public static ResponseCache getInstance() {
+		return INSTANCE;
+	}
+
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	/**
+	 * Looks up the variant of a key matching the request, and counts the lookup for admission
+	 *
+	 * @return the entry, fresh or stale, null if there is none
+	 */
+	public CacheEntry get(String key, HeaderMap requestHeaders) {
+		Variants v = variants.get(key);
+		Node node = v == null ? null : entries.get(variantKey(key, v.names, varyValues(v.names, requestHeaders)));
+		// a hit moves the node up the LRU order, a miss only counts the key
+		ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+		if (buffer.offer(node != null ? node : key) && lock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+		return node == null ? null : node.entry;
+	}
+
+	/**
+	 * Stores an entry, replacing the entry of the same variant. Space is made by evicting least recently used
+	 * entries, unless a new entry's key is requested less often than one of those. The body is copied into the
+	 * cache's slabs, unless it is there already because the entry was revalidated.
+	 *
+	 * @return true if the entry was stored
+	 */
+	public boolean put(String key, CacheEntry entry) {
+		int size = entry.getSize();
+		if (size > maxEntryBytes) {
+			rejections.increment();
+			return false;
+		}
+		String variantKey = variantKey(key, entry.getVaryNames(), entry.getVaryValues());
+		lock.lock();
+		try {
+			drainReadBuffers();
+			Node old = entries.get(variantKey);
+			if (old == null && !admit(key, size)) {
+				rejections.increment();
+				return false;
+			}
+			// make room first, so the blocks of the evicted bodies can be reused for this one
+			long replaced = old == null ? 0 : old.entry.getSize();
+			while (bytes + size - replaced > maxBytes && head != null && head != old) {
+				evict(head);
+			}
+			CacheEntry stored = entry.storeIn(slabs);
+			if (stored == null) {
+				rejections.increment();
+				return false;
+			}
+			if (old != null) {
+				CacheEntry previous = old.entry;
+				bytes += size - previous.getSize();
+				old.entry = stored;
+				moveToTail(old);
+				previous.releaseBody();
+			} else {
+				Variants v = variants.get(key);
+				if (v == null || !Arrays.equals(v.names, entry.getVaryNames())) {
+					// a changed Vary makes the other variants unreachable; they age out of the LRU order
+					Variants changed = new Variants(entry.getVaryNames());
+					changed.count = v == null ? 0 : v.count;
+					v = changed;
+					variants.put(key, v);
+				}
+				v.count++;
+				Node node = new Node(key, variantKey, stored);
+				entries.put(variantKey, node);
+				linkLast(node);
+				bytes += size;
+			}
+			while (bytes > maxBytes && head != null) {
+				evict(head);
+			}
+		} finally {
+			lock.unlock();
+		}
+		stores.increment();
+		return true;
+	}
+
+	/**
+	 * @return true if the key is requested more often than every entry that has to go to make room for size bytes
+	 */
+	private boolean admit(String key, int size) {
+		long needed = bytes + size - maxBytes;
+		if (needed <= 0) return true;
+		int frequency = sketch.frequency(key.hashCode());
+		for (Node victim = head; victim != null && needed > 0; victim = victim.next) {
+			if (sketch.frequency(victim.key.hashCode()) >= frequency) return false;
+			needed -= victim.entry.getSize();
+		}
+		return true;
+	}
+
+	private void evict(Node node) {
+		unlink(node);
+		entries.remove(node.variantKey, node);
+		bytes -= node.entry.getSize();
+		node.entry.releaseBody();
+		Variants v = variants.get(node.key);
+		if (v != null && --v.count <= 0) {
+			variants.remove(node.key, v);
+		}
+		evictions.increment();
+	}
+
+	private void drainReadBuffers() {
+		for (ReadBuffer buffer : readBuffers) {
+			buffer.drain(this);
+		}
+	}
+
+	/**
+	 * Applies one recorded lookup: a Node for a hit, the key for a miss
+	 */
+	void onRead(Object read) {
+		if (read instanceof Node) {
+			Node node = (Node) read;
+			sketch.increment(node.key.hashCode());
+			if (node.linked) moveToTail(node);
+		} else {
+			sketch.increment(read.hashCode());
+		}
+	}
+
+	private void linkLast(Node node) {
+		node.prev = tail;
+		node.next = null;
+		if (tail == null) head = node;
+		else tail.next = node;
+		tail = node;
+		node.linked = true;
+	}
+
+	private void unlink(Node node) {
+		if (node.prev == null) head = node.next;
+		else node.prev.next = node.next;
+		if (node.next == null) tail = node.prev;
+		else node.next.prev = node.prev;
+		node.prev = node.next = null;
+		node.linked = false;
+	}
+
+	private void moveToTail(Node node) {
+		if (node != tail) {
+			unlink(node);
+			linkLast(node);
+		}
+	}
+
+	/**
+	 * Removes all entries
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			drainReadBuffers();
+			while (head != null) {
+				head.entry.releaseBody();
+				unlink(head);
+			}
+			entries.clear();
+			variants.clear();
+			bytes = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the lower case, sorted header names of a Vary header value; null for "*", which can't be cached
+	 */
+	public static String[] parseVary(String vary) {
+		if (vary == null || vary.trim().isEmpty()) return new String[0];
+		String[] names = vary.split(",");
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].trim().toLowerCase(Locale.ROOT);
+			if (names[i].equals("*")) return null;
+		}
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * @return the values of the request headers named, with whitespace normalized so equivalent requests share a variant
+	 */
+	public static String[] varyValues(String[] names, HeaderMap requestHeaders) {
+		String[] values = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			String value = requestHeaders == null ? null : requestHeaders.getFirst(names[i]);
+			values[i] = value == null ? "" : value.trim().replaceAll("\\s*,\\s*", ",");
+		}
+		return values;
+	}
+
+	private static String variantKey(String key, String[] names, String[] values) {
+		if (names.length == 0) return key;
+		StringBuilder sb = new StringBuilder(key);
+		for (int i = 0; i < names.length; i++) {
+			sb.append('\u0000').append(names[i]).append('=').append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	public void recordHit(long bodyBytes) {
+		hits.increment();
+		hitBytes.add(bodyBytes);
+	}
+
+	public void recordMiss() {
+		misses.increment();
+	}
+
+	public void recordRevalidation(long bodyBytes) {
+		revalidations.increment();
+		hitBytes.add(bodyBytes);
+	}
+
+	/**
+	 * @return lookups served from a fresh entry
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return lookups that went to the origin for a full response
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return lookups served from a stale entry the origin confirmed with a 304
+	 */
+	public long getRevalidations() {
+		return revalidations.sum();
+	}
+
+	/**
+	 * @return the fraction of lookups served from the cache, fresh or revalidated
+	 */
+	public double getHitRatio() {
+		long served = getHits() + getRevalidations();
+		long total = served + getMisses();
+		return total == 0 ? 0 : (double) served / total;
+	}
+
+	/**
+	 * @return body bytes served from the cache
+	 */
+	public long getHitBytes() {
+		return hitBytes.sum();
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	/**
+	 * @return entries not stored, for their size or by admission
+	 */
+	public long getRejections() {
+		return rejections.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getBytes() {
+		lock.lock();
+		try {
+			return bytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the direct memory allocated for bodies, which the cache keeps
+	 */
+	public long getSlabBytes() {
+		return slabs.getAllocatedBytes();
+	}
+
+	private static final class Node {
+		final String key;
+		final String variantKey;
+		volatile CacheEntry entry;
+		// LRU links, guarded by the lock
+		Node prev;
+		Node next;
+		boolean linked;
+
+		Node(String key, String variantKey, CacheEntry entry) {
+			this.key = key;
+			this.variantKey = variantKey;
+			this.entry = entry;
+		}
+	}
+
+	private static final class Variants {
+		final String[] names;
+		// guarded by the lock
+		int count;
+
+		Variants(String[] names) {
+			this.names = names;
+		}
+	}
+
+	/**
+	 * Lossy ring buffer of recorded lookups. Any thread may offer, only the lock holder drains.
+	 */
+	private static final class ReadBuffer {
+		private static final int SIZE = 64;
+		private static final int MASK = SIZE - 1;
+		private static final int DRAIN_THRESHOLD = SIZE / 2;
+
+		private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(SIZE);
+		private final AtomicLong writes = new AtomicLong();
+		private volatile long reads;
+
+		/**
+		 * Records a lookup, or drops it if the buffer is full or another thread took the slot
+		 *
+		 * @return true if the buffer should be drained
+		 */
+		boolean offer(Object read) {
+			long w = writes.get();
+			long pending = w - reads;
+			if (pending >= SIZE) return true;
+			if (writes.compareAndSet(w, w + 1)) {
+				slots.lazySet((int) (w & MASK), read);
+			}
+			return pending >= DRAIN_THRESHOLD;
+		}
+
+		void drain(ResponseCache cache) {
+			long r = reads;
+			long w = writes.get();
+			for (; r < w; r++) {
+				int i = (int) (r & MASK);
+				Object read = slots.get(i);
+				if (read == null) break; // claimed but not written yet
+				slots.lazySet(i, null);
+				cache.onRead(read);
+			}
+			reads = r;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.andyadc.zuul.cache;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A body held in blocks of BodySlabs. It is reference counted: the cache holds a reference while an entry with the
+ * body is stored, and every stream over it holds one until it is closed or read to its end. The blocks go back to
+ * the slabs with the last reference, and the body can't be retained again.
+ */
+final class SlabBody {
+
+	private final BodySlabs slabs;
+	private final int[] blocks;
+	private final int length;
+	private final AtomicInteger refs = new AtomicInteger(1);
+
+	SlabBody(BodySlabs slabs, int[] blocks, int length) {
+		this.slabs = slabs;
+		this.blocks = blocks;
+		this.length = length;
+	}
+
+	int length() {
+		return length;
+	}
+
+	boolean isIn(BodySlabs slabs) {
+		return this.slabs == slabs;
+	}
+
+	/**
+	 * Fills the body from the remaining bytes of src, before it is shared
+	 */
+	void write(ByteBuffer src) {
+		src = src.duplicate();
+		for (int i = 0; src.hasRemaining(); i++) {
+			ByteBuffer block = slabs.block(blocks[i]);
+			int n = Math.min(src.remaining(), block.remaining());
+			ByteBuffer part = src.duplicate();
+			part.limit(part.position() + n);
+			block.put(part);
+			src.position(src.position() + n);
+		}
+	}
+
+	/**
+	 * Takes a reference
+	 *
+	 * @return false if the blocks have been given back already
+	 */
+	boolean retain() {
+		while (true) {
+			int r = refs.get();
+			if (r == 0) return false;
+			if (refs.compareAndSet(r, r + 1)) return true;
+		}
+	}
+
+	/**
+	 * Gives a reference back, and the blocks with the last one
+	 */
+	void release() {
+		if (refs.decrementAndGet() == 0) {
+			slabs.free(blocks);
+		}
+	}
+
+	/**
+	 * @return a stream over the body holding a reference to it, null if the blocks have been given back already
+	 */
+	ServletInputStream newInputStream() {
+		return retain() ? new Stream() : null;
+	}
+
+	/**
+	 * Reads the blocks in order. The reference is given back at the end of the body or on close().
+	 */
+	private final class Stream extends ServletInputStream {
+		private int position;
+		private boolean closed;
+
+		@Override
+		public int read() throws IOException {
+			if (position == length) {
+				close();
+				return -1;
+			}
+			if (closed) throw new IOException("Stream closed");
+			ByteBuffer block = slabs.block(blocks[position / BodySlabs.BLOCK_SIZE]);
+			int b = block.get(block.position() + position % BodySlabs.BLOCK_SIZE) & 0xff;
+			position++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+			if (position == length) {
+				close();
+				return -1;
+			}
+			if (closed) throw new IOException("Stream closed");
+			if (len == 0) return 0;
+			int total = 0;
+			while (len > 0 && position < length) {
+				ByteBuffer block = slabs.block(blocks[position / BodySlabs.BLOCK_SIZE]);
+				block.position(block.position() + position % BodySlabs.BLOCK_SIZE);
+				int n = Math.min(len, Math.min(block.remaining(), length - position));
+				block.get(b, off, n);
+				position += n;
+				off += n;
+				len -= n;
+				total += n;
+			}
+			return total;
+		}
+
+		@Override
+		public long skip(long n) {
+			if (closed || n <= 0) return 0;
+			int skipped = (int) Math.min(n, length - position);
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return closed ? 0 : length - position;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return closed || position == length;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			// the body is in memory, so it is all available at once
+			try {
+				if (!isFinished()) {
+					readListener.onDataAvailable();
+				}
+				if (isFinished()) {
+					readListener.onAllDataRead();
+				}
+			} catch (IOException e) {
+				readListener.onError(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed) return;
+			closed = true;
+			release();
+		}
+	}
+}
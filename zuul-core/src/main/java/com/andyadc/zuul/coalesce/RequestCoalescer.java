@@ -0,0 +1,186 @@
+package com.andyadc.zuul.coalesce;
+
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.constants.ZuulConstants;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses identical concurrent requests into one origin request. The first request for a key leads a Flight and goes
+ * to the origin; requests for the same key arriving while it is in flight wait for the leader's response and are
+ * answered with a copy of it.
+ * <p>
+ * At most "zuul.request.coalescing.max-waiters" requests wait on a flight, for at most
+ * "zuul.request.coalescing.max-wait-millis"; the others, and the waiters of a leader that fails or whose response
+ * can't be shared, go to the origin themselves.
+ */
+public class RequestCoalescer {
+
+	private static final RequestCoalescer INSTANCE = new RequestCoalescer(
+		Integer.getInteger(ZuulConstants.ZUUL_REQUEST_COALESCING_MAX_WAITERS, 1000),
+		Long.getLong(ZuulConstants.ZUUL_REQUEST_COALESCING_MAX_WAIT_MILLIS, 5000L));
+
+	private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+	private final int maxWaiters;
+	private final long maxWaitMillis;
+
+	private final LongAdder leaders = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder overflows = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder abandoned = new LongAdder();
+
+	/**
+	 * @param maxWaiters    the requests that may wait on one flight
+	 * @param maxWaitMillis how long a request waits for the leader's response
+	 */
+	public RequestCoalescer(int maxWaiters, long maxWaitMillis) {
+		this.maxWaiters = maxWaiters;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * @return the shared RequestCoalescer
+	 */
+	public static RequestCoalescer getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts a flight for the key, unless one is in progress
+	 *
+	 * @param varyNames the lower case names of the request headers whose values are part of the key
+	 * @return the new flight, which the caller must complete or abandon; null if the key is already in flight
+	 */
+	public Flight lead(String key, String[] varyNames) {
+		Flight flight = new Flight(key, varyNames);
+		if (flights.putIfAbsent(key, flight) != null) return null;
+		leaders.increment();
+		return flight;
+	}
+
+	/**
+	 * Waits for the response of the flight in progress for the key
+	 *
+	 * @return the leader's response, null if there is no flight, too many requests wait on it, it took too long,
+	 * or the leader had no response to share
+	 */
+	public CacheEntry await(String key) throws InterruptedException {
+		Flight flight = flights.get(key);
+		if (flight == null) return null;
+		if (flight.waiters.incrementAndGet() > maxWaiters) {
+			flight.waiters.decrementAndGet();
+			overflows.increment();
+			return null;
+		}
+		if (!flight.done.await(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+			timeouts.increment();
+			return null;
+		}
+		if (flight.response != null) coalesced.increment();
+		return flight.response;
+	}
+
+	/**
+	 * Ends a flight with the response to share with its waiters
+	 */
+	public void complete(Flight flight, CacheEntry response) {
+		if (flights.remove(flight.key, flight)) {
+			flight.response = response;
+			flight.done.countDown();
+		}
+	}
+
+	/**
+	 * Ends a flight without a response; its waiters go to the origin. Does nothing if the flight has ended.
+	 */
+	public void abandon(Flight flight) {
+		if (flights.remove(flight.key, flight)) {
+			abandoned.increment();
+			flight.done.countDown();
+		}
+	}
+
+	/**
+	 * @return the flights in progress
+	 */
+	public int getFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * @return requests that went to the origin leading a flight
+	 */
+	public long getLeaders() {
+		return leaders.sum();
+	}
+
+	/**
+	 * @return requests answered with the response of another request's flight
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return requests that went to the origin because too many requests waited already
+	 */
+	public long getOverflows() {
+		return overflows.sum();
+	}
+
+	/**
+	 * @return requests that went to the origin after waiting for the leader too long
+	 */
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * @return flights that ended without a response to share
+	 */
+	public long getAbandoned() {
+		return abandoned.sum();
+	}
+
+	/**
+	 * An origin request that identical requests wait on
+	 */
+	public static final class Flight {
+		private final String key;
+		private final List<String> varyNames;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final AtomicInteger waiters = new AtomicInteger();
+		private volatile CacheEntry response;
+
+		private Flight(String key, String[] varyNames) {
+			this.key = key;
+			this.varyNames = Collections.unmodifiableList(Arrays.asList(varyNames.clone()));
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the lower case names of the request headers whose values are part of the key
+		 */
+		public List<String> getVaryNames() {
+			return varyNames;
+		}
+
+		/**
+		 * @return the requests waiting on the flight
+		 */
+		public int getWaiterCount() {
+			return waiters.get();
+		}
+	}
+}
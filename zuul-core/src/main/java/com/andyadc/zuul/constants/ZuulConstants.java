@@ -29,6 +29,7 @@ public class ZuulConstants {
     public static final String ZUUL_FILTER_POST_PATH = "zuul.filter.post.path";
     public static final String ZUUL_FILTER_ROUTING_PATH = "zuul.filter.routing.path";
     public static final String ZUUL_FILTER_CUSTOM_PATH = "zuul.filter.custom.path";
+    public static final String ZUUL_FILTER_TIMED_MAX_THREADS = "zuul.filter.timed.max-threads";
 
     //This property turns on the admin page. Note that the admin page should be only accessed internally
     //and should be protected from general access
@@ -46,12 +47,52 @@ public class ZuulConstants {
     public static final String ZUUL_DEFAULT_HOST = "zuul.default.host";
     public static final String ZUUL_HOST_SOCKET_TIMEOUT_MILLIS = "zuul.host.socket-timeout-millis";
     public static final String ZUUL_HOST_CONNECT_TIMEOUT_MILLIS = "zuul.host.connect-timeout-millis";
+    public static final String ZUUL_HOST_MAX_IDLE_CONNECTIONS_PER_ORIGIN = "zuul.host.max-idle-connections-per-origin";
+    public static final String ZUUL_HOST_IDLE_TIMEOUT_MILLIS = "zuul.host.idle-timeout-millis";
+    public static final String ZUUL_ORIGIN_EWMA_DECAY_MILLIS = "zuul.origin.ewma-decay-millis";
+    public static final String ZUUL_ORIGIN_EJECTION_CONSECUTIVE_FAILURES = "zuul.origin.ejection.consecutive-failures";
+    public static final String ZUUL_ORIGIN_EJECTION_BASE_MILLIS = "zuul.origin.ejection.base-millis";
+    public static final String ZUUL_ORIGIN_EJECTION_MAX_MILLIS = "zuul.origin.ejection.max-millis";
+    public static final String ZUUL_ORIGIN_EJECTION_MAX_PERCENT = "zuul.origin.ejection.max-percent";
+    public static final String ZUUL_ORIGIN_RETRY_BUDGET_PERCENT = "zuul.origin.retry-budget.percent";
+    public static final String ZUUL_ORIGIN_RETRY_BUDGET_MIN_PER_SECOND = "zuul.origin.retry-budget.min-per-second";
+    public static final String ZUUL_ORIGIN_RETRY_BUDGET_WINDOW_SECONDS = "zuul.origin.retry-budget.window-seconds";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_ENABLED = "zuul.origin.concurrency-limit.enabled";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_INITIAL = "zuul.origin.concurrency-limit.initial";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_MIN = "zuul.origin.concurrency-limit.min";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_MAX = "zuul.origin.concurrency-limit.max";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_RTT_TOLERANCE = "zuul.origin.concurrency-limit.rtt-tolerance";
+    public static final String ZUUL_ORIGIN_CONCURRENCY_LIMIT_SMOOTHING = "zuul.origin.concurrency-limit.smoothing";
+    public static final String ZUUL_ROUTE_TABLE_PATH = "zuul.route.table.path";
+    public static final String ZUUL_ROUTE_TABLE_POLL_INTERVAL_SECONDS = "zuul.route.table.poll-interval-seconds";
+    public static final String ZUUL_ROUTE_MAX_RETRIES = "zuul.route.max-retries";
+    public static final String ZUUL_ROUTE_HEDGE_ENABLED = "zuul.route.hedge.enabled";
+    public static final String ZUUL_ROUTE_HEDGE_PERCENTILE = "zuul.route.hedge.percentile";
+    public static final String ZUUL_ROUTE_HEDGE_MIN_DELAY_MILLIS = "zuul.route.hedge.min-delay-millis";
+    public static final String ZUUL_ROUTE_HEDGE_MAX_THREADS = "zuul.route.hedge.max-threads";
     public static final String ZUUL_INCLUDE_DEBUG_HEADER = "zuul.include-debug-header";
     public static final String ZUUL_INITIAL_STREAM_BUFFER_SIZE = "zuul.initial-stream-buffer-size";
     public static final String ZUUL_SET_CONTENT_LENGTH = "zuul.set-content-length";
+    public static final String ZUUL_REQUEST_BODY_MEMORY_THRESHOLD = "zuul.request.body.memory-threshold";
+    public static final String ZUUL_REQUEST_BODY_TEMP_DIR = "zuul.request.body.temp-dir";
+    public static final String ZUUL_REQUEST_COALESCING_MAX_WAITERS = "zuul.request.coalescing.max-waiters";
+    public static final String ZUUL_REQUEST_COALESCING_MAX_WAIT_MILLIS = "zuul.request.coalescing.max-wait-millis";
+    public static final String ZUUL_REQUEST_COALESCING_MAX_BODY_BYTES = "zuul.request.coalescing.max-body-bytes";
+    public static final String ZUUL_REQUEST_COALESCING_VARY_HEADERS = "zuul.request.coalescing.vary-headers";
+    public static final String ZUUL_RESPONSE_COMPRESSION_ENABLED = "zuul.response.compression.enabled";
+    public static final String ZUUL_RESPONSE_COMPRESSION_MIN_SIZE = "zuul.response.compression.min-size";
+    public static final String ZUUL_RESPONSE_COMPRESSION_LEVEL = "zuul.response.compression.level";
+    public static final String ZUUL_RESPONSE_COMPRESSION_POOL_SIZE = "zuul.response.compression.pool-size";
+    public static final String ZUUL_RESPONSE_CACHE_MAX_BYTES = "zuul.response.cache.max-bytes";
+    public static final String ZUUL_RESPONSE_CACHE_MAX_ENTRY_BYTES = "zuul.response.cache.max-entry-bytes";
+    public static final String ZUUL_TRUSTED_PROXIES = "zuul.trusted-proxies";
     public static final String ZUUL_DEBUGFILTERS_DISABLED = "zuul.debugFilters.disabled";
     public static final String ZUUL_DEBUG_VIP = "zuul.debug.vip";
     public static final String ZUUL_DEBUG_HOST = "zuul.debug.host";
+    public static final String ZUUL_DEBUG_TRACE_SAMPLE_RATE = "zuul.debug.trace.sample-rate";
+    public static final String ZUUL_DEBUG_TRACE_HEADER = "zuul.debug.trace.header";
+    public static final String ZUUL_DEBUG_TRACE_PATH = "zuul.debug.trace.path";
+    public static final String ZUUL_DEBUG_TRACE_MAX_EVENTS = "zuul.debug.trace.max-events";
 
     // Prevent instantiation
     private ZuulConstants() {
@@ -38,15 +38,30 @@ public class Debug {
 		return RequestContext.getCurrentContext().debugRouting();
 	}
 
+	/**
+	 * Adds a line to the routing debug messages. For requests sampled by the RoutingTraceSampler the line is recorded
+	 * into the bounded RoutingTrace instead.
+	 *
+	 * @param line
+	 */
 	public static void addRoutingDebug(String line) {
+		RoutingTrace trace = RequestContext.getCurrentContext().getRoutingTrace();
+		if (trace != null) {
+			trace.addEvent(line);
+			return;
+		}
 		List<String> rd = getRoutingDebug();
 		rd.add(line);
 	}
 
 	/**
-	 * @return Returns the list of routiong debug messages
+	 * @return Returns the list of routiong debug messages. For traced requests this is a snapshot of the trace's messages.
 	 */
 	public static List<String> getRoutingDebug() {
+		RoutingTrace trace = RequestContext.getCurrentContext().getRoutingTrace();
+		if (trace != null) {
+			return trace.getMessages();
+		}
 		List<String> rd = (List<String>) RequestContext.getCurrentContext().get("routingDebug");
 		if (rd == null) {
 			rd = new ArrayList<>();
@@ -78,7 +93,32 @@ public class Debug {
 	}
 
 	/**
-	 * Adds debug details about changes that a given filter made to the request context.
+	 * Adds debug details about changes that a given filter made to the request context, using the context's
+	 * mutation journal. This costs nothing beyond the mutations themselves.
+	 *
+	 * @param filterName
+	 * @param journalPosition the position returned by RequestContext.startJournal() before the filter ran
+	 */
+	public static void compareContextState(String filterName, int journalPosition) {
+		RequestContext context = RequestContext.getCurrentContext();
+		for (RequestContext.Mutation m : context.getJournal(journalPosition)) {
+			String key = m.getKey();
+			if (key.equals("routingDebug") || key.equals("requestDebug")) continue;
+			Object oldValue = m.getOldValue();
+			Object newValue = m.getNewValue();
+			if (oldValue == null && newValue != null) {
+				addRoutingDebug("{" + filterName + "} added " + key + "=" + newValue.toString());
+			} else if (oldValue != null && newValue == null) {
+				addRoutingDebug("{" + filterName + "} removed " + key);
+			} else if (oldValue != null && !(oldValue.equals(newValue))) {
+				addRoutingDebug("{" + filterName + "} changed " + key + "=" + newValue.toString());
+			}
+		}
+	}
+
+	/**
+	 * Adds debug details about changes that a given filter made to the request context, by comparing it with a
+	 * copy taken before the filter ran. Prefer the journal based compareContextState(String, int).
 	 *
 	 * @param filterName
 	 * @param copy
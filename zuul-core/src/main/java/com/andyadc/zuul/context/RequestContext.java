@@ -1,8 +1,14 @@
 package com.andyadc.zuul.context;
 
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.coalesce.RequestCoalescer;
 import com.andyadc.zuul.constants.ZuulHeaders;
+import com.andyadc.zuul.http.AcceptEncoding;
+import com.andyadc.zuul.origin.OriginGroup;
 import com.andyadc.zuul.util.DeepCopy;
+import com.andyadc.zuul.util.HeaderMap;
 import com.andyadc.zuul.util.Pair;
+import com.andyadc.zuul.util.UrlEncodedParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,17 +18,24 @@ import java.io.InputStream;
 import java.io.NotSerializableException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * The Request Context holds request, response,  state information and data for ZuulFilters to access and share.
  * The RequestContext lives for the duration of the request and is ThreadLocal.
  * extensions of RequestContext can be substituted by setting the contextClass.
  * Most methods here are convenience wrapper methods; the RequestContext is an extension of a ConcurrentHashMap
+ * <p/>
+ * Once startJournal() has been called, every change made through the Map methods (put, remove, putAll, replace,
+ * compute, merge, clear and their variants) is recorded in a journal of Mutations along with the name of the filter
+ * that made it; changes made through the keySet(), values() and entrySet() views are not. This is used to report
+ * context changes when debugRouting is on.
  */
 @SuppressWarnings({"unchecked"})
 public class RequestContext extends ConcurrentHashMap<String, Object> {
@@ -45,6 +58,11 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
     };
 
 
+    private transient volatile List<Mutation> journal;
+    private transient volatile String journalFilterName;
+    private transient volatile List<Runnable> requestEndTasks;
+    private transient volatile RequestContext forkedFrom;
+
     public RequestContext() {
         super();
     }
@@ -74,6 +92,21 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
         return threadLocal.get();
     }
 
+    /**
+     * Binds the given RequestContext to the current thread. This is used to carry a request's context over to another
+     * thread, e.g. when a filter is run on a worker thread. Call setCurrentContext(null) on that thread when done;
+     * unset() is reserved for the end of the request.
+     *
+     * @param context the RequestContext of the request being processed, null to unbind
+     */
+    public static void setCurrentContext(RequestContext context) {
+        if (context == null) {
+            threadLocal.remove();
+        } else {
+            ((ThreadLocal<RequestContext>) threadLocal).set(context);
+        }
+    }
+
     /**
      * Convenience method to return a boolean value for a given key
      *
@@ -137,6 +170,38 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
      */
     public void setRequest(HttpServletRequest request) {
         put("request", request);
+        remove("requestHeaders");
+        remove("clientIP");
+    }
+
+    /**
+     * @return the resolved client IP of the request, null if not resolved yet. See HTTPRequestUtils.getClientIP()
+     */
+    public String getClientIP() {
+        return (String) get("clientIP");
+    }
+
+    /**
+     * sets the resolved client IP of the request
+     */
+    public void setClientIP(String clientIP) {
+        set("clientIP", clientIP);
+    }
+
+    /**
+     * Returns the headers of the request, indexed once per request. Lookups are case-insensitive and repeated
+     * headers keep all their values. Prefer this over HttpServletRequest.getHeader().
+     *
+     * @return the request headers, empty if there is no request
+     */
+    public HeaderMap getRequestHeaders() {
+        HeaderMap headers = (HeaderMap) get("requestHeaders");
+        if (headers == null) {
+            HttpServletRequest request = getRequest();
+            headers = request == null ? new HeaderMap() : HeaderMap.fromRequest(request);
+            put("requestHeaders", headers);
+        }
+        return headers;
     }
 
     /**
@@ -234,6 +299,76 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
         return (URL) get("routeHost");
     }
 
+    /**
+     * sets the origin group the request is balanced over; the route filter picks the routeHost from it
+     */
+    public void setOriginGroup(OriginGroup originGroup) {
+        set("originGroup", originGroup);
+    }
+
+    /**
+     * @return the origin group the request is balanced over, null if it goes to the routeHost
+     */
+    public OriginGroup getOriginGroup() {
+        return (OriginGroup) get("originGroup");
+    }
+
+    /**
+     * sets the key the response is cached under
+     */
+    public void setResponseCacheKey(String key) {
+        set("responseCacheKey", key);
+    }
+
+    /**
+     * @return the key the response is cached under, null if it is not cacheable
+     */
+    public String getResponseCacheKey() {
+        return (String) get("responseCacheKey");
+    }
+
+    /**
+     * sets the stale cache entry the request revalidates
+     */
+    public void setResponseCacheEntry(CacheEntry entry) {
+        set("responseCacheEntry", entry);
+    }
+
+    /**
+     * @return the stale cache entry the request revalidates, null if there is none
+     */
+    public CacheEntry getResponseCacheEntry() {
+        return (CacheEntry) get("responseCacheEntry");
+    }
+
+    /**
+     * sets the coalescing flight the request leads
+     */
+    public void setCoalescingFlight(RequestCoalescer.Flight flight) {
+        set("coalescingFlight", flight);
+    }
+
+    /**
+     * @return the coalescing flight the request leads, null if it leads none
+     */
+    public RequestCoalescer.Flight getCoalescingFlight() {
+        return (RequestCoalescer.Flight) get("coalescingFlight");
+    }
+
+    /**
+     * sets the name of the route the request matched
+     */
+    public void setRouteName(String routeName) {
+        set("routeName", routeName);
+    }
+
+    /**
+     * @return the name of the route the request matched, null if it matched none
+     */
+    public String getRouteName() {
+        return (String) get("routeName");
+    }
+
     /**
      * appends filter name and status to the filter execution history for the
      * current request
@@ -330,23 +465,32 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
     }
 
     /**
-     * add a header to be sent to the origin
+     * add a header to be sent to the origin, replacing any header of the same name regardless of case
      */
     public void addZuulRequestHeader(String name, String value) {
-        getZuulRequestHeaders().put(name.toLowerCase(), value);
+        getZuulRequestHeaderMap().set(name, value);
     }
 
     /**
-     * return the list of requestHeaders to be sent to the origin
+     * return the list of requestHeaders to be sent to the origin. Lookups are case-insensitive. Names keep the case
+     * they were added with, which is the case they are sent to the origin in; they used to be lower cased by
+     * addZuulRequestHeader(), so callers that iterate the names no longer see them lower cased.
      *
-     * @return the list of requestHeaders to be sent to the origin
+     * @return a live view of the requestHeaders to be sent to the origin, with the first value of each header
      */
     public Map<String, String> getZuulRequestHeaders() {
+        return getZuulRequestHeaderMap().asSingleValueMap();
+    }
+
+    /**
+     * @return the requestHeaders to be sent to the origin
+     */
+    public HeaderMap getZuulRequestHeaderMap() {
         if (get("zuulRequestHeaders") == null) {
-			Map<String, String> zuulRequestHeaders = new HashMap<>();
+			HeaderMap zuulRequestHeaders = new HeaderMap();
             putIfAbsent("zuulRequestHeaders", zuulRequestHeaders);
         }
-        return (Map<String, String>) get("zuulRequestHeaders");
+        return (HeaderMap) get("zuulRequestHeaders");
     }
 
     /**
@@ -440,22 +584,312 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
     }
 
     /**
-     * @return true is the client request can accept gzip encoding. Checks the "accept-encoding" header
+     * Declares whether the current route needs a buffered, replayable request body (e.g. to retry the request).
+     * Otherwise the body is only buffered if a filter reads it, and is streamed to the origin as it arrives.
+     */
+    public void setRequestBodyRequired(boolean required) {
+        set("requestBodyRequired", required);
+    }
+
+    /**
+     * @return true if the route declared that it needs a buffered request body
+     */
+    public boolean isRequestBodyRequired() {
+        return getBoolean("requestBodyRequired");
+    }
+
+    /**
+     * @return true is the client request can accept gzip encoding. Checks the "accept-encoding" header, honouring
+     * q-values, so "gzip;q=0" is not accepted
      */
     public boolean isGzipRequested() {
-        final String requestEncoding = this.getRequest().getHeader(ZuulHeaders.ACCEPT_ENCODING);
-        return requestEncoding != null && requestEncoding.toLowerCase().contains("gzip");
+        return AcceptEncoding.accepts(getRequestHeaders().getFirst(ZuulHeaders.ACCEPT_ENCODING), AcceptEncoding.GZIP);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object old = super.put(key, value);
+        if (journal != null) record(key, old, value);
+        return old;
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        Object old = super.putIfAbsent(key, value);
+        if (journal != null && old == null) record(key, null, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object old = super.remove(key);
+        if (journal != null && old != null) record((String) key, old, null);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        boolean removed = super.remove(key, value);
+        if (journal != null && removed) record((String) key, value, null);
+        return removed;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        if (journal == null) {
+            super.putAll(m);
+            return;
+        }
+        for (Map.Entry<? extends String, ?> e : m.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (journal == null) {
+            super.clear();
+            return;
+        }
+        for (String key : keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        Object old = super.replace(key, value);
+        if (journal != null && old != null) record(key, old, value);
+        return old;
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        boolean replaced = super.replace(key, oldValue, newValue);
+        if (journal != null && replaced) record(key, oldValue, newValue);
+        return replaced;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        if (journal == null) {
+            super.replaceAll(function);
+            return;
+        }
+        for (String key : keySet()) {
+            computeIfPresent(key, function);
+        }
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        if (journal == null) return super.computeIfAbsent(key, mappingFunction);
+        boolean[] computed = new boolean[1];
+        Object value = super.computeIfAbsent(key, k -> {
+            computed[0] = true;
+            return mappingFunction.apply(k);
+        });
+        if (computed[0] && value != null) record(key, null, value);
+        return value;
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        if (journal == null) return super.computeIfPresent(key, remappingFunction);
+        Object[] old = new Object[1];
+        Object value = super.computeIfPresent(key, (k, v) -> {
+            old[0] = v;
+            return remappingFunction.apply(k, v);
+        });
+        if (old[0] != null && old[0] != value) record(key, old[0], value);
+        return value;
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        if (journal == null) return super.compute(key, remappingFunction);
+        Object[] old = new Object[1];
+        Object value = super.compute(key, (k, v) -> {
+            old[0] = v;
+            return remappingFunction.apply(k, v);
+        });
+        if (old[0] != value) record(key, old[0], value);
+        return value;
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        if (journal == null) return super.merge(key, value, remappingFunction);
+        if (value == null || remappingFunction == null) throw new NullPointerException();
+        return compute(key, (k, v) -> v == null ? value : remappingFunction.apply(v, value));
+    }
+
+    private void record(String key, Object oldValue, Object newValue) {
+        List<Mutation> j = journal;
+        if (j != null) {
+            j.add(new Mutation(key, oldValue, newValue, journalFilterName));
+        }
+    }
+
+    /**
+     * Starts recording context mutations on behalf of the named filter. The journal is created on first use.
+     *
+     * @param filterName the filter about to run
+     * @return the journal position before the filter runs, to pass to getJournal(int)
+     */
+    public int startJournal(String filterName) {
+        List<Mutation> j = journal;
+        if (j == null) {
+            j = Collections.synchronizedList(new ArrayList<>());
+            journal = j;
+        }
+        journalFilterName = filterName;
+        return j.size();
+    }
+
+    /**
+     * Ends the attribution of mutations to the filter passed to startJournal(). Mutations are still recorded.
+     */
+    public void stopJournal() {
+        journalFilterName = null;
+    }
+
+    /**
+     * @param fromPosition a position returned by startJournal()
+     * @return the mutations recorded since that position, empty if nothing was journaled
+     */
+    public List<Mutation> getJournal(int fromPosition) {
+        List<Mutation> j = journal;
+        if (j == null) return Collections.emptyList();
+        synchronized (j) {
+            if (fromPosition >= j.size()) return Collections.emptyList();
+            return new ArrayList<>(j.subList(fromPosition, j.size()));
+        }
+    }
+
+    /**
+     * @return the RoutingTrace of this request, null if the request is not sampled for tracing
+     */
+    public RoutingTrace getRoutingTrace() {
+        return (RoutingTrace) get(RoutingTraceSampler.ROUTING_TRACE_KEY);
     }
 
     /**
-     * unsets the threadLocal context. Done at the end of the request.
+     * Registers a task to run when the request ends, i.e. when unset() is called. This is used to release request
+     * scoped resources such as buffered request bodies.
+     */
+    public void addRequestEndTask(Runnable task) {
+        RequestContext parent = forkedFrom;
+        if (parent != null) {
+            parent.addRequestEndTask(task);
+            return;
+        }
+        List<Runnable> tasks = requestEndTasks;
+        if (tasks == null) {
+            synchronized (this) {
+                tasks = requestEndTasks;
+                if (tasks == null) {
+                    tasks = Collections.synchronizedList(new ArrayList<>(2));
+                    requestEndTasks = tasks;
+                }
+            }
+        }
+        tasks.add(task);
+    }
+
+    /**
+     * unsets the threadLocal context. Done at the end of the request. A pending RoutingTrace is completed and stored,
+     * and the tasks registered with addRequestEndTask() are run.
      */
     public void unset() {
+        if (containsKey(RoutingTraceSampler.ROUTING_TRACE_KEY)) {
+            RoutingTraceSampler.finish(this);
+        }
+        List<Runnable> tasks = requestEndTasks;
+        if (tasks != null) {
+            requestEndTasks = null;
+            synchronized (tasks) {
+                for (Runnable task : tasks) {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        LOG.error("Error running request end task", e);
+                    }
+                }
+            }
+        }
         threadLocal.remove();
     }
 
     /**
-     * Mkaes a copy of the RequestContext. This is used for debugging.
+     * Makes a working copy of this context for a filter run on another thread. Apply the copy with join() when the
+     * filter completes in time, or drop it. Request end tasks added to the copy are added to this context.
+     * <p>
+     * The copy has its own map, so values the filter sets or removes, e.g. the response status, body or data stream,
+     * don't reach this context unless it is joined. Header maps, ArrayLists (exactly that class) and StringBuilders
+     * are copied too. Every other value is shared: the HttpServletRequest and HttpServletResponse, the stream in
+     * getResponseDataStream(), the RoutingTrace and any other mutable object. A filter that is given up on but keeps
+     * running can still read those streams, write to the servlet response or add to the trace.
+     */
+    public RequestContext fork() {
+        RequestContext fork;
+        try {
+            fork = contextClass.newInstance();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+        for (Map.Entry<String, Object> e : entrySet()) {
+            Object value = e.getValue();
+            if (value instanceof HeaderMap) {
+                value = ((HeaderMap) value).copy();
+            } else if (value != null && value.getClass() == ArrayList.class) {
+                value = new ArrayList<>((ArrayList<?>) value);
+            } else if (value instanceof StringBuilder) {
+                value = new StringBuilder((StringBuilder) value);
+            }
+            fork.put(e.getKey(), value);
+        }
+        fork.forkedFrom = this;
+        return fork;
+    }
+
+    /**
+     * Applies the changes made to a copy returned by fork(). Copied header maps, lists and string builders are updated
+     * in place, the other changes go through put() and remove() and so are journaled.
+     */
+    public void join(RequestContext fork) {
+        for (Map.Entry<String, Object> e : fork.entrySet()) {
+            String key = e.getKey();
+            Object value = e.getValue();
+            Object old = get(key);
+            if (old != value && !joinInPlace(old, value)) {
+                put(key, value);
+            }
+        }
+        for (String key : keySet()) {
+            if (!fork.containsKey(key)) remove(key);
+        }
+    }
+
+    private static boolean joinInPlace(Object into, Object from) {
+        if (into instanceof HeaderMap && from instanceof HeaderMap) {
+            ((HeaderMap) into).setAll((HeaderMap) from);
+        } else if (into != null && into.getClass() == ArrayList.class && from != null && from.getClass() == ArrayList.class) {
+            List<Object> list = (List<Object>) into;
+            list.clear();
+            list.addAll((List<Object>) from);
+        } else if (into instanceof StringBuilder && from instanceof StringBuilder) {
+            ((StringBuilder) into).setLength(0);
+            ((StringBuilder) into).append((StringBuilder) from);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mkaes a copy of the RequestContext. Values are deep copied through serialization where possible, which is
+     * expensive; debug routing uses the mutation journal instead.
      */
     public RequestContext copy() {
         RequestContext copy = new RequestContext();
@@ -497,4 +931,60 @@ public class RequestContext extends ConcurrentHashMap<String, Object> {
     public void setRequestQueryParams(Map<String, List<String>> qp) {
         put("requestQueryParams", qp);
     }
+
+    /**
+     * @return the lazily decoded query parameters parsed from the request's query string
+     */
+    public UrlEncodedParameters getParsedRequestQueryParams() {
+        return (UrlEncodedParameters) get("parsedRequestQueryParams");
+    }
+
+    /**
+     * sets the lazily decoded query parameters
+     */
+    public void setParsedRequestQueryParams(UrlEncodedParameters qp) {
+        set("parsedRequestQueryParams", qp);
+    }
+
+    /**
+     * A change to the RequestContext recorded in the journal
+     */
+    public static final class Mutation {
+        private final String key;
+        private final Object oldValue;
+        private final Object newValue;
+        private final String filterName;
+
+        Mutation(String key, Object oldValue, Object newValue, String filterName) {
+            this.key = key;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.filterName = filterName;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the value before the mutation, null if the key was added
+         */
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        /**
+         * @return the value after the mutation, null if the key was removed
+         */
+        public Object getNewValue() {
+            return newValue;
+        }
+
+        /**
+         * @return the filter that was running, null if the mutation happened outside of a journaled filter
+         */
+        public String getFilterName() {
+            return filterName;
+        }
+    }
 }
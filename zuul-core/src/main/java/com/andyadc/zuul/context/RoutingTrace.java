@@ -0,0 +1,142 @@
+package com.andyadc.zuul.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routing debug trace of one sampled request. The number of events is bounded; events beyond the limit are counted
+ * but not kept, so a trace never grows past a known size.
+ */
+public class RoutingTrace {
+
+	private final long id;
+	private final String method;
+	private final String uri;
+	private final long startTimeMillis;
+	private final long startNanos;
+	private final Event[] events;
+	private int eventCount;
+	private int droppedEvents;
+
+	private long durationMicros = -1;
+	private int responseStatus;
+	private String filterExecutions;
+
+	RoutingTrace(long id, String method, String uri, int maxEvents) {
+		this.id = id;
+		this.method = method;
+		this.uri = uri;
+		this.startTimeMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		this.events = new Event[maxEvents];
+	}
+
+	/**
+	 * Records an event, or counts it as dropped if the trace is full
+	 */
+	public synchronized void addEvent(String message) {
+		if (eventCount < events.length) {
+			events[eventCount++] = new Event((System.nanoTime() - startNanos) / 1000, message);
+		} else {
+			droppedEvents++;
+		}
+	}
+
+	/**
+	 * Records the outcome of a filter. The message is only built if the trace has room for it.
+	 */
+	public synchronized void addFilterEvent(String filterType, int filterOrder, String filterName, String status, long millis) {
+		if (eventCount < events.length) {
+			addEvent("Filter " + filterType + " " + filterOrder + " " + filterName + " " + status + " " + millis + "ms");
+		} else {
+			droppedEvents++;
+		}
+	}
+
+	synchronized void finish(int responseStatus, String filterExecutions) {
+		this.durationMicros = (System.nanoTime() - startNanos) / 1000;
+		this.responseStatus = responseStatus;
+		this.filterExecutions = filterExecutions;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public long getStartTimeMillis() {
+		return startTimeMillis;
+	}
+
+	/**
+	 * @return the request duration in microseconds, -1 while the request is in flight
+	 */
+	public synchronized long getDurationMicros() {
+		return durationMicros;
+	}
+
+	/**
+	 * @return the response status code, 0 if none was set
+	 */
+	public synchronized int getResponseStatus() {
+		return responseStatus;
+	}
+
+	/**
+	 * @return the filter execution summary of the request
+	 */
+	public synchronized String getFilterExecutions() {
+		return filterExecutions;
+	}
+
+	public synchronized int getDroppedEvents() {
+		return droppedEvents;
+	}
+
+	public synchronized List<Event> getEvents() {
+		List<Event> list = new ArrayList<>(eventCount);
+		for (int i = 0; i < eventCount; i++) {
+			list.add(events[i]);
+		}
+		return list;
+	}
+
+	/**
+	 * @return the event messages in order
+	 */
+	public synchronized List<String> getMessages() {
+		List<String> list = new ArrayList<>(eventCount);
+		for (int i = 0; i < eventCount; i++) {
+			list.add(events[i].getMessage());
+		}
+		return list;
+	}
+
+	/**
+	 * A routing debug message and when it happened relative to the start of the request
+	 */
+	public static final class Event {
+		private final long offsetMicros;
+		private final String message;
+
+		Event(long offsetMicros, String message) {
+			this.offsetMicros = offsetMicros;
+			this.message = message;
+		}
+
+		public long getOffsetMicros() {
+			return offsetMicros;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
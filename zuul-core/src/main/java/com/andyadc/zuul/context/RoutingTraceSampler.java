@@ -0,0 +1,108 @@
+package com.andyadc.zuul.context;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which requests get a RoutingTrace. A request is traced if it carries the trace header with the value
+ * "true", if its URI starts with the trace path prefix, or otherwise with a probability of 1 in sampleRate.
+ * Traced requests get one event per filter run, with its status and time, recorded into the RoutingTrace, which is
+ * handed to the RoutingTraceStore when the RequestContext is unset. Tracing doesn't turn on debugRouting, so it
+ * adds no context journaling; routing debug lines are added to the trace only if debugRouting is on anyway.
+ * <p/>
+ * Defaults are read from the system properties zuul.debug.trace.sample-rate, zuul.debug.trace.header,
+ * zuul.debug.trace.path and zuul.debug.trace.max-events. Sampling is off by default.
+ */
+public class RoutingTraceSampler {
+
+	static final String ROUTING_TRACE_KEY = "routingTrace";
+
+	private static final RoutingTraceSampler INSTANCE = new RoutingTraceSampler();
+
+	private final AtomicLong traceIds = new AtomicLong();
+	private volatile int sampleRate = Integer.getInteger(ZuulConstants.ZUUL_DEBUG_TRACE_SAMPLE_RATE, 0);
+	private volatile String traceHeader = System.getProperty(ZuulConstants.ZUUL_DEBUG_TRACE_HEADER);
+	private volatile String tracePath = System.getProperty(ZuulConstants.ZUUL_DEBUG_TRACE_PATH);
+	private volatile int maxEvents = Integer.getInteger(ZuulConstants.ZUUL_DEBUG_TRACE_MAX_EVENTS, 200);
+
+	/**
+	 * @return the singleton RoutingTraceSampler
+	 */
+	public static RoutingTraceSampler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param sampleRate trace 1 in sampleRate requests, 0 or less to disable random sampling
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @param traceHeader requests with this header set to "true" are always traced, null to disable
+	 */
+	public void setTraceHeader(String traceHeader) {
+		this.traceHeader = traceHeader;
+	}
+
+	/**
+	 * @param tracePath requests whose URI starts with this prefix are always traced, null to disable
+	 */
+	public void setTracePath(String tracePath) {
+		this.tracePath = tracePath;
+	}
+
+	/**
+	 * @param maxEvents the maximum number of events kept per trace
+	 */
+	public void setMaxEvents(int maxEvents) {
+		this.maxEvents = maxEvents;
+	}
+
+	/**
+	 * Starts a RoutingTrace for the context's request if it is sampled
+	 *
+	 * @return true if the request is traced
+	 */
+	public boolean sample(RequestContext ctx) {
+		HttpServletRequest request = ctx.getRequest();
+		if (request == null || !shouldTrace(ctx, request)) {
+			return false;
+		}
+		RoutingTrace trace = new RoutingTrace(traceIds.incrementAndGet(), request.getMethod(), request.getRequestURI(), maxEvents);
+		ctx.put(ROUTING_TRACE_KEY, trace);
+		return true;
+	}
+
+	private boolean shouldTrace(RequestContext ctx, HttpServletRequest request) {
+		String header = traceHeader;
+		if (header != null && "true".equals(ctx.getRequestHeaders().getFirst(header))) {
+			return true;
+		}
+		String path = tracePath;
+		if (path != null) {
+			String uri = request.getRequestURI();
+			if (uri != null && uri.startsWith(path)) {
+				return true;
+			}
+		}
+		int rate = sampleRate;
+		return rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0);
+	}
+
+	/**
+	 * Completes the context's trace, if any, and stores it
+	 */
+	static void finish(RequestContext ctx) {
+		RoutingTrace trace = (RoutingTrace) ctx.remove(ROUTING_TRACE_KEY);
+		if (trace != null) {
+			Object status = ctx.get("responseStatusCode");
+			trace.finish(status instanceof Integer ? (Integer) status : 0, ctx.getFilterExecutionSummary().toString());
+			RoutingTraceStore.getInstance().add(trace);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.andyadc.zuul.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size, lock-free ring buffer of the most recently completed RoutingTraces.
+ * Older traces are overwritten, so the memory held is bounded by the capacity.
+ */
+public class RoutingTraceStore {
+
+	private static final int DEFAULT_CAPACITY = 256;
+	private static volatile RoutingTraceStore INSTANCE = new RoutingTraceStore(DEFAULT_CAPACITY);
+
+	private final AtomicReferenceArray<RoutingTrace> traces;
+	private final AtomicLong writeIndex = new AtomicLong();
+
+	public RoutingTraceStore(int capacity) {
+		traces = new AtomicReferenceArray<>(Math.max(capacity, 1));
+	}
+
+	/**
+	 * @return the singleton RoutingTraceStore
+	 */
+	public static RoutingTraceStore getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Replaces the singleton store, e.g. to change its capacity
+	 */
+	public static void setInstance(RoutingTraceStore store) {
+		INSTANCE = store;
+	}
+
+	public void add(RoutingTrace trace) {
+		int slot = (int) (writeIndex.getAndIncrement() % traces.length());
+		traces.set(slot, trace);
+	}
+
+	/**
+	 * @return the stored traces, most recent first
+	 */
+	public List<RoutingTrace> getRecent() {
+		int capacity = traces.length();
+		long end = writeIndex.get();
+		long start = Math.max(0, end - capacity);
+		List<RoutingTrace> list = new ArrayList<>();
+		for (long i = end - 1; i >= start; i--) {
+			RoutingTrace trace = traces.get((int) (i % capacity));
+			if (trace != null) {
+				list.add(trace);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return the trace with the given id, or null if it has been overwritten
+	 */
+	public RoutingTrace get(long id) {
+		for (int i = 0; i < traces.length(); i++) {
+			RoutingTrace trace = traces.get(i);
+			if (trace != null && trace.getId() == id) {
+				return trace;
+			}
+		}
+		return null;
+	}
+
+	public int getCapacity() {
+		return traces.length();
+	}
+}
@@ -0,0 +1,80 @@
+package com.andyadc.zuul.exception;
+
+import com.andyadc.zuul.monitoring.Counter;
+import com.andyadc.zuul.monitoring.CounterFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the "ZUUL::EXCEPTION:errorCause:statusCode" counter handles so that the name is only built once per
+ * (errorCause, status code) pair. The cache is dropped when a different CounterFactory is installed.
+ */
+final class ExceptionCounters {
+
+	private static volatile CounterFactory factory;
+	private static volatile ConcurrentHashMap<String, StatusCounters> counters = new ConcurrentHashMap<>();
+
+	private ExceptionCounters() {
+	}
+
+	static void increment(String errorCause, int nStatusCode) {
+		CounterFactory f = CounterFactory.instance();
+		ConcurrentHashMap<String, StatusCounters> map = counters;
+		if (f != factory) {
+			synchronized (ExceptionCounters.class) {
+				if (f != factory) {
+					counters = new ConcurrentHashMap<>();
+					factory = f;
+				}
+				map = counters;
+			}
+		}
+		String key = String.valueOf(errorCause);
+		StatusCounters statusCounters = map.get(key);
+		if (statusCounters == null) {
+			statusCounters = map.computeIfAbsent(key, StatusCounters::new);
+		}
+		statusCounters.get(nStatusCode, f).increment();
+	}
+
+	/**
+	 * The counters of one errorCause. There are only a handful of status codes per cause, so a linear scan over a
+	 * copy-on-write array is cheaper than a map with boxed keys.
+	 */
+	private static final class StatusCounters {
+		private final String errorCause;
+		private volatile int[] statusCodes = new int[0];
+		private volatile Counter[] handles = new Counter[0];
+
+		StatusCounters(String errorCause) {
+			this.errorCause = errorCause;
+		}
+
+		Counter get(int nStatusCode, CounterFactory f) {
+			int[] codes = statusCodes;
+			Counter[] h = handles;
+			for (int i = 0; i < codes.length && i < h.length; i++) {
+				if (codes[i] == nStatusCode) return h[i];
+			}
+			return add(nStatusCode, f);
+		}
+
+		private synchronized Counter add(int nStatusCode, CounterFactory f) {
+			int[] codes = statusCodes;
+			for (int i = 0; i < codes.length; i++) {
+				if (codes[i] == nStatusCode) return handles[i];
+			}
+			Counter counter = f.getCounter("ZUUL::EXCEPTION:" + errorCause + ":" + nStatusCode);
+			int n = codes.length;
+			int[] newCodes = new int[n + 1];
+			Counter[] newHandles = new Counter[n + 1];
+			System.arraycopy(codes, 0, newCodes, 0, n);
+			System.arraycopy(handles, 0, newHandles, 0, n);
+			newCodes[n] = nStatusCode;
+			newHandles[n] = counter;
+			handles = newHandles;
+			statusCodes = newCodes;
+			return counter;
+		}
+	}
+}
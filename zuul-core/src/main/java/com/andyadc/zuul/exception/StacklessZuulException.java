@@ -0,0 +1,23 @@
+package com.andyadc.zuul.exception;
+
+/**
+ * ZuulException without a stack trace or suppressed exceptions, for expected control flow errors such as rejections
+ * and timeouts, and for wrapping a cause that already carries the interesting stack trace. Without the stack
+ * trace a new instance is cheap enough to create for every occurrence.
+ */
+public class StacklessZuulException extends ZuulException {
+
+	/**
+	 * error message, status code and info about the cause
+	 */
+	public StacklessZuulException(String sMessage, int nStatusCode, String errorCause) {
+		super(null, sMessage, nStatusCode, errorCause, true);
+	}
+
+	/**
+	 * Source Throwable, message, status code and info about the cause
+	 */
+	public StacklessZuulException(Throwable throwable, String sMessage, int nStatusCode, String errorCause) {
+		super(throwable, sMessage, nStatusCode, errorCause, true);
+	}
+}
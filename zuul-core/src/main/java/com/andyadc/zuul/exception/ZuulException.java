@@ -1,7 +1,5 @@
 package com.andyadc.zuul.exception;
 
-import com.andyadc.zuul.monitoring.CounterFactory;
-
 /**
  * All handled exceptions in Zuul are ZuulExceptions
  */
@@ -20,7 +18,7 @@ public class ZuulException extends Exception {
         super(sMessage, throwable);
         this.nStatusCode = nStatusCode;
         this.errorCause = errorCause;
-        incrementCounter("ZUUL::EXCEPTION:" + errorCause + ":" + nStatusCode);
+        incrementCounter(errorCause, nStatusCode);
     }
 
     /**
@@ -33,7 +31,7 @@ public class ZuulException extends Exception {
         super(sMessage);
         this.nStatusCode = nStatusCode;
         this.errorCause = errorCause;
-        incrementCounter("ZUUL::EXCEPTION:" + errorCause + ":" + nStatusCode);
+        incrementCounter(errorCause, nStatusCode);
 
     }
 
@@ -47,12 +45,27 @@ public class ZuulException extends Exception {
         super(throwable.getMessage(), throwable);
         this.nStatusCode = nStatusCode;
         this.errorCause = errorCause;
-        incrementCounter("ZUUL::EXCEPTION:" + errorCause + ":" + nStatusCode);
+        incrementCounter(errorCause, nStatusCode);
+
+    }
 
+    /**
+     * Constructor for subclasses that skip filling in the stack trace, see StacklessZuulException
+     * @param throwable the source Throwable, may be null
+     * @param sMessage
+     * @param nStatusCode
+     * @param errorCause
+     * @param stackless true to skip the stack trace and suppressed exceptions
+     */
+    protected ZuulException(Throwable throwable, String sMessage, int nStatusCode, String errorCause, boolean stackless) {
+        super(sMessage, throwable, !stackless, !stackless);
+        this.nStatusCode = nStatusCode;
+        this.errorCause = errorCause;
+        incrementCounter(errorCause, nStatusCode);
     }
 
-	private static void incrementCounter(String name) {
-        CounterFactory.instance().increment(name);
+	private static void incrementCounter(String errorCause, int nStatusCode) {
+        ExceptionCounters.increment(errorCause, nStatusCode);
     }
 
 }
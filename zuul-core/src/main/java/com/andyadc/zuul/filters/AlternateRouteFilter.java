@@ -0,0 +1,138 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.context.Debug;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.monitoring.CounterFactory;
+import com.andyadc.zuul.route.Route;
+import com.andyadc.zuul.route.RouteTableManager;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre filter, after the RouteFilter, that sends a permyriad (a share in ten thousand) of the routed requests to an
+ * alternate origin instead, for capacity tests and canaries. The alternate is the route of the RouteTable named by
+ * "zuul.router.alt.route.vip" if there is one, or else the "zuul.router.alt.route.host" URL; the share is
+ * "zuul.router.alt.route.permyriad", 0 by default, and at most "zuul.router.alt.route.maxlimit" diverted requests
+ * are in progress at a time. All of them can be changed at runtime.
+ * <p>
+ * The sampling is done in shouldFilter() with the thread's own ThreadLocalRandom, so requests that aren't diverted
+ * cost a random number and a comparison. Diverted requests in progress are counted with a LongAdder, which is only
+ * summed for diverted requests; the limit is approximate by the few requests diverted at the same moment.
+ * Register it with FilterRegistry.instance().put("AlternateRouteFilter", new AlternateRouteFilter()).
+ */
+public class AlternateRouteFilter extends ZuulFilter {
+
+	private static final int PERMYRIAD = 10000;
+
+	private final RouteTableManager manager;
+	private final LongAdder active = new LongAdder();
+	private volatile int permyriad = Integer.getInteger(ZuulConstants.ZUUL_ROUTER_ALT_ROUTE_PERMYRIAD, 0);
+	private volatile int maxLimit = Integer.getInteger(ZuulConstants.ZUUL_ROUTER_ALT_ROUTE_MAXLIMIT, 500);
+	private volatile String vip = System.getProperty(ZuulConstants.ZUUL_ROUTER_ALT_ROUTE_VIP);
+	private volatile URL host = toUrl(System.getProperty(ZuulConstants.ZUUL_ROUTER_ALT_ROUTE_HOST));
+
+	public AlternateRouteFilter() {
+		this(RouteTableManager.getInstance());
+	}
+
+	public AlternateRouteFilter(RouteTableManager manager) {
+		this.manager = manager;
+	}
+
+	private static URL toUrl(String host) {
+		if (host == null || host.isEmpty()) return null;
+		try {
+			return new URL(host);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid " + ZuulConstants.ZUUL_ROUTER_ALT_ROUTE_HOST + ": " + host, e);
+		}
+	}
+
+	/**
+	 * @param permyriad the requests in ten thousand to divert, 0 to divert none
+	 */
+	public void setPermyriad(int permyriad) {
+		this.permyriad = Math.max(0, Math.min(PERMYRIAD, permyriad));
+	}
+
+	/**
+	 * @param maxLimit the diverted requests that may be in progress at a time
+	 */
+	public void setMaxLimit(int maxLimit) {
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * @param vip the name of the route to divert requests to, null to use the host
+	 */
+	public void setVip(String vip) {
+		this.vip = vip;
+	}
+
+	/**
+	 * @param host the URL of the origin to divert requests to, null for none
+	 */
+	public void setHost(String host) {
+		this.host = toUrl(host);
+	}
+
+	/**
+	 * @return the diverted requests in progress
+	 */
+	public long getActive() {
+		return active.sum();
+	}
+
+	@Override
+	public String filterType() {
+		return "pre";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 60;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		int p = permyriad;
+		if (p <= 0 || p < PERMYRIAD && ThreadLocalRandom.current().nextInt(PERMYRIAD) >= p) return false;
+		RequestContext ctx = RequestContext.getCurrentContext();
+		return ctx.sendZuulResponse() && (ctx.getRouteHost() != null || ctx.getOriginGroup() != null);
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		Route route = manager.getRouteTable().getRoute(vip);
+		URL alternate = route == null ? host : null;
+		if (route == null && alternate == null) return null;
+		if (active.sum() >= maxLimit) {
+			CounterFactory.instance().increment("zuul.router.alt.route.capped");
+			return null;
+		}
+		active.increment();
+		ctx.addRequestEndTask(active::decrement);
+		CounterFactory.instance().increment("zuul.router.alt.route.diverted");
+
+		if (route != null) {
+			ctx.setOriginGroup(route.getGroup());
+			ctx.setRouteHost(route.getGroup() == null ? route.getOrigin() : null);
+			ctx.setRouteName(route.getName());
+		} else {
+			ctx.setOriginGroup(null);
+			ctx.setRouteHost(alternate);
+			// keeps the responses of the alternate apart in the cache and request coalescing
+			ctx.setRouteName("alt:" + alternate.toExternalForm());
+		}
+		if (ctx.debugRouting()) {
+			Debug.addRoutingDebug("Diverted to alternate route " + ctx.getRouteName());
+		}
+		return route != null ? route : alternate;
+	}
+}
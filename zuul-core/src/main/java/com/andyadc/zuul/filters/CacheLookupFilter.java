@@ -0,0 +1,142 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.cache.CacheControl;
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.cache.CachePolicy;
+import com.andyadc.zuul.cache.ResponseCache;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
+
+/**
+ * Last pre filter: serves GET and HEAD requests from the ResponseCache. A fresh entry is served straight away and
+ * the route filters are skipped. A stale entry with a validator is revalidated: the request goes to the origin with
+ * If-None-Match or If-Modified-Since, and the CacheStoreFilter serves the entry again if the origin answers 304.
+ * Requests with "Cache-Control: no-cache" (or "Pragma: no-cache") are always revalidated, and those with
+ * "Cache-Control: no-store" bypass the cache.
+ * Register it along with the CacheStoreFilter, with FilterRegistry.instance().put("CacheLookupFilter", new CacheLookupFilter()).
+ */
+public class CacheLookupFilter extends ZuulFilter {
+
+	private final ResponseCache cache;
+
+	public CacheLookupFilter() {
+		this(ResponseCache.getInstance());
+	}
+
+	public CacheLookupFilter(ResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public String filterType() {
+		return "pre";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 1000;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		String method = ctx.getRequest().getMethod();
+		return ("GET".equals(method) || "HEAD".equals(method)) && ctx.sendZuulResponse()
+			&& (ctx.getRouteHost() != null || ctx.getOriginGroup() != null);
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		HeaderMap headers = ctx.getRequestHeaders();
+		CacheControl cc = CacheControl.parse(headers.getAll("Cache-Control"));
+		if (cc.isNoStore()) return null;
+
+		String key = cacheKey(ctx);
+		ctx.setResponseCacheKey(key);
+		CacheEntry entry = cache.get(key, headers);
+		if (entry == null) {
+			cache.recordMiss();
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		boolean noCache = cc.isNoCache() || cc.getMaxAge() == 0 || "no-cache".equalsIgnoreCase(headers.getFirst("Pragma"));
+		if (!noCache && entry.isFresh(now)) {
+			if (!serve(ctx, entry, now)) {
+				// evicted, and its body freed, since the lookup
+				cache.recordMiss();
+				return null;
+			}
+			cache.recordHit(entry.getBodyLength());
+			return entry;
+		}
+		if (entry.hasValidator() && !headers.containsName("If-None-Match") && !headers.containsName("If-Modified-Since")
+			&& entry.retainBody()) {
+			ctx.addRequestEndTask(entry::releaseBody);
+			String etag = entry.getHeader("ETag");
+			if (etag != null) {
+				ctx.addZuulRequestHeader("If-None-Match", etag);
+			} else {
+				ctx.addZuulRequestHeader("If-Modified-Since", entry.getHeader("Last-Modified"));
+			}
+			ctx.setResponseCacheEntry(entry);
+			// counted as a revalidation or a miss once the origin answered
+			return null;
+		}
+		cache.recordMiss();
+		return null;
+	}
+
+	/**
+	 * @return the cache key: the route and the request URI with its query
+	 */
+	protected String cacheKey(RequestContext ctx) {
+		HttpServletRequest request = ctx.getRequest();
+		String route = ctx.getRouteName() != null ? ctx.getRouteName() : ctx.getRouteHost().toExternalForm();
+		String query = request.getQueryString();
+		return query == null ? route + ' ' + request.getRequestURI() : route + ' ' + request.getRequestURI() + '?' + query;
+	}
+
+	/**
+	 * Makes the cache entry the response of the request, and skips the route filters. A request with an
+	 * If-None-Match matching the entry gets a 304. The body stream is closed at the end of the request at the latest.
+	 *
+	 * @return false, leaving the request as it was, if the body has been freed since the entry was looked up
+	 */
+	static boolean serve(RequestContext ctx, CacheEntry entry, long now) {
+		String etag = entry.getHeader("ETag");
+		String ifNoneMatch = ctx.getRequestHeaders().getFirst("If-None-Match");
+		boolean notModified = etag != null && ifNoneMatch != null && CachePolicy.etagMatches(ifNoneMatch, etag);
+		InputStream body = null;
+		if (!notModified && !"HEAD".equals(ctx.getRequest().getMethod())) {
+			body = entry.newBodyStream();
+			if (body == null) return false;
+			InputStream opened = body;
+			ctx.addRequestEndTask(() -> CacheStoreFilter.closeQuietly(opened));
+		}
+
+		ctx.setSendZuulResponse(false);
+		ctx.getZuulResponseHeaders().clear();
+		ctx.getOriginResponseHeaders().clear();
+		ctx.setOriginContentLength((Long) null);
+		ctx.setResponseStatusCode(notModified ? 304 : entry.getStatus());
+		for (Pair<String, String> header : entry.getHeaders()) {
+			ctx.addOriginResponseHeader(header.first(), header.second());
+			ctx.addZuulResponseHeader(header.first(), header.second());
+		}
+		ctx.addZuulResponseHeader("Age", Long.toString(entry.getAgeSeconds(now)));
+		ctx.setResponseGZipped("gzip".equalsIgnoreCase(entry.getHeader("Content-Encoding")));
+		if (body == null) {
+			ctx.setResponseDataStream(null);
+		} else {
+			ctx.setOriginContentLength((long) entry.getBodyLength());
+			ctx.setResponseDataStream(body);
+		}
+		return true;
+	}
+}
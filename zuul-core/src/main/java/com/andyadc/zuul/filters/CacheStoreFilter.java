@@ -0,0 +1,116 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.cache.CachePolicy;
+import com.andyadc.zuul.cache.CachingInputStream;
+import com.andyadc.zuul.cache.ResponseCache;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Post filter, ahead of the SendResponseFilter, that stores cacheable origin responses in the ResponseCache as they
+ * are sent to the client, and serves the cached entry when the origin answers a revalidation with 304.
+ * Register it along with the CacheLookupFilter, with FilterRegistry.instance().put("CacheStoreFilter", new CacheStoreFilter()).
+ */
+public class CacheStoreFilter extends ZuulFilter {
+
+	private final ResponseCache cache;
+
+	public CacheStoreFilter() {
+		this(ResponseCache.getInstance());
+	}
+
+	public CacheStoreFilter(ResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public String filterType() {
+		return "post";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 900;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		// served from the cache, or failed, when sendZuulResponse is off or there is a throwable
+		return ctx.getResponseCacheKey() != null && ctx.sendZuulResponse() && ctx.getThrowable() == null
+			&& "GET".equals(ctx.getRequest().getMethod());
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		String key = ctx.getResponseCacheKey();
+		int status = ctx.getResponseStatusCode();
+		long now = System.currentTimeMillis();
+		List<Pair<String, String>> headers = storedHeaders(ctx.getOriginResponseHeaders());
+
+		CacheEntry stale = ctx.getResponseCacheEntry();
+		if (stale != null && status == 304) {
+			List<Pair<String, String>> merged = CacheEntry.mergeHeaders(stale.getHeaders(), headers);
+			// the stale body was kept by the lookup until the end of the request
+			CacheEntry entry = stale.revalidated(merged, now, CachePolicy.initialAgeSeconds(merged),
+				CachePolicy.lifetimeSeconds(merged));
+			cache.put(key, entry);
+			cache.recordRevalidation(entry.getBodyLength());
+			closeQuietly(ctx.getResponseDataStream());
+			CacheLookupFilter.serve(ctx, entry, now);
+			return entry;
+		}
+		if (stale != null) {
+			cache.recordMiss();
+		}
+
+		InputStream in = ctx.getResponseDataStream();
+		if (in == null || !CachePolicy.isCacheableStatus(status)
+			|| !CachePolicy.isStorable(headers, ctx.getRequestHeaders().containsName("Authorization"))) {
+			return null;
+		}
+		Long contentLength = ctx.getOriginContentLength();
+		if (contentLength != null && contentLength > cache.getMaxEntryBytes()) {
+			return null;
+		}
+		String[] varyNames = ResponseCache.parseVary(String.join(",", CachePolicy.values(headers, "Vary")));
+		String[] varyValues = ResponseCache.varyValues(varyNames, ctx.getRequestHeaders());
+		long initialAge = CachePolicy.initialAgeSeconds(headers);
+		long lifetime = CachePolicy.lifetimeSeconds(headers);
+		ctx.setResponseDataStream(new CachingInputStream(in, cache.getMaxEntryBytes(),
+			body -> cache.put(key, new CacheEntry(status, headers, body, now, initialAge, lifetime, varyNames, varyValues))));
+		return null;
+	}
+
+	/**
+	 * @return the origin response headers worth storing: without hop-by-hop headers, Content-Length and Age
+	 */
+	static List<Pair<String, String>> storedHeaders(List<Pair<String, String>> originHeaders) {
+		List<Pair<String, String>> headers = new ArrayList<>(originHeaders.size());
+		for (Pair<String, String> header : originHeaders) {
+			String name = header.first();
+			if (HostRoutingFilter.isHopByHop(name) || HeaderMap.nameEquals(name, "Content-Length") || HeaderMap.nameEquals(name, "Age")) {
+				continue;
+			}
+			headers.add(new Pair<>(name, header.second()));
+		}
+		return headers;
+	}
+
+	static void closeQuietly(InputStream in) {
+		if (in == null) return;
+		try {
+			in.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
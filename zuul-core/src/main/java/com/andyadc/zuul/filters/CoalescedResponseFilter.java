@@ -0,0 +1,104 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.cache.CacheControl;
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.cache.CachePolicy;
+import com.andyadc.zuul.cache.CachingInputStream;
+import com.andyadc.zuul.cache.ResponseCache;
+import com.andyadc.zuul.coalesce.RequestCoalescer;
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.util.Pair;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Post filter, after the CacheStoreFilter, that copies the response of a request leading a coalescing flight as it is
+ * sent to the client, and shares it with the requests waiting on the flight once the body is complete.
+ * Failed requests, responses with Set-Cookie or "Cache-Control: private", responses that vary on request headers
+ * other than those in the coalescing key (or on "*"), and bodies larger than "zuul.request.coalescing.max-body-bytes"
+ * are not shared; the waiters then go to the origin themselves.
+ * Register it along with the CoalescingFilter, with FilterRegistry.instance().put("CoalescedResponseFilter", new CoalescedResponseFilter()).
+ */
+public class CoalescedResponseFilter extends ZuulFilter {
+
+	private static final int MAX_BODY_BYTES = Integer.getInteger(ZuulConstants.ZUUL_REQUEST_COALESCING_MAX_BODY_BYTES, 1024 * 1024);
+
+	private static final String[] NO_VARY = new String[0];
+
+	private final RequestCoalescer coalescer;
+
+	public CoalescedResponseFilter() {
+		this(RequestCoalescer.getInstance());
+	}
+
+	public CoalescedResponseFilter(RequestCoalescer coalescer) {
+		this.coalescer = coalescer;
+	}
+
+	@Override
+	public String filterType() {
+		return "post";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 950;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		return RequestContext.getCurrentContext().getCoalescingFlight() != null;
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		RequestCoalescer.Flight flight = ctx.getCoalescingFlight();
+		List<Pair<String, String>> headers = CacheStoreFilter.storedHeaders(ctx.getOriginResponseHeaders());
+		Long contentLength = ctx.getOriginContentLength();
+		if (ctx.getThrowable() != null || !isShareable(headers, flight) || contentLength != null && contentLength > MAX_BODY_BYTES) {
+			coalescer.abandon(flight);
+			return null;
+		}
+		int status = ctx.getResponseStatusCode();
+		long now = System.currentTimeMillis();
+		InputStream in = ctx.getResponseDataStream();
+		if (in == null) {
+			coalescer.complete(flight, new CacheEntry(status, headers, ByteBuffer.allocate(0), now, 0, 0, NO_VARY, NO_VARY));
+			return null;
+		}
+		ctx.setResponseDataStream(new CachingInputStream(in, MAX_BODY_BYTES, new CachingInputStream.Listener() {
+			@Override
+			public void complete(ByteBuffer body) {
+				coalescer.complete(flight, new CacheEntry(status, headers, body, now, 0, 0, NO_VARY, NO_VARY));
+			}
+
+			@Override
+			public void abandoned() {
+				coalescer.abandon(flight);
+			}
+		}));
+		return null;
+	}
+
+	/**
+	 * @return false for responses meant for a single client, and for responses that vary on request headers the
+	 * waiters of the flight may have other values of
+	 */
+	private static boolean isShareable(List<Pair<String, String>> headers, RequestCoalescer.Flight flight) {
+		if (CacheEntry.header(headers, "Set-Cookie") != null
+			|| CacheControl.parse(CachePolicy.values(headers, "Cache-Control")).isPrivate()) {
+			return false;
+		}
+		String[] vary = ResponseCache.parseVary(String.join(",", CachePolicy.values(headers, "Vary")));
+		if (vary == null) return false;
+		for (String name : vary) {
+			if (!name.isEmpty() && !flight.getVaryNames().contains(name)) return false;
+		}
+		return true;
+	}
+}
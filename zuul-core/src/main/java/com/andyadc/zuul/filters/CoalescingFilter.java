@@ -0,0 +1,146 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.cache.CacheEntry;
+import com.andyadc.zuul.coalesce.RequestCoalescer;
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Pre filter, after the CacheLookupFilter, that collapses identical concurrent GET and HEAD requests: the first one
+ * goes to the origin, the others wait for its response and are answered with a copy of it, without a route.
+ * <p>
+ * Requests are identical if they share the method, the route, the path, the query parameters in any order of names,
+ * and the request headers named by "zuul.request.coalescing.vary-headers" (Accept, Accept-Encoding and
+ * Accept-Language by default). Credentials, cookies, ranges and conditions always distinguish requests.
+ * Register it along with the CoalescedResponseFilter, with FilterRegistry.instance().put("CoalescingFilter", new CoalescingFilter()).
+ */
+public class CoalescingFilter extends ZuulFilter {
+
+	private static final String[] ALWAYS_VARY = {"authorization", "cookie", "range", "if-range", "if-none-match", "if-modified-since"};
+
+	private static final Comparator<String> BY_NAME = Comparator.comparing(p -> {
+		int eq = p.indexOf('=');
+		return eq < 0 ? p : p.substring(0, eq);
+	});
+
+	private final RequestCoalescer coalescer;
+	private final String[] varyNames;
+
+	public CoalescingFilter() {
+		this(RequestCoalescer.getInstance(), System.getProperty(ZuulConstants.ZUUL_REQUEST_COALESCING_VARY_HEADERS,
+			"Accept,Accept-Encoding,Accept-Language"));
+	}
+
+	/**
+	 * @param varyHeaders the comma separated names of the request headers that distinguish requests
+	 */
+	public CoalescingFilter(RequestCoalescer coalescer, String varyHeaders) {
+		this.coalescer = coalescer;
+		String[] names = Arrays.copyOf(ALWAYS_VARY, ALWAYS_VARY.length);
+		for (String name : varyHeaders.split(",")) {
+			name = name.trim().toLowerCase(Locale.ROOT);
+			if (!name.isEmpty() && !Arrays.asList(names).contains(name)) {
+				names = Arrays.copyOf(names, names.length + 1);
+				names[names.length - 1] = name;
+			}
+		}
+		this.varyNames = names;
+	}
+
+	@Override
+	public String filterType() {
+		return "pre";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 1010;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		String method = ctx.getRequest().getMethod();
+		return ("GET".equals(method) || "HEAD".equals(method)) && ctx.sendZuulResponse()
+			&& (ctx.getRouteHost() != null || ctx.getOriginGroup() != null);
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		String key = coalescingKey(ctx);
+		RequestCoalescer.Flight flight = coalescer.lead(key, varyNames);
+		if (flight != null) {
+			ctx.setCoalescingFlight(flight);
+			// the CoalescedResponseFilter ends the flight; this releases the waiters if the request fails before
+			ctx.addRequestEndTask(() -> coalescer.abandon(flight));
+			return null;
+		}
+		CacheEntry response;
+		try {
+			response = coalescer.await(key);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if (response != null) {
+			serve(ctx, response);
+		}
+		return response;
+	}
+
+	/**
+	 * @return the coalescing key: the method, the route, the path, the sorted query and the distinguishing headers
+	 */
+	protected String coalescingKey(RequestContext ctx) {
+		HttpServletRequest request = ctx.getRequest();
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(request.getMethod()).append(' ');
+		sb.append(ctx.getRouteName() != null ? ctx.getRouteName() : ctx.getRouteHost().toExternalForm()).append(' ');
+		sb.append(request.getRequestURI());
+		String query = request.getQueryString();
+		if (query != null && !query.isEmpty()) {
+			String[] params = query.split("&");
+			// stable, so repeated parameters keep their order
+			Arrays.sort(params, BY_NAME);
+			sb.append('?').append(String.join("&", params));
+		}
+		HeaderMap headers = ctx.getRequestHeaders();
+		for (String name : varyNames) {
+			for (String value : headers.getAll(name)) {
+				sb.append('\u0000').append(name).append('=').append(value.trim());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Makes a copy of the leader's response the response of the request, and skips the route filters
+	 */
+	static void serve(RequestContext ctx, CacheEntry response) {
+		ctx.setSendZuulResponse(false);
+		ctx.getZuulResponseHeaders().clear();
+		ctx.getOriginResponseHeaders().clear();
+		ctx.setResponseStatusCode(response.getStatus());
+		for (Pair<String, String> header : response.getHeaders()) {
+			ctx.addOriginResponseHeader(header.first(), header.second());
+			ctx.addZuulResponseHeader(header.first(), header.second());
+		}
+		ctx.setResponseGZipped("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding")));
+		if ("HEAD".equals(ctx.getRequest().getMethod()) || response.getStatus() == 204 || response.getStatus() == 304) {
+			ctx.setOriginContentLength((Long) null);
+			ctx.setResponseDataStream(null);
+		} else {
+			ctx.setOriginContentLength((long) response.getBodyLength());
+			ctx.setResponseDataStream(response.newBodyStream());
+		}
+	}
+}
@@ -0,0 +1,631 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.exception.StacklessZuulException;
+import com.andyadc.zuul.exception.ZuulException;
+import com.andyadc.zuul.http.HttpServletRequestWrapper;
+import com.andyadc.zuul.http.ResponseCompression;
+import com.andyadc.zuul.monitoring.CounterFactory;
+import com.andyadc.zuul.origin.ConcurrencyLimitExceededException;
+import com.andyadc.zuul.origin.ConcurrencyLimiter;
+import com.andyadc.zuul.origin.ConcurrencyLimiters;
+import com.andyadc.zuul.origin.InvalidRequestHeadException;
+import com.andyadc.zuul.origin.OriginBodyStream;
+import com.andyadc.zuul.origin.OriginClient;
+import com.andyadc.zuul.origin.OriginGroup;
+import com.andyadc.zuul.origin.OriginInstance;
+import com.andyadc.zuul.origin.OriginResponse;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Route filter that forwards the request to the RequestContext's routeHost with the OriginClient, over pooled
+ * keep-alive connections. The origin's status and headers are put into the RequestContext and its body is left as
+ * the responseDataStream for a post filter to send; the stream is closed at the end of the request at the latest.
+ * <p>
+ * With an originGroup in the RequestContext the routeHost is the group instance picked by its LoadBalancer, and the
+ * latency and outcome of the request are recorded on that instance. Idempotent requests to a group that can be
+ * replayed are retried on another instance up to "zuul.route.max-retries" times, and with "zuul.route.hedge.enabled"
+ * also hedged: sent to a second instance once the first has taken longer than the group's
+ * "zuul.route.hedge.percentile" latency. Both are limited by the group's RetryBudget.
+ * <p>
+ * With "zuul.origin.concurrency-limit.enabled" each origin has an adaptive ConcurrencyLimiter; requests over the
+ * limit fail at once with a 503 and the ORIGIN_CONCURRENCY_LIMIT_EXCEEDED error cause, or go to another instance
+ * of the group if they can be retried.
+ * <p>
+ * Hop-by-hop headers are not forwarded in either direction. Headers added with addZuulRequestHeader() replace the
+ * client's headers of the same name. Only http origins are routed; others are left to custom route filters.
+ * Register it with FilterRegistry.instance().put("HostRoutingFilter", new HostRoutingFilter()).
+ */
+public class HostRoutingFilter extends ZuulFilter {
+
+	private static final int MAX_RETRIES = Integer.getInteger(ZuulConstants.ZUUL_ROUTE_MAX_RETRIES, 1);
+	private static final boolean HEDGE = Boolean.getBoolean(ZuulConstants.ZUUL_ROUTE_HEDGE_ENABLED);
+	private static final long HEDGE_MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(
+		Long.getLong(ZuulConstants.ZUUL_ROUTE_HEDGE_MIN_DELAY_MILLIS, 5));
+
+	private static final ExecutorService HEDGES = newHedgeExecutor();
+	private static final ScheduledExecutorService HEDGE_TIMER = newHedgeTimer();
+
+	private final OriginClient client;
+	private final int maxRetries;
+	private final boolean hedge;
+	private final ConcurrencyLimiters limiters;
+
+	public HostRoutingFilter() {
+		this(OriginClient.getInstance(), MAX_RETRIES, HEDGE, ConcurrencyLimiters.getInstance());
+	}
+
+	public HostRoutingFilter(OriginClient client) {
+		this(client, MAX_RETRIES, HEDGE, ConcurrencyLimiters.getInstance());
+	}
+
+	/**
+	 * @param maxRetries the attempts a request to an origin group may take after the first, hedged ones included
+	 * @param hedge      true to hedge requests to origin groups
+	 * @param limiters   the concurrency limits of the origins
+	 */
+	public HostRoutingFilter(OriginClient client, int maxRetries, boolean hedge, ConcurrencyLimiters limiters) {
+		this.client = client;
+		this.maxRetries = maxRetries;
+		this.hedge = hedge;
+		this.limiters = limiters;
+	}
+
+	/**
+	 * Threads sending hedges, at most "zuul.route.hedge.max-threads" (200 by default). Idle threads are reclaimed.
+	 * When all of them are busy the request is not hedged and only waits for its first attempt.
+	 */
+	private static ExecutorService newHedgeExecutor() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		int maxThreads = Integer.getInteger(ZuulConstants.ZUUL_ROUTE_HEDGE_MAX_THREADS, 200);
+		return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			Thread t = new Thread(r, "ZuulOriginHedge-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Starts the hedges of requests whose first attempt hasn't finished within the hedge delay
+	 */
+	private static ScheduledExecutorService newHedgeTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "ZuulOriginHedgeTimer");
+			t.setDaemon(true);
+			return t;
+		});
+		// most first attempts finish in time, don't keep their cancelled hedges queued until they are due
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	@Override
+	public String filterType() {
+		return "route";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 100;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		if (!ctx.sendZuulResponse()) return false;
+		if (ctx.getOriginGroup() != null) return true;
+		URL host = ctx.getRouteHost();
+		return host != null && "http".equalsIgnoreCase(host.getProtocol());
+	}
+
+	@Override
+	public Object run() throws ZuulException {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		HttpServletRequest request = ctx.getRequest();
+		OriginGroup group = ctx.getOriginGroup();
+		OriginResponse response;
+		try {
+			String uri = buildRequestURI(ctx, request);
+			List<Pair<String, String>> headers = buildRequestHeaders(ctx);
+			if (group == null) {
+				response = execute(ctx.getRouteHost(), request.getMethod(), uri, headers,
+						hasBody(ctx, request) ? openBody(request) : null, request.getContentLengthLong());
+			} else {
+				Attempt attempt = executeInGroup(ctx, request, group, uri, headers);
+				ctx.setRouteHost(attempt.instance.getUrl());
+				response = attempt.response;
+			}
+		} catch (IOException e) {
+			throw toZuulException(e);
+		}
+		setResponse(ctx, response);
+		return response;
+	}
+
+	/**
+	 * Sends the request to an instance of the group. Idempotent requests without a body, or with a body that is
+	 * buffered and can be replayed, are retried on another instance after a connection failure or a 502, 503 or 504.
+	 * With hedging they are also sent to another instance if the first one hasn't answered after the group's
+	 * latency percentile, and the first usable answer is taken. Retries and hedged requests are drawn from the
+	 * group's RetryBudget.
+	 */
+	private Attempt executeInGroup(RequestContext ctx, HttpServletRequest request, OriginGroup group, String uri,
+								   List<Pair<String, String>> headers) throws IOException {
+		group.getRetryBudget().recordRequest();
+		boolean hasBody = hasBody(ctx, request);
+		boolean replayable = OriginClient.isIdempotent(request.getMethod())
+				&& (!hasBody || request instanceof HttpServletRequestWrapper
+				&& (((HttpServletRequestWrapper) request).isBodyBuffered() || ctx.isRequestBodyRequired()));
+		int retries = replayable ? maxRetries : 0;
+		long hedgeDelayNanos = hedge && retries > 0 ? group.getLatencies().getPercentileNanos() : -1;
+		if (hedgeDelayNanos < 0) {
+			return executeWithRetries(request, group, uri, headers, hasBody, retries, null);
+		}
+		return executeHedged(request, group, uri, headers, hasBody, retries, Math.max(hedgeDelayNanos, HEDGE_MIN_DELAY_NANOS));
+	}
+
+	private Attempt executeWithRetries(HttpServletRequest request, OriginGroup group, String uri, List<Pair<String, String>> headers,
+									   boolean hasBody, int retries, OriginInstance previous) throws IOException {
+		for (int i = 0; ; i++) {
+			Attempt attempt = newAttempt(request, group, previous, uri, headers, hasBody, null);
+			attempt.run();
+			if (!attempt.shouldRetry() || i >= retries || !tryRetry(group, "zuul.route.retry")) {
+				return attempt.result();
+			}
+			attempt.discard();
+			previous = attempt.instance;
+		}
+	}
+
+	/**
+	 * Runs the first attempt on the calling thread, and a hedge on a hedge thread if the first hasn't finished after
+	 * the hedge delay. A cancelled hedge is waited for before returning, as it may still be reading the request body,
+	 * whose buffers are released at the end of the request. Unusable answers are retried on the calling thread.
+	 */
+	private Attempt executeHedged(HttpServletRequest request, OriginGroup group, String uri, List<Pair<String, String>> headers,
+								  boolean hasBody, int retries, long hedgeDelayNanos) throws IOException {
+		// the hedge's body is opened here, on the calling thread, which has the RequestContext
+		Race race = new Race(group, request.getMethod(), uri, headers, hasBody ? openBody(request) : null,
+				request.getContentLengthLong());
+		Attempt first = race.first = newAttempt(request, group, null, uri, headers, hasBody, race);
+		ScheduledFuture<?> timer = HEDGE_TIMER.schedule(race::startHedge, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+		first.run();
+		timer.cancel(false);
+		Attempt hedge = race.close();
+		Attempt result = first;
+		if (hedge != null) {
+			if (race.winner.get() == first) {
+				hedge.cancel();
+				hedge.awaitStopped();
+			} else {
+				// either the hedge won and cancelled the first attempt, or the first attempt was unusable
+				hedge.awaitStopped();
+				if (hedge.isUsable()) {
+					CounterFactory.instance().increment("zuul.route.hedge.won");
+					first.discard();
+					result = hedge;
+				} else if (first.response == null) {
+					result = hedge;
+				} else {
+					hedge.discard();
+				}
+			}
+		}
+		int launched = hedge == null ? 1 : 2;
+		if (!result.shouldRetry() || launched > retries || !tryRetry(group, "zuul.route.retry")) {
+			return result.result();
+		}
+		result.discard();
+		return executeWithRetries(request, group, uri, headers, hasBody, retries - launched, result.instance);
+	}
+
+	/**
+	 * @return an attempt on an instance of the group other than previous, if possible, with the request body opened
+	 * on the calling thread, which has the RequestContext
+	 */
+	private Attempt newAttempt(HttpServletRequest request, OriginGroup group, OriginInstance previous, String uri,
+							   List<Pair<String, String>> headers, boolean hasBody, Race race) throws IOException {
+		InputStream body = hasBody ? openBody(request) : null;
+		return new Attempt(group, group.start(previous), request.getMethod(), uri, headers, body,
+				request.getContentLengthLong(), race);
+	}
+
+	private static boolean tryRetry(OriginGroup group, String counter) {
+		if (group.getRetryBudget().tryRetry()) {
+			CounterFactory.instance().increment(counter);
+			return true;
+		}
+		CounterFactory.instance().increment("zuul.route.retry-budget.exhausted");
+		return false;
+	}
+
+	/**
+	 * @return true for origin statuses another instance may answer better
+	 */
+	private static boolean isRetryable(int status) {
+		return status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * A first attempt and the hedge started if it is slow. The first usable answer wins and cancels the other attempt.
+	 */
+	private final class Race {
+		final OriginGroup group;
+		final String method;
+		final String uri;
+		final List<Pair<String, String>> headers;
+		final InputStream hedgeBody;
+		final long contentLength;
+		final AtomicReference<Attempt> winner = new AtomicReference<>();
+		Attempt first;
+		private Attempt hedge;
+		private boolean closed;
+
+		Race(OriginGroup group, String method, String uri, List<Pair<String, String>> headers, InputStream hedgeBody,
+			 long contentLength) {
+			this.group = group;
+			this.method = method;
+			this.uri = uri;
+			this.headers = headers;
+			this.hedgeBody = hedgeBody;
+			this.contentLength = contentLength;
+		}
+
+		/**
+		 * Starts the hedge on a hedge thread, run by the hedge timer
+		 */
+		synchronized void startHedge() {
+			if (closed || !tryRetry(group, "zuul.route.hedge")) return;
+			OriginInstance instance = group.start(first.instance);
+			Attempt attempt = new Attempt(group, instance, method, uri, headers, hedgeBody, contentLength, this);
+			try {
+				HEDGES.execute(attempt);
+			} catch (RejectedExecutionException e) {
+				group.cancel(instance, 0);
+				CounterFactory.instance().increment("zuul.route.hedge.rejected");
+				return;
+			}
+			hedge = attempt;
+		}
+
+		/**
+		 * Stops the hedge from being started
+		 *
+		 * @return the hedge if it was started, null otherwise
+		 */
+		synchronized Attempt close() {
+			closed = true;
+			return hedge;
+		}
+
+		/**
+		 * Called by an attempt that finished without being cancelled
+		 */
+		void finished(Attempt attempt) {
+			if (attempt.isUsable() && winner.compareAndSet(null, attempt) && attempt != first) {
+				first.cancel();
+			}
+		}
+	}
+
+	/**
+	 * One attempt at sending the request to an instance, run by the calling thread or a hedge thread.
+	 * Cancelling an attempt interrupts its origin IO, or closes the response it got.
+	 */
+	private final class Attempt implements Runnable {
+		final OriginGroup group;
+		final OriginInstance instance;
+		final String method;
+		final String uri;
+		final List<Pair<String, String>> headers;
+		final InputStream body;
+		final long contentLength;
+		final Race race;
+		final long startNanos = System.nanoTime();
+		final CountDownLatch stopped = new CountDownLatch(1);
+		OriginResponse response;
+		IOException failure;
+		Thread thread;
+		boolean finished;
+		boolean cancelled;
+
+		/**
+		 * @param race the race the attempt is in, null if it is not hedged
+		 */
+		Attempt(OriginGroup group, OriginInstance instance, String method, String uri, List<Pair<String, String>> headers,
+				InputStream body, long contentLength, Race race) {
+			this.group = group;
+			this.instance = instance;
+			this.method = method;
+			this.uri = uri;
+			this.headers = headers;
+			this.body = body;
+			this.contentLength = contentLength;
+			this.race = race;
+		}
+
+		@Override
+		public void run() {
+			try {
+				synchronized (this) {
+					if (cancelled) {
+						finished = true;
+						group.cancel(instance, 0);
+						return;
+					}
+					thread = Thread.currentThread();
+				}
+				OriginResponse r = null;
+				IOException f = null;
+				try {
+					r = execute(instance.getUrl(), method, uri, headers, body, contentLength);
+				} catch (IOException e) {
+					f = e;
+				} catch (RuntimeException e) {
+					f = new IOException(e);
+				}
+				long latencyNanos = System.nanoTime() - startNanos;
+				boolean wasCancelled;
+				synchronized (this) {
+					response = r;
+					failure = f;
+					finished = true;
+					thread = null;
+					wasCancelled = cancelled;
+				}
+				if (wasCancelled) {
+					// clear the interrupt that ended the IO, or came too late to
+					Thread.interrupted();
+					group.cancel(instance, latencyNanos);
+					if (r != null) r.getBody().close();
+					return;
+				}
+				if (f instanceof ConcurrencyLimitExceededException || f instanceof InvalidRequestHeadException) {
+					// never sent, so it says nothing about the instance's health
+					group.cancel(instance, 0);
+				} else {
+					group.complete(instance, latencyNanos, r != null && r.getStatus() < 500);
+				}
+				if (race != null) race.finished(this);
+			} finally {
+				stopped.countDown();
+			}
+		}
+
+		boolean isUsable() {
+			return response != null && !isRetryable(response.getStatus());
+		}
+
+		/**
+		 * @return true if another instance may answer better; a request that can't be sent fails the same anywhere
+		 */
+		boolean shouldRetry() {
+			return !isUsable() && !(failure instanceof InvalidRequestHeadException);
+		}
+
+		/**
+		 * @return this attempt if it got a response
+		 * @throws IOException the failure of the attempt otherwise
+		 */
+		Attempt result() throws IOException {
+			if (response == null) throw failure;
+			return this;
+		}
+
+		/**
+		 * Closes the response of a finished attempt that is not used
+		 */
+		void discard() {
+			if (response != null) response.getBody().close();
+		}
+
+		/**
+		 * Gives up the attempt, finished or not
+		 */
+		void cancel() {
+			synchronized (this) {
+				if (cancelled) return;
+				cancelled = true;
+				if (!finished) {
+					if (thread != null) thread.interrupt();
+					return;
+				}
+			}
+			discard();
+		}
+
+		/**
+		 * Waits until the attempt has run, so that it no longer reads the request body. Interrupts don't end the wait.
+		 */
+		void awaitStopped() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					stopped.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	private static InputStream openBody(HttpServletRequest request) throws IOException {
+		return request instanceof HttpServletRequestWrapper
+				? ((HttpServletRequestWrapper) request).openBodyStream()
+				: request.getInputStream();
+	}
+
+	/**
+	 * Sends the request within the concurrency limit of the origin, if limits are on. The time to the response head
+	 * is the limiter's RTT sample; timeouts, 503 and 429 count as drops.
+	 */
+	private OriginResponse execute(URL host, String method, String uri, List<Pair<String, String>> headers,
+								   InputStream body, long contentLength) throws IOException {
+		ConcurrencyLimiter limiter = limiters.forOrigin(OriginClient.originKey(host));
+		if (limiter == null) {
+			return client.execute(host, method, uri, headers, body, contentLength);
+		}
+		limiter.acquire();
+		long start = System.nanoTime();
+		OriginResponse response;
+		try {
+			response = client.execute(host, method, uri, headers, body, contentLength);
+		} catch (SocketTimeoutException e) {
+			limiter.onDropped();
+			throw e;
+		} catch (IOException | RuntimeException e) {
+			limiter.onIgnore();
+			throw e;
+		}
+		if (response.getStatus() == 503 || response.getStatus() == 429) {
+			limiter.onDropped();
+		} else {
+			limiter.onSuccess(System.nanoTime() - start);
+		}
+		return response;
+	}
+
+	private static ZuulException toZuulException(IOException e) {
+		if (e instanceof ConcurrencyLimitExceededException) {
+			return new StacklessZuulException("Origin is over its concurrency limit", 503, "ORIGIN_CONCURRENCY_LIMIT_EXCEEDED");
+		}
+		if (e instanceof InvalidRequestHeadException) {
+			return new ZuulException(e, "Request can't be forwarded", 500, "ORIGIN_INVALID_REQUEST");
+		}
+		if (e instanceof SocketTimeoutException) {
+			return new ZuulException(e, "Origin timed out", 504, "ORIGIN_TIMEOUT");
+		}
+		if (e instanceof ConnectException) {
+			return new ZuulException(e, "Origin refused connection", 502, "ORIGIN_CONNECT_ERROR");
+		}
+		return new ZuulException(e, "Forwarding error", 502, "ORIGIN_IO_ERROR");
+	}
+
+	private static boolean hasBody(RequestContext ctx, HttpServletRequest request) {
+		return request.getContentLengthLong() > 0 || ctx.isChunkedRequestBody()
+				|| "chunked".equalsIgnoreCase(ctx.getRequestHeaders().getFirst("Transfer-Encoding"));
+	}
+
+	/**
+	 * @return the request path and query, with the query params as modified by filters if they were
+	 */
+	protected String buildRequestURI(RequestContext ctx, HttpServletRequest request) throws UnsupportedEncodingException {
+		String uri = request.getRequestURI();
+		Map<String, List<String>> params = ctx.getRequestQueryParams();
+		String query;
+		if (params == null) {
+			query = request.getQueryString();
+		} else {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String, List<String>> param : params.entrySet()) {
+				String name = URLEncoder.encode(param.getKey(), "UTF-8");
+				for (String value : param.getValue()) {
+					if (sb.length() > 0) sb.append('&');
+					sb.append(name);
+					if (value != null) sb.append('=').append(URLEncoder.encode(value, "UTF-8"));
+				}
+			}
+			query = sb.toString();
+		}
+		return query == null || query.isEmpty() ? uri : uri + '?' + query;
+	}
+
+	/**
+	 * @return the client's headers without hop-by-hop and framing headers, overridden by the zuul request headers
+	 */
+	protected List<Pair<String, String>> buildRequestHeaders(RequestContext ctx) {
+		HeaderMap zuulHeaders = ctx.getZuulRequestHeaderMap();
+		List<Pair<String, String>> headers = new ArrayList<>();
+		for (Map.Entry<String, List<String>> header : ctx.getRequestHeaders().asListMap().entrySet()) {
+			String name = header.getKey();
+			if (isHopByHop(name) || HeaderMap.nameEquals(name, "Host") || HeaderMap.nameEquals(name, "Content-Length")
+					|| HeaderMap.nameEquals(name, "Expect") || zuulHeaders.containsName(name)) {
+				continue;
+			}
+			for (String value : header.getValue()) {
+				headers.add(new Pair<>(name, value));
+			}
+		}
+		for (Map.Entry<String, String> header : zuulHeaders.asSingleValueMap().entrySet()) {
+			if (header.getValue() != null && !HeaderMap.nameEquals(header.getKey(), "Host")) {
+				headers.add(new Pair<>(header.getKey(), header.getValue()));
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Puts the origin response into the RequestContext
+	 */
+	protected void setResponse(RequestContext ctx, OriginResponse response) {
+		final OriginBodyStream body = response.getBody();
+		ctx.addRequestEndTask(body::close);
+
+		ctx.setResponseStatusCode(response.getStatus());
+		for (Pair<String, String> header : response.getHeaders()) {
+			String name = header.first();
+			ctx.addOriginResponseHeader(name, header.second());
+			if (HeaderMap.nameEquals(name, "Content-Length")) {
+				ctx.setOriginContentLength(header.second());
+			} else if (!isHopByHop(name)) {
+				ctx.addZuulResponseHeader(name, header.second());
+			}
+		}
+		ctx.setResponseGZipped("gzip".equals(ResponseCompression.getInstance().getOriginContentEncoding(ctx)));
+		ctx.setResponseDataStream(body);
+	}
+
+	/**
+	 * @return true for headers that only apply to a single connection
+	 */
+	public static boolean isHopByHop(String name) {
+		switch (name.length()) {
+			case 2:
+				return HeaderMap.nameEquals(name, "TE");
+			case 7:
+				return HeaderMap.nameEquals(name, "Trailer") || HeaderMap.nameEquals(name, "Upgrade");
+			case 8:
+				return HeaderMap.nameEquals(name, "Trailers");
+			case 10:
+				return HeaderMap.nameEquals(name, "Connection") || HeaderMap.nameEquals(name, "Keep-Alive");
+			case 16:
+				return HeaderMap.nameEquals(name, "Proxy-Connection");
+			case 17:
+				return HeaderMap.nameEquals(name, "Transfer-Encoding");
+			case 18:
+				return HeaderMap.nameEquals(name, "Proxy-Authenticate");
+			case 19:
+				return HeaderMap.nameEquals(name, "Proxy-Authorization");
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.route.Route;
+import com.andyadc.zuul.route.RouteTableManager;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Pre filter that routes requests with the RouteTable of the RouteTableManager: the routeHost, or the originGroup,
+ * and the routeName of the RequestContext are set from the most specific matching route. Requests whose routeHost
+ * was already set by an earlier filter, or that match no route, are left alone.
+ * Register it with FilterRegistry.instance().put("RouteFilter", new RouteFilter()).
+ */
+public class RouteFilter extends ZuulFilter {
+
+	private final RouteTableManager manager;
+
+	public RouteFilter() {
+		this(RouteTableManager.getInstance());
+	}
+
+	public RouteFilter(RouteTableManager manager) {
+		this.manager = manager;
+	}
+
+	@Override
+	public String filterType() {
+		return "pre";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 50;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		return ctx.getRouteHost() == null && ctx.getOriginGroup() == null && manager.getRouteTable().size() > 0;
+	}
+
+	@Override
+	public Object run() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		HttpServletRequest request = ctx.getRequest();
+		Route route = manager.getRouteTable().match(request.getMethod(), request.getRequestURI(), ctx.getRequestHeaders());
+		if (route != null) {
+			if (route.getGroup() != null) {
+				ctx.setOriginGroup(route.getGroup());
+			} else {
+				ctx.setRouteHost(route.getOrigin());
+			}
+			ctx.setRouteName(route.getName());
+		}
+		return route;
+	}
+}
@@ -0,0 +1,149 @@
+package com.andyadc.zuul.filters;
+
+import com.andyadc.zuul.ZuulFilter;
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.constants.ZuulHeaders;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.exception.ZuulException;
+import com.andyadc.zuul.http.AcceptEncoding;
+import com.andyadc.zuul.http.CompressingOutputStream;
+import com.andyadc.zuul.http.ResponseCompression;
+import com.andyadc.zuul.http.ServletInputStreamWrapper;
+import com.andyadc.zuul.origin.OriginBodyStream;
+import com.andyadc.zuul.util.BufferPool;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Post filter that sends the response built by the route filters: the status code, the zuul response headers, and
+ * the responseBody or, without one, the responseDataStream.
+ * <p>
+ * Bodies are streamed, never held in memory as a whole. Origin bodies are written straight from the origin
+ * connection's read buffer and in-memory bodies straight from their array; any other stream is copied through a
+ * pooled buffer of "zuul.initial-stream-buffer-size" bytes. Responses are compressed as ResponseCompression decides.
+ * A gzipped origin response is inflated for clients that don't accept gzip.
+ * With "zuul.set-content-length" the origin's Content-Length is sent whenever the body is sent unchanged.
+ * Register it with FilterRegistry.instance().put("SendResponseFilter", new SendResponseFilter()).
+ */
+public class SendResponseFilter extends ZuulFilter {
+
+	private static final int BUFFER_SIZE = Integer.getInteger(ZuulConstants.ZUUL_INITIAL_STREAM_BUFFER_SIZE, 8192);
+	private static final boolean SET_CONTENT_LENGTH = Boolean.getBoolean(ZuulConstants.ZUUL_SET_CONTENT_LENGTH);
+
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	@Override
+	public String filterType() {
+		return "post";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 1000;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		return !ctx.getResponse().isCommitted()
+			&& (!ctx.getZuulResponseHeaders().isEmpty() || ctx.getResponseBody() != null || ctx.getResponseDataStream() != null);
+	}
+
+	@Override
+	public Object run() throws ZuulException {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		try {
+			writeResponse(ctx);
+		} catch (IOException e) {
+			throw new ZuulException(e, "Error sending the response", 500, "SEND_RESPONSE_ERROR");
+		}
+		return null;
+	}
+
+	private void writeResponse(RequestContext ctx) throws IOException {
+		HttpServletResponse response = ctx.getResponse();
+		response.setStatus(ctx.getResponseStatusCode());
+
+		// an origin gzipped body is inflated for clients that can't take it
+		boolean inflate = ctx.getResponseGZipped() && ctx.getResponseBody() == null
+			&& !AcceptEncoding.accepts(ctx.getRequestHeaders().getFirst(ZuulHeaders.ACCEPT_ENCODING), AcceptEncoding.GZIP);
+		String contentType = null;
+		List<Pair<String, String>> headers = ctx.getZuulResponseHeaders();
+		for (int i = 0, size = headers.size(); i < size; i++) {
+			Pair<String, String> header = headers.get(i);
+			String name = header.first();
+			if (HeaderMap.nameEquals(name, CONTENT_LENGTH)) continue;
+			if (inflate && HeaderMap.nameEquals(name, ZuulHeaders.CONTENT_ENCODING)) continue;
+			if (HeaderMap.nameEquals(name, CONTENT_TYPE)) contentType = header.second();
+			response.addHeader(name, header.second());
+		}
+
+		String body = ctx.getResponseBody();
+		InputStream in = ctx.getResponseDataStream();
+		if (body == null && in == null) return;
+
+		byte[] bytes = null;
+		long contentLength;
+		if (body != null) {
+			bytes = body.getBytes(StandardCharsets.UTF_8);
+			contentLength = bytes.length;
+		} else {
+			Long originLength = ctx.getOriginContentLength();
+			contentLength = inflate || originLength == null ? -1 : originLength;
+		}
+
+		OutputStream out = response.getOutputStream();
+		OutputStream compressed = ResponseCompression.getInstance().compress(ctx, response, out, contentType, contentLength);
+		if (compressed == out && contentLength >= 0 && (SET_CONTENT_LENGTH || bytes != null)) {
+			response.setContentLengthLong(contentLength);
+		}
+		try {
+			if (bytes != null) {
+				compressed.write(bytes);
+			} else {
+				writeStream(inflate ? new GZIPInputStream(in, BUFFER_SIZE) : in, compressed);
+			}
+		} finally {
+			if (compressed instanceof CompressingOutputStream) {
+				compressed.close();
+			}
+			if (in != null) {
+				in.close();
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Copies the stream to out, without an intermediate copy where the stream allows it
+	 */
+	protected void writeStream(InputStream in, OutputStream out) throws IOException {
+		if (in instanceof OriginBodyStream) {
+			((OriginBodyStream) in).writeTo(out);
+			return;
+		}
+		if (in instanceof ServletInputStreamWrapper) {
+			((ServletInputStreamWrapper) in).transferTo(out);
+			return;
+		}
+		BufferPool buffers = BufferPool.getInstance();
+		byte[] buf = buffers.acquire(BUFFER_SIZE);
+		try {
+			int n;
+			while ((n = in.read(buf, 0, BUFFER_SIZE)) != -1) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			buffers.release(buf);
+		}
+	}
+}
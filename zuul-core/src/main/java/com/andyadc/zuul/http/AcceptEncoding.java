@@ -0,0 +1,127 @@
+package com.andyadc.zuul.http;
+
+/**
+ * Parser for Accept-Encoding headers with q-values, e.g. "gzip;q=1.0, deflate;q=0.5, *;q=0".
+ * The header is scanned in place; codings are compared ignoring case and nothing is allocated.
+ * q-values are handled as integers in thousandths.
+ */
+public final class AcceptEncoding {
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * q-value returned for codings the header does not mention
+	 */
+	public static final int NOT_LISTED = -1;
+
+	private AcceptEncoding() {
+	}
+
+	/**
+	 * Returns the q-value the header gives a coding: its own entry, else the "*" entry. "x-gzip" counts as "gzip".
+	 *
+	 * @param acceptEncoding the Accept-Encoding header, may be null
+	 * @param coding         a content coding, e.g. "gzip"
+	 * @return the q-value in thousandths (0 to 1000), or NOT_LISTED if neither the coding nor "*" is listed
+	 */
+	public static int qValue(String acceptEncoding, String coding) {
+		if (acceptEncoding == null) {
+			return NOT_LISTED;
+		}
+		int wildcard = NOT_LISTED;
+		int len = acceptEncoding.length();
+		int i = 0;
+		while (i < len) {
+			int end = acceptEncoding.indexOf(',', i);
+			if (end < 0) end = len;
+
+			int nameStart = skipSpace(acceptEncoding, i, end);
+			int nameEnd = nameStart;
+			while (nameEnd < end) {
+				char c = acceptEncoding.charAt(nameEnd);
+				if (c == ';' || c == ' ' || c == '\t') break;
+				nameEnd++;
+			}
+			if (nameEnd > nameStart) {
+				if (matches(acceptEncoding, nameStart, nameEnd, coding)
+					|| (GZIP.equals(coding) && matches(acceptEncoding, nameStart, nameEnd, "x-gzip"))) {
+					return parseQ(acceptEncoding, nameEnd, end);
+				}
+				if (nameEnd - nameStart == 1 && acceptEncoding.charAt(nameStart) == '*') {
+					wildcard = parseQ(acceptEncoding, nameEnd, end);
+				}
+			}
+			i = end + 1;
+		}
+		return wildcard;
+	}
+
+	/**
+	 * @return true if the header accepts the coding with a q-value above 0
+	 */
+	public static boolean accepts(String acceptEncoding, String coding) {
+		return qValue(acceptEncoding, coding) > 0;
+	}
+
+	/**
+	 * Picks the response coding for an Accept-Encoding header: gzip or deflate, whichever has the higher q-value,
+	 * preferring gzip on a tie.
+	 *
+	 * @return GZIP, DEFLATE, or null if the client accepts neither
+	 */
+	public static String negotiate(String acceptEncoding) {
+		int gzip = qValue(acceptEncoding, GZIP);
+		int deflate = qValue(acceptEncoding, DEFLATE);
+		if (gzip <= 0 && deflate <= 0) {
+			return null;
+		}
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	private static int skipSpace(String s, int i, int end) {
+		while (i < end && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) i++;
+		return i;
+	}
+
+	private static boolean matches(String s, int start, int end, String coding) {
+		return end - start == coding.length() && s.regionMatches(true, start, coding, 0, coding.length());
+	}
+
+	/**
+	 * Parses the parameters after a coding, e.g. ";q=0.5". Malformed q-values count as 0, as the coding is then
+	 * not acceptable with any certainty.
+	 */
+	private static int parseQ(String s, int i, int end) {
+		while (i < end) {
+			int semi = s.indexOf(';', i);
+			if (semi < 0 || semi >= end) break;
+			int p = skipSpace(s, semi + 1, end);
+			if (p + 1 < end && (s.charAt(p) == 'q' || s.charAt(p) == 'Q')) {
+				p = skipSpace(s, p + 1, end);
+				if (p < end && s.charAt(p) == '=') {
+					return parseQValue(s, skipSpace(s, p + 1, end), end);
+				}
+			}
+			i = semi + 1;
+		}
+		return 1000;
+	}
+
+	private static int parseQValue(String s, int i, int end) {
+		if (i >= end) return 0;
+		char c = s.charAt(i);
+		if (c != '0' && c != '1') return 0;
+		int q = (c - '0') * 1000;
+		i++;
+		if (i < end && s.charAt(i) == '.') {
+			i++;
+			for (int scale = 100; scale > 0 && i < end; scale /= 10, i++) {
+				char d = s.charAt(i);
+				if (d < '0' || d > '9') break;
+				q += (d - '0') * scale;
+			}
+		}
+		return Math.min(q, 1000);
+	}
+}
@@ -0,0 +1,177 @@
+package com.andyadc.zuul.http;
+
+import com.andyadc.zuul.constants.ZuulHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads a request body without blocking a container thread, using a Servlet 3.1 ReadListener.
+ * The request is put into async mode and the body is read into a BufferedRequestBody as the client sends it. Once the
+ * whole body has arrived it is stored as a request attribute and the request is dispatched to the servlet again,
+ * which then runs the filters as usual; HttpServletRequestWrapper picks the body up from the attribute.
+ * A slow uploading client thus only holds a thread while data is actually available.
+ * <p>
+ * If the client does not send the body within the timeout the request is answered with 408, if reading it fails with
+ * 400. Bodies that are never picked up are released when the async cycle completes.
+ */
+class AsyncBodyReader implements ReadListener, AsyncListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncBodyReader.class);
+
+	static final String BODY_ATTRIBUTE = AsyncBodyReader.class.getName() + ".body";
+
+	private final HttpServletRequest request;
+	private final AsyncContext async;
+	private final ServletInputStream in;
+	private final BufferedRequestBody.Builder builder;
+	private boolean done;
+
+	private AsyncBodyReader(HttpServletRequest request, AsyncContext async, BufferedRequestBody.Builder builder) throws IOException {
+		this.request = request;
+		this.async = async;
+		this.builder = builder;
+		this.in = request.getInputStream();
+	}
+
+	/**
+	 * @return true if the request has a body that can be read asynchronously, and has not been read yet
+	 */
+	static boolean shouldRead(HttpServletRequest request) {
+		if (request.getDispatcherType() != DispatcherType.REQUEST || !request.isAsyncSupported()) {
+			return false;
+		}
+		if (request.getAttribute(BODY_ATTRIBUTE) != null) {
+			return false;
+		}
+		return request.getContentLengthLong() > 0 || ZuulHeaders.CHUNKED.equalsIgnoreCase(request.getHeader(ZuulHeaders.TRANSFER_ENCODING));
+	}
+
+	/**
+	 * Starts async mode and reading the body. The calling servlet must return without touching the request.
+	 * The body is kept in memory up to the same threshold as HttpServletRequestWrapper uses.
+	 *
+	 * @param timeoutMillis how long the client has to send the body
+	 */
+	static void start(HttpServletRequest request, long timeoutMillis) throws IOException {
+		AsyncContext async = request.startAsync();
+		async.setTimeout(timeoutMillis);
+		String tempDir = HttpServletRequestWrapper.TEMP_DIR;
+		BufferedRequestBody.Builder builder = new BufferedRequestBody.Builder(request.getContentLengthLong(),
+			HttpServletRequestWrapper.MEMORY_THRESHOLD, tempDir == null ? null : new File(tempDir));
+		AsyncBodyReader reader;
+		try {
+			reader = new AsyncBodyReader(request, async, builder);
+		} catch (IOException e) {
+			builder.abort();
+			throw e;
+		}
+		async.addListener(reader);
+		reader.in.setReadListener(reader);
+	}
+
+	/**
+	 * Takes the body read by an AsyncBodyReader off the request
+	 *
+	 * @return the body, null if the request was not read asynchronously. The caller must release() it.
+	 */
+	static BufferedRequestBody takeBody(HttpServletRequest request) {
+		Object body = request.getAttribute(BODY_ATTRIBUTE);
+		if (body == null) {
+			return null;
+		}
+		request.removeAttribute(BODY_ATTRIBUTE);
+		return (BufferedRequestBody) body;
+	}
+
+	@Override
+	public synchronized void onDataAvailable() throws IOException {
+		if (done) return;
+		while (in.isReady()) {
+			if (builder.read(in) == -1) {
+				// onAllDataRead() follows
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void onAllDataRead() throws IOException {
+		synchronized (this) {
+			if (done) return;
+			done = true;
+			try {
+				request.setAttribute(BODY_ATTRIBUTE, builder.build());
+			} catch (IOException e) {
+				LOG.error("Error buffering request body read asynchronously", e);
+				builder.abort();
+				respond(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				return;
+			}
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Read request body of " + builder.length() + " bytes asynchronously");
+		}
+		async.dispatch();
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		LOG.warn("Error reading request body asynchronously: " + t.getMessage());
+		fail(HttpServletResponse.SC_BAD_REQUEST);
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) {
+		LOG.warn("Timed out reading request body asynchronously after " + builder.length() + " bytes");
+		fail(HttpServletResponse.SC_REQUEST_TIMEOUT);
+	}
+
+	@Override
+	public void onError(AsyncEvent event) {
+		fail(HttpServletResponse.SC_BAD_REQUEST);
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+		BufferedRequestBody body = takeBody(request);
+		if (body != null) {
+			body.release();
+		}
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+	}
+
+	private void fail(int status) {
+		synchronized (this) {
+			if (done) return;
+			done = true;
+			builder.abort();
+		}
+		respond(status);
+	}
+
+	private void respond(int status) {
+		try {
+			HttpServletResponse response = (HttpServletResponse) async.getResponse();
+			if (!response.isCommitted()) {
+				response.setStatus(status);
+			}
+			async.complete();
+		} catch (IllegalStateException e) {
+			// already completed, e.g. the client went away
+		}
+	}
+}
@@ -0,0 +1,483 @@
+package com.andyadc.zuul.http;
+
+import com.andyadc.zuul.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request body read once from the client and replayable any number of times.
+ * Bodies up to the memory threshold are held on the heap in arrays taken from the BufferPool: a single array sized
+ * by the Content-Length when it is known, otherwise a chain of fixed size segments. Larger bodies, or chunked bodies
+ * that grow past the threshold, are streamed to a temp file that is memory mapped for re-reads.
+ * release() returns the arrays to the pool and deletes the temp file.
+ */
+public abstract class BufferedRequestBody {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BufferedRequestBody.class);
+	static final int SEGMENT_SIZE = 16 * 1024;
+
+	/**
+	 * Reads the whole input stream.
+	 *
+	 * @param in              the client's body stream
+	 * @param contentLength   the declared Content-Length, -1 if unknown (chunked)
+	 * @param memoryThreshold the maximum body size kept in memory
+	 * @param tempDir         directory for spilled bodies, null for the default temp directory
+	 */
+	public static BufferedRequestBody read(InputStream in, long contentLength, int memoryThreshold, File tempDir) throws IOException {
+		Builder builder = new Builder(contentLength, memoryThreshold, tempDir);
+		try {
+			while (builder.read(in) != -1) {
+			}
+			return builder.build();
+		} catch (IOException e) {
+			builder.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Builds a body from a stream one read() at a time, so it can be filled by blocking reads as well as from a
+	 * non-blocking ReadListener. A builder that is not built must be aborted to release its buffers.
+	 */
+	static final class Builder {
+		private final long contentLength;
+		private final int memoryThreshold;
+		private final File tempDir;
+		private final List<byte[]> segments = new ArrayList<>(1);
+		private byte[] segment;
+		private int pos;
+		private long total;
+		private File file;
+		private OutputStream fileOut;
+		private byte[] scratch;
+
+		/**
+		 * @param contentLength   the declared Content-Length, -1 if unknown (chunked)
+		 * @param memoryThreshold the maximum body size kept in memory
+		 * @param tempDir         directory for spilled bodies, null for the default temp directory
+		 */
+		Builder(long contentLength, int memoryThreshold, File tempDir) throws IOException {
+			this.contentLength = contentLength;
+			this.memoryThreshold = memoryThreshold;
+			this.tempDir = tempDir;
+			if (contentLength > memoryThreshold) {
+				spill();
+			} else {
+				segment = BufferPool.getInstance().acquire(contentLength > 0 ? (int) contentLength : SEGMENT_SIZE);
+				segments.add(segment);
+			}
+		}
+
+		/**
+		 * Does a single read() from the stream into the body. Blocks only if the stream blocks. Once the declared
+		 * Content-Length has been read, the stream is not read again.
+		 *
+		 * @return the number of bytes read, -1 at the end of the stream
+		 */
+		int read(InputStream in) throws IOException {
+			if (contentLength >= 0 && total >= contentLength) {
+				// don't take another segment just to find the end of a body that filled its array exactly
+				return -1;
+			}
+			if (fileOut != null) {
+				int n = in.read(scratch);
+				if (n > 0) {
+					fileOut.write(scratch, 0, n);
+					total += n;
+				}
+				return n;
+			}
+			if (pos == segment.length) {
+				segment = BufferPool.getInstance().acquire(SEGMENT_SIZE);
+				segments.add(segment);
+				pos = 0;
+			}
+			int n = in.read(segment, pos, segment.length - pos);
+			if (n > 0) {
+				pos += n;
+				total += n;
+				if (total > memoryThreshold) {
+					spill();
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * @return the number of bytes read so far
+		 */
+		long length() {
+			return total;
+		}
+
+		BufferedRequestBody build() throws IOException {
+			if (fileOut != null) {
+				fileOut.close();
+				fileOut = null;
+				BufferPool.getInstance().release(scratch);
+				scratch = null;
+				return new FileBacked(file);
+			}
+			if (pos == 0 && segments.size() > 1) {
+				// the last segment was taken but nothing was read into it
+				BufferPool.getInstance().release(segments.remove(segments.size() - 1));
+				segment = segments.get(segments.size() - 1);
+				pos = segment.length;
+			}
+			if (segments.size() == 1) {
+				return new InMemory(segment, pos, true);
+			}
+			return new Segmented(new ArrayList<>(segments), (int) total);
+		}
+
+		/**
+		 * Releases the buffers and deletes the temp file of a body that will not be built
+		 */
+		void abort() {
+			releaseAll(segments);
+			BufferPool.getInstance().release(scratch);
+			scratch = null;
+			if (fileOut != null) {
+				try {
+					fileOut.close();
+				} catch (IOException ignored) {
+				}
+				fileOut = null;
+			}
+			if (file != null && file.exists() && !file.delete()) {
+				LOG.warn("Could not delete temp body file " + file);
+			}
+		}
+
+		/**
+		 * Moves the segments read so far to a temp file, which receives the rest of the body. The segments are released.
+		 */
+		private void spill() throws IOException {
+			file = File.createTempFile("zuul-body-", ".tmp", tempDir);
+			fileOut = new FileOutputStream(file);
+			for (int i = 0; i < segments.size(); i++) {
+				byte[] seg = segments.get(i);
+				fileOut.write(seg, 0, i == segments.size() - 1 ? pos : seg.length);
+			}
+			releaseAll(segments);
+			segment = null;
+			scratch = BufferPool.getInstance().acquire(SEGMENT_SIZE);
+		}
+	}
+
+	private static void releaseAll(List<byte[]> segments) {
+		BufferPool pool = BufferPool.getInstance();
+		for (byte[] seg : segments) {
+			pool.release(seg);
+		}
+		segments.clear();
+	}
+
+	/**
+	 * @return the body length in bytes
+	 */
+	public abstract long length();
+
+	/**
+	 * @return true if the body has been spilled to disk
+	 */
+	public abstract boolean isSpilled();
+
+	/**
+	 * @return a new stream reading the body from the beginning
+	 */
+	public abstract ServletInputStream newInputStream() throws IOException;
+
+	/**
+	 * @return a read only view of the body, without copying where possible. Like the body it is only valid until
+	 * release().
+	 */
+	public abstract ByteBuffer asByteBuffer() throws IOException;
+
+	/**
+	 * @return the body as a byte array of exactly length() bytes. This may be a copy; for spilled bodies it loads
+	 * the whole body onto the heap.
+	 */
+	public abstract byte[] toByteArray() throws IOException;
+
+	/**
+	 * Releases any resources held by the body, e.g. at the end of the request. The body must not be read afterwards.
+	 */
+	public void release() {
+	}
+
+	/**
+	 * A body held in a single array, possibly larger than the body and owned by the BufferPool
+	 */
+	static final class InMemory extends BufferedRequestBody {
+		private final int length;
+		private final boolean pooled;
+		private byte[] data;
+		private byte[] exact;
+
+		InMemory(byte[] data) {
+			this(data, data.length, false);
+		}
+
+		InMemory(byte[] data, int length, boolean pooled) {
+			this.data = data;
+			this.length = length;
+			this.pooled = pooled;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public boolean isSpilled() {
+			return false;
+		}
+
+		@Override
+		public synchronized ServletInputStream newInputStream() {
+			return new ServletInputStreamWrapper(ByteBuffer.wrap(data, 0, length));
+		}
+
+		@Override
+		public synchronized ByteBuffer asByteBuffer() {
+			return ByteBuffer.wrap(data, 0, length).asReadOnlyBuffer();
+		}
+
+		@Override
+		public synchronized byte[] toByteArray() {
+			if (!pooled && data.length == length) {
+				return data;
+			}
+			// pooled arrays are reused after the request ends, so callers get a copy
+			if (exact == null) {
+				exact = new byte[length];
+				System.arraycopy(data, 0, exact, 0, length);
+			}
+			return exact;
+		}
+
+		@Override
+		public synchronized void release() {
+			if (pooled && data.length > 0) {
+				BufferPool.getInstance().release(data);
+				data = new byte[0];
+			}
+		}
+	}
+
+	/**
+	 * A body of unknown length held in a chain of pooled segments
+	 */
+	static final class Segmented extends BufferedRequestBody {
+		private final int length;
+		private List<byte[]> segments;
+		private byte[] exact;
+
+		Segmented(List<byte[]> segments, int length) {
+			this.segments = segments;
+			this.length = length;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public boolean isSpilled() {
+			return false;
+		}
+
+		@Override
+		public synchronized ServletInputStream newInputStream() {
+			return new SegmentedInputStream(new ArrayList<>(segments), length);
+		}
+
+		@Override
+		public ByteBuffer asByteBuffer() {
+			return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+		}
+
+		@Override
+		public synchronized byte[] toByteArray() {
+			if (exact == null) {
+				byte[] copy = new byte[length];
+				int pos = 0;
+				for (byte[] seg : segments) {
+					int n = Math.min(seg.length, length - pos);
+					System.arraycopy(seg, 0, copy, pos, n);
+					pos += n;
+				}
+				exact = copy;
+			}
+			return exact;
+		}
+
+		@Override
+		public synchronized void release() {
+			releaseAll(segments);
+		}
+	}
+
+	/**
+	 * Reads a chain of segments holding length bytes in total
+	 */
+	static final class SegmentedInputStream extends ServletInputStream {
+		private final List<byte[]> segments;
+		private int segment;
+		private int offset;
+		private int remaining;
+
+		SegmentedInputStream(List<byte[]> segments, int length) {
+			this.segments = segments;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() {
+			if (remaining == 0) return -1;
+			byte[] seg = current();
+			remaining--;
+			return seg[offset++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (remaining == 0) return -1;
+			int total = 0;
+			while (len > 0 && remaining > 0) {
+				byte[] seg = current();
+				int n = Math.min(len, Math.min(seg.length - offset, remaining));
+				System.arraycopy(seg, offset, b, off, n);
+				offset += n;
+				off += n;
+				len -= n;
+				remaining -= n;
+				total += n;
+			}
+			return total;
+		}
+
+		@Override
+		public long skip(long n) {
+			long skipped = 0;
+			while (n > 0 && remaining > 0) {
+				byte[] seg = current();
+				int step = (int) Math.min(n, Math.min(seg.length - offset, remaining));
+				offset += step;
+				remaining -= step;
+				n -= step;
+				skipped += step;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return remaining;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return remaining == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			ServletInputStreamWrapper.notifyListener(this, readListener);
+		}
+
+		private byte[] current() {
+			byte[] seg = segments.get(segment);
+			if (offset == seg.length) {
+				seg = segments.get(++segment);
+				offset = 0;
+			}
+			return seg;
+		}
+	}
+
+	/**
+	 * A body spilled to a temp file
+	 */
+	static final class FileBacked extends BufferedRequestBody {
+		private final File file;
+		private final long length;
+		private ByteBuffer mapped;
+
+		FileBacked(File file) {
+			this.file = file;
+			this.length = file.length();
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public boolean isSpilled() {
+			return true;
+		}
+
+		private synchronized ByteBuffer map() throws IOException {
+			if (mapped == null) {
+				if (length > Integer.MAX_VALUE) {
+					throw new IOException("Request body too large to map: " + length);
+				}
+				try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+					mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				}
+			}
+			return mapped;
+		}
+
+		@Override
+		public ServletInputStream newInputStream() throws IOException {
+			return new ServletInputStreamWrapper(map());
+		}
+
+		@Override
+		public ByteBuffer asByteBuffer() throws IOException {
+			return map().asReadOnlyBuffer();
+		}
+
+		@Override
+		public byte[] toByteArray() throws IOException {
+			ByteBuffer buffer = map().duplicate();
+			byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+			return data;
+		}
+
+		@Override
+		public synchronized void release() {
+			mapped = null;
+			if (file.exists() && !file.delete()) {
+				LOG.warn("Could not delete temp body file " + file);
+			}
+		}
+	}
+}
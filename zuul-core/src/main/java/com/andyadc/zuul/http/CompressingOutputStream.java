@@ -0,0 +1,144 @@
+package com.andyadc.zuul.http;
+
+import com.andyadc.zuul.util.BufferPool;
+import com.andyadc.zuul.util.DeflaterPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams gzip or zlib (deflate) compressed data to an underlying stream.
+ * The Deflater comes from a DeflaterPool and the output buffer from the BufferPool; both are returned on close().
+ * flush() emits everything written so far (a zlib sync flush), so responses can be streamed to the client.
+ * close() finishes the compressed data but does not close the underlying stream.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final OutputStream out;
+	private final boolean gzip;
+	private final DeflaterPool pool;
+	private final CRC32 crc;
+	private final byte[] single = new byte[1];
+	private Deflater deflater;
+	private byte[] buf;
+	private long bytesIn;
+	private long bytesOut;
+	private boolean headerWritten;
+
+	/**
+	 * @param out  the stream to write compressed data to
+	 * @param gzip true for gzip, false for zlib (the "deflate" content coding)
+	 * @param pool the pool to take the Deflater from. Must hold nowrap Deflaters for gzip and zlib ones otherwise.
+	 */
+	public CompressingOutputStream(OutputStream out, boolean gzip, DeflaterPool pool) {
+		this.out = out;
+		this.gzip = gzip;
+		this.pool = pool;
+		this.crc = gzip ? new CRC32() : null;
+		this.deflater = pool.acquire();
+		this.buf = BufferPool.getInstance().acquire(BUFFER_SIZE);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (len == 0) return;
+		writeHeader();
+		if (crc != null) crc.update(b, off, len);
+		bytesIn += len;
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			drain(Deflater.NO_FLUSH);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (bytesIn > 0) {
+			while (drain(Deflater.SYNC_FLUSH) == buf.length) {
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the remaining compressed data and the trailer, and returns the Deflater and buffer to their pools
+	 */
+	@Override
+	public void close() throws IOException {
+		if (deflater == null) return;
+		try {
+			writeHeader();
+			deflater.finish();
+			while (!deflater.finished()) {
+				drain(Deflater.NO_FLUSH);
+			}
+			if (gzip) {
+				writeIntLE((int) crc.getValue());
+				writeIntLE((int) bytesIn);
+			}
+			out.flush();
+		} finally {
+			pool.release(deflater);
+			BufferPool.getInstance().release(buf);
+			deflater = null;
+			buf = null;
+		}
+	}
+
+	/**
+	 * @return the number of uncompressed bytes written
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return the number of compressed bytes written to the underlying stream, including the gzip header and trailer
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	private int drain(int flush) throws IOException {
+		int n = deflater.deflate(buf, 0, buf.length, flush);
+		if (n > 0) {
+			out.write(buf, 0, n);
+			bytesOut += n;
+		}
+		return n;
+	}
+
+	private void writeHeader() throws IOException {
+		if (gzip && !headerWritten) {
+			out.write(GZIP_HEADER);
+			bytesOut += GZIP_HEADER.length;
+		}
+		headerWritten = true;
+	}
+
+	private void writeIntLE(int v) throws IOException {
+		buf[0] = (byte) v;
+		buf[1] = (byte) (v >>> 8);
+		buf[2] = (byte) (v >>> 16);
+		buf[3] = (byte) (v >>> 24);
+		out.write(buf, 0, 4);
+		bytesOut += 4;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (deflater == null) throw new IOException("Stream closed");
+	}
+}
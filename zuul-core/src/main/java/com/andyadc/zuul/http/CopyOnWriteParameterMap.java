@@ -0,0 +1,159 @@
+package com.andyadc.zuul.http;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Map view over shared, immutable request parameters. Reads go straight to the shared map; the first modification,
+ * including one made through the entry, key or value views, copies it into a private map, so changes never affect
+ * the request or other views.
+ * The String[] values are shared as well and must not be modified in place; put a new array instead.
+ */
+class CopyOnWriteParameterMap extends AbstractMap<String, String[]> {
+
+	private final Map<String, String[]> shared;
+	private Map<String, String[]> own;
+
+	CopyOnWriteParameterMap(Map<String, String[]> shared) {
+		this.shared = shared;
+	}
+
+	private Map<String, String[]> read() {
+		return own != null ? own : shared;
+	}
+
+	private Map<String, String[]> write() {
+		if (own == null) {
+			own = new HashMap<>(shared);
+		}
+		return own;
+	}
+
+	@Override
+	public String[] get(Object key) {
+		return read().get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return read().containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return read().size();
+	}
+
+	@Override
+	public String[] put(String key, String[] value) {
+		return write().put(key, value);
+	}
+
+	@Override
+	public String[] remove(Object key) {
+		if (own == null && !shared.containsKey(key)) return null;
+		return write().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		own = new HashMap<>();
+	}
+
+	@Override
+	public Set<Entry<String, String[]>> entrySet() {
+		return new EntrySet();
+	}
+
+	/**
+	 * Entries of the current map. Iterating before the first modification walks the shared map; removing through the
+	 * iterator or setting an entry's value then copies it like any other modification.
+	 */
+	private final class EntrySet extends AbstractSet<Entry<String, String[]>> {
+
+		@Override
+		public Iterator<Entry<String, String[]>> iterator() {
+			if (own != null) {
+				return own.entrySet().iterator();
+			}
+			final Iterator<String> keys = shared.keySet().iterator();
+			return new Iterator<Entry<String, String[]>>() {
+				private String last;
+
+				@Override
+				public boolean hasNext() {
+					return keys.hasNext();
+				}
+
+				@Override
+				public Entry<String, String[]> next() {
+					last = keys.next();
+					return new ParameterEntry(last);
+				}
+
+				@Override
+				public void remove() {
+					if (last == null) throw new IllegalStateException();
+					write().remove(last);
+					last = null;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return read().size();
+		}
+
+		@Override
+		public void clear() {
+			CopyOnWriteParameterMap.this.clear();
+		}
+	}
+
+	private final class ParameterEntry implements Entry<String, String[]> {
+		private final String key;
+
+		ParameterEntry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public String[] getValue() {
+			return read().get(key);
+		}
+
+		@Override
+		public String[] setValue(String[] value) {
+			return write().put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry)) return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + Arrays.toString(getValue());
+		}
+	}
+}
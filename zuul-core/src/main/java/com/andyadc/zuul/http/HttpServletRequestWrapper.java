@@ -1,27 +1,28 @@
 package com.andyadc.zuul.http;
 
+import com.andyadc.zuul.constants.ZuulConstants;
 import com.andyadc.zuul.constants.ZuulHeaders;
 import com.andyadc.zuul.context.RequestContext;
 import com.andyadc.zuul.util.HTTPRequestUtils;
-import org.apache.commons.io.IOUtils;
+import com.andyadc.zuul.util.UrlEncodedParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
-import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 /**
  * This class implements the Wrapper or Decorator pattern.<br/>
@@ -32,18 +33,29 @@ import java.util.StringTokenizer;
  * {@link #getReader()}, {@link #getInputStream()} and any of the getParameterXXX to be     called
  * safely and repeatedly with the same results.
  * <p/>
- * This class is intended to wrap relatively small HttpServletRequest instances.
+ * The body is only read when it is asked for: getInputStream(), getReader(), getContentData(), or form parameters
+ * of a POST. Header, URI and query string access never reads it, and openBodyStream() lets a route forward an
+ * unbuffered body straight to the origin.
+ * <p/>
+ * Bodies up to zuul.request.body.memory-threshold bytes (1MB by default) are buffered in memory using pooled
+ * buffers, larger ones are spilled to a temp file in zuul.request.body.temp-dir, which is memory mapped for re-reads.
+ * Buffers are returned to the pool and temp files deleted when the request ends.
  *
  * @author pgurov
  */
 public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletRequestWrapper {
 
 	private static final Logger LOG = LoggerFactory.getLogger(HttpServletRequestWrapper.class);
-	private final static Map<String, String[]> EMPTY_MAP = new HashMap<>();
+	private final static Map<String, String[]> EMPTY_MAP = Collections.emptyMap();
+	final static int MEMORY_THRESHOLD = Integer.getInteger(ZuulConstants.ZUUL_REQUEST_BODY_MEMORY_THRESHOLD, 1024 * 1024);
+	final static String TEMP_DIR = System.getProperty(ZuulConstants.ZUUL_REQUEST_BODY_TEMP_DIR);
 
 	private HttpServletRequest req;
-	private byte[] contentData = null;
+	private BufferedRequestBody body = null;
 	private Map<String, String[]> parameters = null;
+	private boolean bodyBuffered = false;
+	private IOException bodyFailure = null;
+	private boolean bodyStreamed = false;
 
 	private long bodyBufferingTimeNs = 0;
 
@@ -51,16 +63,24 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 		super(groovyTrick());
 	}
 
-	private HttpServletRequestWrapper(HttpServletRequest request, byte[] contentData, HashMap<String, String[]> parameters) {
+	private HttpServletRequestWrapper(HttpServletRequest request, byte[] contentData, Map<String, String[]> parameters) {
 		super(request);
 		req = request;
-		this.contentData = contentData;
-		this.parameters = parameters;
+		this.body = contentData == null ? null : new BufferedRequestBody.InMemory(contentData);
+		this.bodyBuffered = true;
+		this.parameters = parameters == null ? null : Collections.unmodifiableMap(new HashMap<>(parameters));
 	}
 
 	public HttpServletRequestWrapper(HttpServletRequest request) {
 		super(request);
 		req = request;
+		// the body may have been read already without blocking, see ZuulServlet
+		BufferedRequestBody asyncBody = AsyncBodyReader.takeBody(request);
+		if (asyncBody != null) {
+			body = asyncBody;
+			bodyBuffered = true;
+			RequestContext.getCurrentContext().addRequestEndTask(asyncBody::release);
+		}
 	}
 
 	private static HttpServletRequest groovyTrick() {
@@ -69,145 +89,181 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 	}
 
 	/**
-	 * Returns the wrapped HttpServletRequest.
-	 * Using the getParameterXXX(), getInputStream() or getReader() methods may interfere
+	 * Returns the wrapped HttpServletRequest. This does not read the request body, so headers, URI and query string
+	 * can be accessed without buffering it.
+	 * Using the getParameterXXX(), getInputStream() or getReader() methods of the wrapped request may interfere
 	 * with this class operation.
 	 *
 	 * @return The wrapped HttpServletRequest.
 	 */
 	@Override
 	public HttpServletRequest getRequest() {
-		try {
-			parseRequest();
-		} catch (IOException e) {
-			throw new IllegalStateException("Cannot parse the request!", e);
-		}
 		return req;
 	}
 
 	/**
-	 * This method is safe to use multiple times.
+	 * This method is safe to use multiple times. The body is buffered on the first call.
+	 * For bodies spilled to disk this loads the whole body onto the heap; prefer getInputStream() for those.
 	 *
-	 * @return The request body data.
+	 * @return The request body data, null if the request has no body.
 	 */
 	public byte[] getContentData() {
-		return contentData;
+		try {
+			bufferBody();
+			if (body == null) return null;
+			return body.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the buffered request body!", e);
+		}
+	}
+
+	/**
+	 * @return the buffered request body, null if the body has not been buffered (yet) or there is none
+	 */
+	public BufferedRequestBody getBufferedBody() {
+		return body;
 	}
 
 
 	/**
 	 * This method is safe to use multiple times.
-	 * Changing the returned map or the array of any of the map's values will not
-	 * interfere with this class operation.
+	 * Changing the returned map will not interfere with this class operation: the map is a view that copies the
+	 * parameters on the first modification. The String[] values are shared and must not be modified in place.
 	 *
-	 * @return The cloned parameters map.
+	 * @return The parameters map.
 	 */
-
 	public Map<String, String[]> getParameters() {
-		if (parameters == null) return EMPTY_MAP;
-		Map<String, String[]> map = new HashMap<>(parameters.size() * 2);
-		for (String key : parameters.keySet()) {
-			map.put(key, parameters.get(key).clone());
-		}
-		return map;
+		return new CopyOnWriteParameterMap(parameters == null ? EMPTY_MAP : parameters);
 	}
 
-	private void parseRequest() throws IOException {
+	/**
+	 * Parses the query string and, for POST form bodies only, the body into the parameters map.
+	 * Other bodies are not read.
+	 */
+	private synchronized void parseRequest() throws IOException {
 		if (parameters != null)
 			return; //already parsed
 
-		HashMap<String, List<String>> mapA = new HashMap<>();
-		List<String> list;
+		Map<String, String[]> map = new HashMap<>();
 
-		Map<String, List<String>> query = HTTPRequestUtils.getInstance().getQueryParams();
+		// filters may have changed the query params, so they take precedence over the query string
+		Map<String, List<String>> query = RequestContext.getCurrentContext().getRequestQueryParams();
 		if (query != null) {
-			for (String key : query.keySet()) {
-				list = query.get(key);
-				mapA.put(key, list);
+			for (Map.Entry<String, List<String>> entry : query.entrySet()) {
+				map.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+			}
+		} else {
+			UrlEncodedParameters queryParams = HTTPRequestUtils.getInstance().getParsedQueryParams();
+			if (queryParams != null) {
+				queryParams.appendTo(map);
 			}
 		}
 
+		final boolean isPost = req.getMethod().equals("POST");
+
+		String contentType = req.getContentType();
+		final boolean isFormBody = contentType != null && contentType.contains("application/x-www-form-urlencoded");
+
+		// only does magic body param parsing for POST form bodies
+		if (isPost && isFormBody) {
+			bufferBody();
+			if (body != null) {
+				String enc = req.getCharacterEncoding();
+
+				if (enc == null) enc = "UTF-8";
+				Charset charset;
+				try {
+					charset = Charset.forName(enc);
+				} catch (IllegalArgumentException e) {
+					throw new UnsupportedEncodingException(enc);
+				}
+				UrlEncodedParameters.parseForm(body.asByteBuffer(), charset).appendTo(map);
+			}
+		}
+
+		parameters = Collections.unmodifiableMap(map);
+
+	}
+
+	/**
+	 * Reads the request body into a BufferedRequestBody, once. If reading fails, the part already read is gone from
+	 * the container's stream, so the failure is thrown again on every later access rather than passing an empty or
+	 * truncated body on.
+	 */
+	private synchronized void bufferBody() throws IOException {
+		if (bodyBuffered)
+			return;
+		if (bodyFailure != null)
+			throw new IOException("Reading the request body failed", bodyFailure);
+		if (bodyStreamed)
+			throw new IllegalStateException("The request body has already been streamed and cannot be buffered!");
+
 		if (shouldBufferBody()) {
 
-			// Read the request body inputstream into a byte array.
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			// Read the request body inputstream into memory, or into a temp file if it is large.
 			try {
-				// Copy all bytes from inputstream to byte array, and record time taken.
+				// Copy all bytes from inputstream, and record time taken.
 				long bufferStartTime = System.nanoTime();
-				IOUtils.copy(req.getInputStream(), baos);
+				body = BufferedRequestBody.read(req.getInputStream(), req.getContentLength(), MEMORY_THRESHOLD,
+					TEMP_DIR == null ? null : new File(TEMP_DIR));
 				bodyBufferingTimeNs = System.nanoTime() - bufferStartTime;
-
-				contentData = baos.toByteArray();
+				// return pooled buffers and delete temp files when the request ends
+				RequestContext.getCurrentContext().addRequestEndTask(body::release);
 			} catch (SocketTimeoutException e) {
 				// This can happen if the request body is smaller than the size specified in the
 				// Content-Length header, and using tomcat APR connector.
 				LOG.error("SocketTimeoutException reading request body from inputstream. error=" + e.getMessage());
-				if (contentData == null) {
-					contentData = new byte[0];
+				if (body == null) {
+					body = new BufferedRequestBody.InMemory(new byte[0]);
 				}
+			} catch (IOException e) {
+				bodyFailure = e;
+				throw e;
+			} catch (RuntimeException e) {
+				bodyFailure = new IOException(e);
+				throw e;
 			}
 
 			try {
 				if (LOG.isDebugEnabled()) {
-					LOG.debug("Length of contentData byte array = " + contentData.length);
+					LOG.debug("Length of buffered request body = " + body.length() + (body.isSpilled() ? " (spilled to disk)" : ""));
 				}
-				if (req.getContentLength() != contentData.length) {
-					LOG.warn("Content-length different from byte array length! cl=" + req.getContentLength() + ", array=" + contentData.length);
+				if (req.getContentLength() != body.length()) {
+					LOG.warn("Content-length different from buffered body length! cl=" + req.getContentLength() + ", body=" + body.length());
 				}
 			} catch (Exception e) {
 				LOG.error("Error checking if request body gzipped!", e);
 			}
+		}
+		bodyBuffered = true;
+	}
 
-			final boolean isPost = req.getMethod().equals("POST");
-
-			String contentType = req.getContentType();
-			final boolean isFormBody = contentType != null && contentType.contains("application/x-www-form-urlencoded");
-
-			// only does magic body param parsing for POST form bodies
-			if (isPost && isFormBody) {
-				String enc = req.getCharacterEncoding();
+	/**
+	 * @return true if the body has been read into a BufferedRequestBody (or there was none to read)
+	 */
+	public boolean isBodyBuffered() {
+		return bodyBuffered;
+	}
 
-				if (enc == null) enc = "UTF-8";
-				String s = new String(contentData, enc), name, value;
-				StringTokenizer st = new StringTokenizer(s, "&");
-				int i;
-
-				boolean decode = req.getContentType() != null;
-				while (st.hasMoreTokens()) {
-					s = st.nextToken();
-					i = s.indexOf("=");
-					if (i > 0 && s.length() > i + 1) {
-						name = s.substring(0, i);
-						value = s.substring(i + 1);
-						if (decode) {
-							try {
-								name = URLDecoder.decode(name, "UTF-8");
-							} catch (Exception e) {
-							}
-							try {
-								value = URLDecoder.decode(value, "UTF-8");
-							} catch (Exception e) {
-							}
-						}
-						list = mapA.get(name);
-						if (list == null) {
-							list = new LinkedList<>();
-							mapA.put(name, list);
-						}
-						list.add(value);
-					}
-				}
-			}
+	/**
+	 * Returns the request body for forwarding it to the origin. If the body has already been buffered, or the
+	 * RequestContext declares that the route needs the body (see RequestContext.setRequestBodyRequired()), this is a
+	 * replayable stream over the buffered body. Otherwise it is the container's stream, which is not buffered and can
+	 * only be read once; getInputStream(), getReader() and form parameters are unavailable afterwards.
+	 *
+	 * @return the body stream
+	 */
+	public synchronized InputStream openBodyStream() throws IOException {
+		if (bodyBuffered || bodyFailure != null || RequestContext.getCurrentContext().isRequestBodyRequired()) {
+			return getInputStream();
 		}
-
-		Map<String, String[]> map = new HashMap<>(mapA.size() * 2);
-		for (String key : mapA.keySet()) {
-			list = mapA.get(key);
-			map.put(key, list.toArray(new String[list.size()]));
+		if (bodyStreamed)
+			throw new IllegalStateException("The request body has already been streamed!");
+		bodyStreamed = true;
+		if (!shouldBufferBody()) {
+			return new ServletInputStreamWrapper((byte[]) null);
 		}
-
-		parameters = map;
-
+		return req.getInputStream();
 	}
 
 	private boolean shouldBufferBody() {
@@ -251,8 +307,9 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 	 */
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
-		parseRequest();
-		return new ServletInputStreamWrapper(contentData);
+		bufferBody();
+		if (body == null) return new ServletInputStreamWrapper((byte[]) null);
+		return body.newInputStream();
 	}
 
 	/**
@@ -264,15 +321,11 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 	 */
 	@Override
 	public BufferedReader getReader() throws IOException {
-		parseRequest();
 
 		String enc = req.getCharacterEncoding();
 		if (enc == null)
 			enc = "UTF-8";
-		byte[] data = contentData;
-		if (data == null)
-			data = new byte[0];
-		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), enc));
+		return new BufferedReader(new InputStreamReader(getInputStream(), enc));
 	}
 
 	/**
@@ -295,7 +348,8 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 	}
 
 	/**
-	 * This method is safe.
+	 * This method is safe. The returned map is read only and shared between calls; its String[] values must not
+	 * be modified. Use {@link #getParameters()} for a modifiable map.
 	 *
 	 * @see {@link #getParameters()}
 	 * @see javax.servlet.ServletRequest#getParameterMap()
@@ -308,7 +362,7 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 		} catch (IOException e) {
 			throw new IllegalStateException("Cannot parse the request!", e);
 		}
-		return getParameters();
+		return parameters == null ? EMPTY_MAP : parameters;
 	}
 
 	/**
@@ -324,26 +378,12 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 		} catch (IOException e) {
 			throw new IllegalStateException("Cannot parse the request!", e);
 		}
-		return new Enumeration<String>() {
-			private String[] arr = getParameters().keySet().toArray(new String[0]);
-			private int idx = 0;
-
-			@Override
-			public boolean hasMoreElements() {
-				return idx < arr.length;
-			}
-
-			@Override
-			public String nextElement() {
-				return arr[idx++];
-			}
-
-		};
+		return Collections.enumeration((parameters == null ? EMPTY_MAP : parameters).keySet());
 	}
 
 	/**
 	 * This method is safe to execute multiple times.
-	 * Changing the returned array will not interfere with this class operation.
+	 * The returned array is shared between calls and must not be modified.
 	 *
 	 * @see javax.servlet.ServletRequest#getParameterValues(String)
 	 */
@@ -355,10 +395,7 @@ public class HttpServletRequestWrapper extends javax.servlet.http.HttpServletReq
 			throw new IllegalStateException("Cannot parse the request!", e);
 		}
 		if (parameters == null) return null;
-		String[] arr = parameters.get(name);
-		if (arr == null)
-			return null;
-		return arr.clone();
+		return parameters.get(name);
 	}
 
 }
@@ -0,0 +1,144 @@
+package com.andyadc.zuul.http;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.constants.ZuulHeaders;
+import com.andyadc.zuul.context.RequestContext;
+import com.andyadc.zuul.util.DeflaterPool;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Decides whether a response is compressed and wraps the response stream accordingly.
+ * A response is compressed with gzip or deflate, as negotiated from the request's Accept-Encoding, unless
+ * <ul>
+ * <li>compression is disabled ("zuul.response.compression.enabled")</li>
+ * <li>the origin response already has a Content-Encoding; it is passed through as is</li>
+ * <li>it is smaller than "zuul.response.compression.min-size" bytes</li>
+ * <li>its content type is not a text type; images, video, archives and the like are already compressed</li>
+ * </ul>
+ * Deflaters come from pools, one per coding, that retain up to "zuul.response.compression.pool-size" idle ones.
+ */
+public class ResponseCompression {
+
+	private static final ResponseCompression INSTANCE = new ResponseCompression(
+		Boolean.parseBoolean(System.getProperty(ZuulConstants.ZUUL_RESPONSE_COMPRESSION_ENABLED, "true")),
+		Integer.getInteger(ZuulConstants.ZUUL_RESPONSE_COMPRESSION_MIN_SIZE, 1024),
+		Integer.getInteger(ZuulConstants.ZUUL_RESPONSE_COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION),
+		Integer.getInteger(ZuulConstants.ZUUL_RESPONSE_COMPRESSION_POOL_SIZE, 2 * Runtime.getRuntime().availableProcessors()));
+
+	private static final String VARY = "Vary";
+
+	private final boolean enabled;
+	private final int minSize;
+	private final DeflaterPool gzipPool;
+	private final DeflaterPool deflatePool;
+
+	public ResponseCompression(boolean enabled, int minSize, int level, int poolSize) {
+		this.enabled = enabled;
+		this.minSize = minSize;
+		this.gzipPool = new DeflaterPool(level, true, poolSize);
+		this.deflatePool = new DeflaterPool(level, false, poolSize);
+	}
+
+	/**
+	 * @return the shared ResponseCompression
+	 */
+	public static ResponseCompression getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Picks the coding to compress the current response with
+	 *
+	 * @param contentType   the response content type, may be null
+	 * @param contentLength the uncompressed length, -1 if unknown
+	 * @return AcceptEncoding.GZIP, AcceptEncoding.DEFLATE, or null if the response is sent as is
+	 */
+	public String selectEncoding(RequestContext ctx, String contentType, long contentLength) {
+		if (!enabled) return null;
+		if (getOriginContentEncoding(ctx) != null) return null;
+		if (contentLength >= 0 && contentLength < minSize) return null;
+		if (!isCompressible(contentType)) return null;
+		return AcceptEncoding.negotiate(ctx.getRequestHeaders().getFirst(ZuulHeaders.ACCEPT_ENCODING));
+	}
+
+	/**
+	 * Wraps the response stream in a compressing stream if the response should be compressed, and then sets the
+	 * Content-Encoding and Vary headers. The compressed length is not known up front, so the caller must not set a
+	 * Content-Length then. The caller must close() a returned CompressingOutputStream to finish the compressed data;
+	 * the response stream itself is not closed by it.
+	 *
+	 * @param out the response stream
+	 * @return out itself, or a CompressingOutputStream writing to it
+	 */
+	public OutputStream compress(RequestContext ctx, HttpServletResponse response, OutputStream out, String contentType, long contentLength) {
+		String encoding = selectEncoding(ctx, contentType, contentLength);
+		if (encoding == null) {
+			if (AcceptEncoding.GZIP.equals(getOriginContentEncoding(ctx))) {
+				ctx.setResponseGZipped(true);
+			}
+			return out;
+		}
+		boolean gzip = AcceptEncoding.GZIP.equals(encoding);
+		response.setHeader(ZuulHeaders.CONTENT_ENCODING, encoding);
+		response.addHeader(VARY, ZuulHeaders.ACCEPT_ENCODING);
+		ctx.setResponseGZipped(gzip);
+		return wrap(out, encoding);
+	}
+
+	/**
+	 * @param encoding AcceptEncoding.GZIP or AcceptEncoding.DEFLATE
+	 * @return a stream compressing into out with a pooled Deflater
+	 */
+	public CompressingOutputStream wrap(OutputStream out, String encoding) {
+		boolean gzip = AcceptEncoding.GZIP.equals(encoding);
+		return new CompressingOutputStream(out, gzip, gzip ? gzipPool : deflatePool);
+	}
+
+	/**
+	 * @return the Content-Encoding of the origin response, null if it has none or it is "identity"
+	 */
+	public String getOriginContentEncoding(RequestContext ctx) {
+		for (Pair<String, String> header : ctx.getOriginResponseHeaders()) {
+			if (HeaderMap.nameEquals(header.first(), ZuulHeaders.CONTENT_ENCODING)) {
+				String value = header.second();
+				if (value == null) return null;
+				value = value.trim();
+				if (value.isEmpty() || value.equalsIgnoreCase("identity")) return null;
+				if (value.equalsIgnoreCase("x-gzip")) return AcceptEncoding.GZIP;
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true for text based content types, which compress well
+	 */
+	public boolean isCompressible(String contentType) {
+		if (contentType == null) return false;
+		int end = contentType.indexOf(';');
+		if (end < 0) end = contentType.length();
+		while (end > 0 && contentType.charAt(end - 1) == ' ') end--;
+		return startsWithIgnoreCase(contentType, "text/")
+			|| endsWithIgnoreCase(contentType, end, "/json")
+			|| endsWithIgnoreCase(contentType, end, "+json")
+			|| endsWithIgnoreCase(contentType, end, "/xml")
+			|| endsWithIgnoreCase(contentType, end, "+xml")
+			|| endsWithIgnoreCase(contentType, end, "/javascript")
+			|| endsWithIgnoreCase(contentType, end, "/x-javascript")
+			|| endsWithIgnoreCase(contentType, end, "/x-www-form-urlencoded");
+	}
+
+	private static boolean startsWithIgnoreCase(String s, String prefix) {
+		return s.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	private static boolean endsWithIgnoreCase(String s, int end, String suffix) {
+		return end >= suffix.length() && s.regionMatches(true, end - suffix.length(), suffix, 0, suffix.length());
+	}
+}
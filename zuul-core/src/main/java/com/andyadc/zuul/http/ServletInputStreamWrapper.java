@@ -1,14 +1,23 @@
 package com.andyadc.zuul.http;
 
+import com.andyadc.zuul.util.BufferPool;
+
+import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
- * ServletInputStream wrapper to wrap a byte[] into a ServletInputStream
+ * ServletInputStream wrapper to wrap a byte[] or a ByteBuffer into a ServletInputStream.
+ * Bulk reads are a single array copy, mark/reset are supported, and the unread bytes can be handed to an NIO
+ * channel or an OutputStream without an intermediate copy.
  */
 public class ServletInputStreamWrapper extends ServletInputStream {
 
-    private byte[] data;
-    private int idx = 0;
+    private final ByteBuffer buffer;
+    private int markPosition;
 
     /**
      * Creates a new <code>ServletInputStreamWrapper</code> instance.
@@ -18,15 +27,157 @@ public class ServletInputStreamWrapper extends ServletInputStream {
     public ServletInputStreamWrapper(byte[] data) {
         if (data == null)
             data = new byte[0];
-        this.data = data;
+        this.buffer = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * Creates a new <code>ServletInputStreamWrapper</code> reading the remaining bytes of the buffer.
+     * The buffer's position and limit are not changed.
+     *
+     * @param buffer a <code>ByteBuffer</code> value, e.g. a memory mapped file
+     */
+    public ServletInputStreamWrapper(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.markPosition = this.buffer.position();
     }
 
     @Override
     public int read() {
-        if (idx == data.length)
+        if (!buffer.hasRemaining())
             return -1;
         // I have to AND the byte with 0xff in order to ensure that it is returned as an unsigned integer
         // the lack of this was causing a weird bug when manually unzipping gzipped request bodies
-        return data[idx++] & 0xff;
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        int n = Math.min(len, buffer.remaining());
+        if (n == 0)
+            return -1;
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0)
+            return 0;
+        int skipped = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return !buffer.hasRemaining();
+    }
+
+    /**
+     * The data is in memory, so reads never block
+     */
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+        notifyListener(this, readListener);
+    }
+
+    /**
+     * Drives a ReadListener over a stream whose data is all buffered: the data is available at once.
+     */
+    static void notifyListener(ServletInputStream in, ReadListener readListener) {
+        try {
+            if (!in.isFinished()) {
+                readListener.onDataAvailable();
+            }
+            if (in.isFinished()) {
+                readListener.onAllDataRead();
+            }
+        } catch (IOException e) {
+            readListener.onError(e);
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        markPosition = buffer.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.position(markPosition);
+    }
+
+    /**
+     * Returns a read only view of the unread bytes, sharing the underlying memory. Reading the view does not advance
+     * this stream.
+     *
+     * @return a <code>ByteBuffer</code> view of the remaining bytes
+     */
+    public ByteBuffer remainingBuffer() {
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the unread bytes to the channel without copying them and advances the stream past the bytes written.
+     * A blocking channel takes all of them. A non-blocking channel may take fewer: the call returns as soon as a
+     * write makes no progress, and can be repeated once the channel is writable again.
+     *
+     * @return the number of bytes written
+     */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer view = buffer.slice();
+        while (view.hasRemaining()) {
+            if (channel.write(view) == 0) break;
+        }
+        int written = view.position();
+        buffer.position(buffer.position() + written);
+        return written;
+    }
+
+    /**
+     * Writes all unread bytes to the stream and advances the stream to its end. Heap buffers are written in a single
+     * call straight from the backing array.
+     *
+     * @return the number of bytes written
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        int n = buffer.remaining();
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+            buffer.position(buffer.limit());
+        } else {
+            // direct and read only buffers are copied out through a pooled chunk
+            BufferPool buffers = BufferPool.getInstance();
+            byte[] chunk = buffers.acquire(Math.min(n, 16 * 1024));
+            try {
+                while (buffer.hasRemaining()) {
+                    int len = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, len);
+                    out.write(chunk, 0, len);
+                }
+            } finally {
+                buffers.release(chunk);
+            }
+        }
+        return n;
     }
 }
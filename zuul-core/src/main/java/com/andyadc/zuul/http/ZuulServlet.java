@@ -22,6 +22,8 @@ public class ZuulServlet extends HttpServlet {
 
 	private static final long serialVersionUID = -3374242278843351500L;
 	private ZuulRunner zuulRunner;
+	private boolean asyncBodyReads;
+	private long asyncBodyTimeoutMillis;
 
 	@Override
 	public void init(ServletConfig config) throws ServletException {
@@ -31,11 +33,25 @@ public class ZuulServlet extends HttpServlet {
 		boolean bufferReqs = bufferReqsStr != null && bufferReqsStr.equals("true");
 
 		zuulRunner = new ZuulRunner(bufferReqs);
+
+		// reading bodies without blocking needs the wrapper to pick them up, so it requires buffer-requests
+		asyncBodyReads = "true".equals(config.getInitParameter("async-body-reads"));
+		if (asyncBodyReads && !bufferReqs) {
+			logger.warn("async-body-reads requires buffer-requests, ignoring it");
+			asyncBodyReads = false;
+		}
+		String timeout = config.getInitParameter("async-body-timeout-millis");
+		asyncBodyTimeoutMillis = timeout == null ? 30000 : Long.parseLong(timeout);
 		logger.info("ZuulServlet inited.");
 	}
 
 	@Override
 	public void service(javax.servlet.ServletRequest servletRequest, javax.servlet.ServletResponse servletResponse) throws ServletException, IOException {
+		if (asyncBodyReads && AsyncBodyReader.shouldRead((HttpServletRequest) servletRequest)) {
+			// read the body without holding this thread; the request is dispatched here again once it is complete
+			AsyncBodyReader.start((HttpServletRequest) servletRequest, asyncBodyTimeoutMillis);
+			return;
+		}
 		try {
 			init((HttpServletRequest) servletRequest, (HttpServletResponse) servletResponse);
 
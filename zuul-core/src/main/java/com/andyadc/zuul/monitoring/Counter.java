@@ -0,0 +1,13 @@
+package com.andyadc.zuul.monitoring;
+
+/**
+ * Handle to a named counter obtained from {@link CounterFactory#getCounter(String)}.
+ * Keeping the handle avoids resolving the counter by name on every increment.
+ */
+public interface Counter {
+
+	/**
+	 * Increments the counter by one
+	 */
+	void increment();
+}
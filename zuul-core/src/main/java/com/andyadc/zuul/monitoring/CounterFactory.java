@@ -35,4 +35,15 @@ public abstract class CounterFactory {
      */
     public abstract void increment(String name);
 
+    /**
+     * Returns a handle to the counter of the given name. Implementations backed by real counters should override this
+     * to return the counter itself; the default delegates to increment(String).
+     *
+     * @param name a <code>String</code> value
+     * @return a <code>Counter</code> handle
+     */
+    public Counter getCounter(final String name) {
+        return () -> increment(name);
+    }
+
 }
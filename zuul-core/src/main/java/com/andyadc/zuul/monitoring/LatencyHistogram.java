@@ -0,0 +1,65 @@
+package com.andyadc.zuul.monitoring;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets from 100 microseconds to 10 seconds.
+ * Recording is a short scan over the bucket bounds and two LongAdder increments.
+ */
+public class LatencyHistogram {
+
+	private static final long[] BUCKET_BOUNDS_NANOS = {
+		100_000L, 250_000L, 500_000L,
+		1_000_000L, 2_500_000L, 5_000_000L,
+		10_000_000L, 25_000_000L, 50_000_000L,
+		100_000_000L, 250_000_000L, 500_000_000L,
+		1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+		10_000_000_000L
+	};
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+	private final LongAdder sumNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @return the inclusive upper bound of each bucket in nanoseconds. The last bucket returned by getBucketCounts()
+	 * has no upper bound.
+	 */
+	public static long[] getBucketBoundsNanos() {
+		return BUCKET_BOUNDS_NANOS.clone();
+	}
+
+	/**
+	 * Records one observation
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		int i = 0;
+		while (i < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[i]) {
+			i++;
+		}
+		buckets[i].increment();
+		sumNanos.add(nanos);
+	}
+
+	/**
+	 * @return the (non cumulative) number of observations in each bucket
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+}
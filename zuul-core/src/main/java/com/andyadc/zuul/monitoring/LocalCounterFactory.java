@@ -0,0 +1,60 @@
+package com.andyadc.zuul.monitoring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process CounterFactory keeping one LongAdder per counter name.
+ */
+public class LocalCounterFactory extends CounterFactory {
+
+	private final ConcurrentHashMap<String, LocalCounter> counters = new ConcurrentHashMap<>();
+
+	@Override
+	public void increment(String name) {
+		getCounter(name).increment();
+	}
+
+	@Override
+	public LocalCounter getCounter(String name) {
+		LocalCounter counter = counters.get(name);
+		if (counter == null) {
+			counter = counters.computeIfAbsent(name, LocalCounter::new);
+		}
+		return counter;
+	}
+
+	/**
+	 * @return a live, read only view of all counters by name
+	 */
+	public Map<String, LocalCounter> getCounters() {
+		return Collections.unmodifiableMap(counters);
+	}
+
+	/**
+	 * A LongAdder backed Counter
+	 */
+	public static final class LocalCounter implements Counter {
+		private final String name;
+		private final LongAdder count = new LongAdder();
+
+		LocalCounter(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void increment() {
+			count.increment();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.andyadc.zuul.monitoring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process TracerFactory recording tracer durations into a LatencyHistogram per tracer name.
+ */
+public class LocalTracerFactory extends TracerFactory {
+
+	private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	@Override
+	public Tracer startMicroTracer(String name) {
+		return new LocalTracer(name, System.nanoTime());
+	}
+
+	/**
+	 * @return the histogram for the tracer name, created on first use
+	 */
+	public LatencyHistogram getHistogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return a live, read only view of all histograms by tracer name
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	private final class LocalTracer implements Tracer {
+		private final long startNanos;
+		private String name;
+
+		LocalTracer(String name, long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+		}
+
+		@Override
+		public void stopAndLog() {
+			getHistogram(name).record(System.nanoTime() - startNanos);
+		}
+
+		@Override
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -6,6 +6,14 @@ package com.andyadc.zuul.monitoring;
  */
 public class MonitoringHelper {
 
+	/**
+	 * Installs the in-process LocalCounterFactory and LocalTracerFactory
+	 */
+	public static void initLocal() {
+		CounterFactory.initialize(new LocalCounterFactory());
+		TracerFactory.initialize(new LocalTracerFactory());
+	}
+
 	public static void initMocks() {
         CounterFactory.initialize(new CounterFactoryImpl());
         TracerFactory.initialize(new TracerFactoryImpl());
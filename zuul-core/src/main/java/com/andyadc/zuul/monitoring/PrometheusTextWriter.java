@@ -0,0 +1,122 @@
+package com.andyadc.zuul.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4).
+ * Zuul counter and tracer names are free form, so they are exported as a "name" label of a single metric family.
+ */
+public class PrometheusTextWriter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Writer writer;
+
+	public PrometheusTextWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Writes all counters of the factory as zuul_counter_total
+	 */
+	public void writeCounters(LocalCounterFactory counterFactory) throws IOException {
+		writer.write("# TYPE zuul_counter_total counter\n");
+		for (LocalCounterFactory.LocalCounter counter : counterFactory.getCounters().values()) {
+			writer.write("zuul_counter_total{name=\"");
+			writeLabelValue(counter.getName());
+			writer.write("\"} ");
+			writer.write(Long.toString(counter.getCount()));
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Writes all tracer histograms of the factory as zuul_tracer_seconds
+	 */
+	public void writeTracers(LocalTracerFactory tracerFactory) throws IOException {
+		long[] bounds = LatencyHistogram.getBucketBoundsNanos();
+		writer.write("# TYPE zuul_tracer_seconds histogram\n");
+		for (Map.Entry<String, LatencyHistogram> entry : tracerFactory.getHistograms().entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			long[] counts = histogram.getBucketCounts();
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				writer.write("zuul_tracer_seconds_bucket{name=\"");
+				writeLabelValue(entry.getKey());
+				writer.write("\",le=\"");
+				writer.write(i < bounds.length ? seconds(bounds[i]) : "+Inf");
+				writer.write("\"} ");
+				writer.write(Long.toString(cumulative));
+				writer.write('\n');
+			}
+			writer.write("zuul_tracer_seconds_sum{name=\"");
+			writeLabelValue(entry.getKey());
+			writer.write("\"} ");
+			writer.write(seconds(histogram.getSumNanos()));
+			writer.write('\n');
+			writer.write("zuul_tracer_seconds_count{name=\"");
+			writeLabelValue(entry.getKey());
+			writer.write("\"} ");
+			writer.write(Long.toString(cumulative));
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Writes a metric family header
+	 */
+	public void writeType(String metric, String type) throws IOException {
+		writer.write("# TYPE ");
+		writer.write(metric);
+		writer.write(' ');
+		writer.write(type);
+		writer.write('\n');
+	}
+
+	/**
+	 * Writes a single sample. labels alternate label names and values.
+	 */
+	public void writeSample(String metric, long value, String... labels) throws IOException {
+		writer.write(metric);
+		if (labels.length > 0) {
+			writer.write('{');
+			for (int i = 0; i + 1 < labels.length; i += 2) {
+				if (i > 0) writer.write(',');
+				writer.write(labels[i]);
+				writer.write("=\"");
+				writeLabelValue(labels[i + 1]);
+				writer.write('"');
+			}
+			writer.write('}');
+		}
+		writer.write(' ');
+		writer.write(Long.toString(value));
+		writer.write('\n');
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private void writeLabelValue(String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				default:
+					writer.write(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.andyadc.zuul.origin;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an origin that is at its concurrency limit. Rejections are expected under
+ * load, so the exception has no stack trace.
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+
+	public ConcurrencyLimitExceededException(String origin) {
+		super("Origin " + origin + " is over its concurrency limit");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
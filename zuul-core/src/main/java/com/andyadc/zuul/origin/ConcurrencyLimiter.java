@@ -0,0 +1,146 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive limit on the requests outstanding to one origin, found from the round trip times of its requests with
+ * the gradient algorithm: the limit shrinks by the ratio of the long term average RTT to the current RTT when
+ * requests slow down, meaning they queue at the origin, and grows by its square root while the RTT holds.
+ * <p>
+ * Every sample updates the long term RTT, an exponential average over about the last 600 samples, and the limit:
+ * <pre>
+ * gradient = max(0.5, min(1, tolerance * longRtt / rtt))
+ * limit    = (1 - smoothing) * limit + smoothing * (limit * gradient + sqrt(limit))
+ * </pre>
+ * A request dropped by the origin (a timeout, 503 or 429) cuts the limit by a tenth. Samples taken while fewer than
+ * half the limit are outstanding don't change the limit, so it doesn't grow without bound under light load.
+ */
+public class ConcurrencyLimiter {
+
+	private static final double LONG_WINDOW = 600;
+	private static final int WARMUP_SAMPLES = 10;
+	private static final double BACKOFF = 0.9;
+
+	private final String origin;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final double smoothing;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private volatile int limit;
+	private double estimatedLimit;
+	private double longRttNanos;
+	private long samples;
+
+	/**
+	 * @param origin       the pool key of the origin
+	 * @param initialLimit the limit until there are samples
+	 * @param tolerance    how much slower than the long term RTT requests may get before the limit shrinks, e.g. 1.5
+	 * @param smoothing    the weight of a sample's limit against the current limit, between 0 and 1
+	 */
+	public ConcurrencyLimiter(String origin, int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+		this.origin = origin;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.smoothing = smoothing;
+		this.limit = initialLimit;
+		this.estimatedLimit = initialLimit;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Takes a slot for a request, which must be given back with onSuccess(), onDropped() or onIgnore()
+	 *
+	 * @throws ConcurrencyLimitExceededException if the limit is reached
+	 */
+	public void acquire() throws ConcurrencyLimitExceededException {
+		while (true) {
+			int n = inFlight.get();
+			if (n >= limit) {
+				rejected.increment();
+				throw new ConcurrencyLimitExceededException(origin);
+			}
+			if (inFlight.compareAndSet(n, n + 1)) return;
+		}
+	}
+
+	/**
+	 * Gives back the slot of a request the origin answered
+	 *
+	 * @param rttNanos the time to the origin's answer
+	 */
+	public void onSuccess(long rttNanos) {
+		int n = inFlight.getAndDecrement();
+		update(rttNanos, n);
+	}
+
+	/**
+	 * Gives back the slot of a request the origin dropped or refused for overload
+	 */
+	public void onDropped() {
+		inFlight.decrementAndGet();
+		synchronized (this) {
+			estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF);
+			limit = (int) estimatedLimit;
+		}
+	}
+
+	/**
+	 * Gives back the slot of a request whose outcome says nothing about the origin's load, e.g. a cancelled request
+	 */
+	public void onIgnore() {
+		inFlight.decrementAndGet();
+	}
+
+	private synchronized void update(long rttNanos, int inFlight) {
+		if (rttNanos <= 0) return;
+		samples++;
+		if (samples <= WARMUP_SAMPLES) {
+			// plain average while warming up
+			longRttNanos += (rttNanos - longRttNanos) / samples;
+			return;
+		}
+		longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+		if (longRttNanos / rttNanos > 2) {
+			// the RTT dropped for good: let the long term RTT follow faster
+			longRttNanos *= 0.95;
+		}
+		if (inFlight < estimatedLimit / 2) return;
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, (1 - smoothing) * estimatedLimit + smoothing * newLimit));
+		limit = (int) estimatedLimit;
+	}
+
+	/**
+	 * @return the current limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the requests holding a slot
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return requests rejected since the limiter was created
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimiter[" + origin + ", limit=" + limit + ", inFlight=" + inFlight.get() + "]";
+	}
+}
@@ -0,0 +1,70 @@
+package com.andyadc.zuul.origin;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ConcurrencyLimiter of each origin, created on first use with the "zuul.origin.concurrency-limit.*" settings.
+ * Limits are off unless "zuul.origin.concurrency-limit.enabled" is true.
+ */
+public class ConcurrencyLimiters {
+
+	private static final ConcurrencyLimiters INSTANCE = new ConcurrencyLimiters(
+		Boolean.getBoolean(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_ENABLED),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_INITIAL, 20),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_MIN, 4),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_MAX, 1000),
+		Double.parseDouble(System.getProperty(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_RTT_TOLERANCE, "1.5")),
+		Double.parseDouble(System.getProperty(ZuulConstants.ZUUL_ORIGIN_CONCURRENCY_LIMIT_SMOOTHING, "0.2")));
+
+	private final ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+	private final boolean enabled;
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final double smoothing;
+
+	public ConcurrencyLimiters(boolean enabled, int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+		this.enabled = enabled;
+		this.initialLimit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * @return the shared ConcurrencyLimiters
+	 */
+	public static ConcurrencyLimiters getInstance() {
+		return INSTANCE;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param origin the pool key of the origin, see OriginClient.originKey()
+	 * @return the limiter of the origin, null if limits are off
+	 */
+	public ConcurrencyLimiter forOrigin(String origin) {
+		if (!enabled) return null;
+		ConcurrencyLimiter limiter = limiters.get(origin);
+		if (limiter == null) {
+			limiter = limiters.computeIfAbsent(origin, k -> new ConcurrencyLimiter(k, initialLimit, minLimit, maxLimit, tolerance, smoothing));
+		}
+		return limiter;
+	}
+
+	/**
+	 * @return the limiters created so far
+	 */
+	public List<ConcurrencyLimiter> getLimiters() {
+		return new ArrayList<>(limiters.values());
+	}
+}
@@ -0,0 +1,14 @@
+package com.andyadc.zuul.origin;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request whose method, target or headers have characters that can't be written to an
+ * HTTP/1.1 request head, such as a CR or LF that would end a header line early. Nothing is sent to the origin.
+ */
+public class InvalidRequestHeadException extends IOException {
+
+	public InvalidRequestHeadException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,50 @@
+package com.andyadc.zuul.origin;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latencies of the most recent requests to an origin, in a ring of a fixed number of samples, and a percentile of
+ * them. The percentile is computed again after every eighth of the ring has been overwritten, so reading it is cheap.
+ * Samples are written without locking; a sample lost to a race doesn't matter for an estimate.
+ */
+public class LatencyWindow {
+
+	private final long[] samples;
+	private final int mask;
+	private final double percentile;
+	private final AtomicLong count = new AtomicLong();
+	private volatile long computedAt = Long.MIN_VALUE / 2;
+	private volatile long value = -1;
+
+	/**
+	 * @param size       the number of samples kept, rounded up to a power of two
+	 * @param percentile the percentile to compute, between 0 and 100
+	 */
+	public LatencyWindow(int size, double percentile) {
+		int n = Integer.highestOneBit(Math.max(16, size) - 1) << 1;
+		this.samples = new long[n];
+		this.mask = n - 1;
+		this.percentile = percentile;
+	}
+
+	public void record(long nanos) {
+		samples[(int) (count.getAndIncrement() & mask)] = nanos;
+	}
+
+	/**
+	 * @return the percentile of the recent latencies in nanos, -1 until a quarter of the window has been filled
+	 */
+	public long getPercentileNanos() {
+		long n = count.get();
+		if (n < samples.length / 4) return -1;
+		if (n - computedAt >= samples.length / 8) {
+			computedAt = n;
+			int filled = (int) Math.min(n, samples.length);
+			long[] sorted = Arrays.copyOf(samples, filled);
+			Arrays.sort(sorted);
+			value = sorted[(int) Math.max(0, Math.min(filled - 1, Math.ceil(percentile / 100 * filled) - 1))];
+		}
+		return value;
+	}
+}
@@ -0,0 +1,28 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends requests to the available instance with the fewest requests outstanding. The scan starts at a random
+ * instance, so ties are broken randomly rather than always in favour of the first instance.
+ */
+public class LeastOutstandingBalancer implements LoadBalancer {
+
+	@Override
+	public OriginInstance choose(OriginInstance[] instances, long nowNanos) {
+		int n = instances.length;
+		int start = n == 1 ? 0 : ThreadLocalRandom.current().nextInt(n);
+		OriginInstance best = null;
+		int bestOutstanding = Integer.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			OriginInstance instance = instances[(start + i) % n];
+			if (!instance.isAvailable(nowNanos)) continue;
+			int outstanding = instance.getOutstanding();
+			if (outstanding < bestOutstanding) {
+				best = instance;
+				bestOutstanding = outstanding;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,32 @@
+package com.andyadc.zuul.origin;
+
+/**
+ * Picks the instance of an OriginGroup a request goes to
+ */
+public interface LoadBalancer {
+
+	/**
+	 * @param instances the instances of the group, ejected ones included
+	 * @param nowNanos  System.nanoTime(), to check instances for ejection with
+	 * @return an available instance, null if all are ejected
+	 */
+	OriginInstance choose(OriginInstance[] instances, long nowNanos);
+
+	/**
+	 * @param name "round-robin", "least-outstanding" or "p2c"
+	 * @return a new balancer of that name
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	static LoadBalancer forName(String name) {
+		switch (name) {
+			case "round-robin":
+				return new RoundRobinBalancer();
+			case "least-outstanding":
+				return new LeastOutstandingBalancer();
+			case "p2c":
+				return new PeakEwmaBalancer();
+			default:
+				throw new IllegalArgumentException("Unknown load balancer " + name);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package com.andyadc.zuul.origin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The body of an origin response, read straight from its connection.
+ * Content-Length and chunked bodies are framed (chunked bodies are decoded) so the connection can be reused: once the
+ * body has been read to its end the connection goes back to the pool. Closing the stream before that closes the
+ * connection instead. Bodies delimited by the origin closing the connection are read until then.
+ */
+public class OriginBodyStream extends InputStream {
+
+	private static final int MAX_LINE = 8 * 1024;
+
+	enum Framing {
+		NONE, LENGTH, CHUNKED, CLOSE
+	}
+
+	private final OriginConnectionPool pool;
+	private final Framing framing;
+	private final boolean keepAlive;
+	private final int timeoutMs;
+	private OriginConnection conn;
+	private long remaining;
+	private boolean chunkCrlf;
+	private boolean done;
+
+	OriginBodyStream(OriginConnection conn, OriginConnectionPool pool, Framing framing, long contentLength, boolean keepAlive, int timeoutMs) {
+		this.conn = conn;
+		this.pool = pool;
+		this.framing = framing;
+		this.keepAlive = keepAlive;
+		this.timeoutMs = timeoutMs;
+		this.remaining = framing == Framing.LENGTH ? contentLength : 0;
+		if (framing == Framing.NONE || (framing == Framing.LENGTH && contentLength == 0)) {
+			finish();
+		}
+	}
+
+	/**
+	 * @return true once the whole body has been read
+	 */
+	public boolean isComplete() {
+		return done;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (done) return -1;
+		if (conn == null) throw new IOException("Stream closed");
+		try {
+			switch (framing) {
+				case LENGTH:
+					return readFramed(b, off, len);
+				case CHUNKED:
+					if (remaining == 0 && !nextChunk()) {
+						finish();
+						return -1;
+					}
+					return readFramed(b, off, len);
+				default:
+					int n = conn.read(b, off, len, timeoutMs);
+					if (n == -1) finish();
+					return n;
+			}
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	private int readFramed(byte[] b, int off, int len) throws IOException {
+		int n = conn.read(b, off, (int) Math.min(len, remaining), timeoutMs);
+		if (n == -1) {
+			throw new EOFException("Origin closed the connection before the end of the body: " + conn.getOrigin());
+		}
+		remaining -= n;
+		if (remaining == 0) {
+			if (framing == Framing.CHUNKED) {
+				chunkCrlf = true;
+			} else {
+				finish();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the next chunk header
+	 *
+	 * @return false at the last chunk
+	 */
+	private boolean nextChunk() throws IOException {
+		if (chunkCrlf) {
+			String crlf = conn.readLine(MAX_LINE, timeoutMs);
+			if (crlf == null || !crlf.isEmpty()) throw new IOException("Malformed chunk from origin " + conn.getOrigin());
+			chunkCrlf = false;
+		}
+		String line = conn.readLine(MAX_LINE, timeoutMs);
+		if (line == null) throw new EOFException("Origin closed the connection before the last chunk: " + conn.getOrigin());
+		int end = 0;
+		while (end < line.length() && Character.digit(line.charAt(end), 16) >= 0) end++;
+		if (end == 0 || end > 15) throw new IOException("Malformed chunk size from origin " + conn.getOrigin() + ": " + line);
+		remaining = Long.parseLong(line.substring(0, end), 16);
+		if (remaining > 0) return true;
+		// skip trailers
+		String trailer;
+		do {
+			trailer = conn.readLine(MAX_LINE, timeoutMs);
+			if (trailer == null) throw new EOFException("Origin closed the connection in the trailers: " + conn.getOrigin());
+		} while (!trailer.isEmpty());
+		return false;
+	}
+
+	/**
+	 * Writes the rest of the body to out straight from the connection's read buffer, without copying it through an
+	 * intermediate array. out is flushed whenever the next read would wait for the origin, so streamed responses
+	 * reach the client as they arrive.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long writeTo(OutputStream out) throws IOException {
+		long total = 0;
+		try {
+			while (!done) {
+				if (conn == null) throw new IOException("Stream closed");
+				if (framing == Framing.CHUNKED && remaining == 0) {
+					if (conn.buffered() == 0) out.flush();
+					if (!nextChunk()) {
+						finish();
+						break;
+					}
+				}
+				if (conn.buffered() == 0) out.flush();
+				int n = conn.transferTo(out, framing == Framing.CLOSE ? Long.MAX_VALUE : remaining, timeoutMs);
+				if (n == -1) {
+					if (framing != Framing.CLOSE) {
+						throw new EOFException("Origin closed the connection before the end of the body: " + conn.getOrigin());
+					}
+					finish();
+					break;
+				}
+				total += n;
+				if (framing != Framing.CLOSE) {
+					remaining -= n;
+					if (remaining == 0) {
+						if (framing == Framing.CHUNKED) {
+							chunkCrlf = true;
+						} else {
+							finish();
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() {
+		if (done || conn == null) return 0;
+		int buffered = conn.buffered();
+		return framing == Framing.CLOSE ? buffered : (int) Math.min(buffered, remaining);
+	}
+
+	/**
+	 * Closes the stream. A body that has not been read to its end can't be skipped cheaply, so its connection is closed.
+	 */
+	@Override
+	public void close() {
+		if (!done) abort();
+	}
+
+	private void finish() {
+		done = true;
+		if (conn != null) {
+			if (keepAlive) {
+				pool.release(conn);
+			} else {
+				conn.close();
+			}
+			conn = null;
+		}
+	}
+
+	private void abort() {
+		done = true;
+		if (conn != null) {
+			conn.close();
+			conn = null;
+		}
+	}
+}
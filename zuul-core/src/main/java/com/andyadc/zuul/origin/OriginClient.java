@@ -0,0 +1,324 @@
+package com.andyadc.zuul.origin;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.util.BufferPool;
+import com.andyadc.zuul.util.HeaderMap;
+import com.andyadc.zuul.util.Pair;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP/1.1 client for forwarding requests to origins, over non-blocking keep-alive connections that are pooled per
+ * origin. Only plain http origins are supported.
+ * <p>
+ * Timeouts come from "zuul.host.connect-timeout-millis" and "zuul.host.socket-timeout-millis"; the pool keeps up to
+ * "zuul.host.max-idle-connections-per-origin" idle connections for "zuul.host.idle-timeout-millis".
+ * An idempotent request without a body that fails on a reused connection is retried once on a new connection, since
+ * the origin may have closed the idle connection meanwhile.
+ */
+public class OriginClient {
+
+	private static final OriginClient INSTANCE = new OriginClient(
+		Integer.getInteger(ZuulConstants.ZUUL_HOST_CONNECT_TIMEOUT_MILLIS, 2000),
+		Integer.getInteger(ZuulConstants.ZUUL_HOST_SOCKET_TIMEOUT_MILLIS, 10000),
+		new OriginConnectionPool(
+			Integer.getInteger(ZuulConstants.ZUUL_HOST_MAX_IDLE_CONNECTIONS_PER_ORIGIN, 50),
+			Integer.getInteger(ZuulConstants.ZUUL_HOST_IDLE_TIMEOUT_MILLIS, 60000)));
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_LINE = 16 * 1024;
+	private static final int MAX_HEADERS = 256;
+	private static final byte[] CRLF = {'\r', '\n'};
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+	private static final boolean[] TOKEN = new boolean[128];
+
+	static {
+		for (char c = '0'; c <= '9'; c++) TOKEN[c] = true;
+		for (char c = 'a'; c <= 'z'; c++) TOKEN[c] = true;
+		for (char c = 'A'; c <= 'Z'; c++) TOKEN[c] = true;
+		for (char c : "!#$%&'*+-.^_`|~".toCharArray()) TOKEN[c] = true;
+	}
+
+	private final int connectTimeoutMs;
+	private final int socketTimeoutMs;
+	private final OriginConnectionPool pool;
+
+	public OriginClient(int connectTimeoutMs, int socketTimeoutMs, OriginConnectionPool pool) {
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.socketTimeoutMs = socketTimeoutMs;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the shared OriginClient
+	 */
+	public static OriginClient getInstance() {
+		return INSTANCE;
+	}
+
+	public OriginConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return the pool key of an origin
+	 */
+	public static String originKey(URL host) {
+		return host.getHost() + ":" + port(host);
+	}
+
+	private static int port(URL host) {
+		return host.getPort() == -1 ? host.getDefaultPort() : host.getPort();
+	}
+
+	/**
+	 * Sends a request and reads the response head. The response body must be read to its end or closed.
+	 *
+	 * @param host          the origin; its path is ignored
+	 * @param method        the request method
+	 * @param uri           the request target, path and query
+	 * @param headers       the request headers without Host, Content-Length and Transfer-Encoding
+	 * @param body          the request body, null if there is none
+	 * @param contentLength the body length, -1 to send the body chunked
+	 * @throws InvalidRequestHeadException if the method, uri or headers can't be sent as they are
+	 */
+	public OriginResponse execute(URL host, String method, String uri, List<Pair<String, String>> headers, InputStream body, long contentLength) throws IOException {
+		if (!"http".equalsIgnoreCase(host.getProtocol())) {
+			throw new IOException("Unsupported origin protocol: " + host);
+		}
+		String origin = originKey(host);
+		StringBuilder head = requestHead(host, method, uri, headers, body != null, contentLength);
+		for (int attempt = 0; ; attempt++) {
+			OriginConnection conn = pool.acquire(origin);
+			boolean reused = conn != null;
+			if (conn == null) {
+				conn = OriginConnection.open(new InetSocketAddress(host.getHost(), port(host)), origin, connectTimeoutMs, BUFFER_SIZE);
+			}
+			conn.startRequest();
+			try {
+				writeRequest(conn, head, body, contentLength);
+				return readResponse(conn, method);
+			} catch (IOException e) {
+				conn.close();
+				if (reused && attempt == 0 && body == null && isIdempotent(method) && !(e instanceof InterruptedIOException)) {
+					continue;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return true for methods that may be sent again without changing the outcome
+	 */
+	public static boolean isIdempotent(String method) {
+		switch (method) {
+			case "GET":
+			case "HEAD":
+			case "OPTIONS":
+			case "TRACE":
+			case "PUT":
+			case "DELETE":
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Builds the request head, checking that each char fits in a byte and that no part can end its line early or
+	 * start another header or request
+	 */
+	private static StringBuilder requestHead(URL host, String method, String uri, List<Pair<String, String>> headers,
+											 boolean hasBody, long contentLength) throws InvalidRequestHeadException {
+		if (!isToken(method)) {
+			throw new InvalidRequestHeadException("Invalid request method");
+		}
+		for (int i = 0; i < uri.length(); i++) {
+			char c = uri.charAt(i);
+			if (c <= ' ' || c >= 0x7f) throw new InvalidRequestHeadException("Invalid request target");
+		}
+		StringBuilder head = new StringBuilder(256);
+		head.append(method).append(' ').append(uri).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(host.getHost());
+		if (host.getPort() != -1) head.append(':').append(host.getPort());
+		head.append("\r\n");
+		for (Pair<String, String> header : headers) {
+			String name = header.first();
+			String value = header.second() == null ? "" : header.second();
+			if (!isToken(name)) {
+				throw new InvalidRequestHeadException("Invalid request header name");
+			}
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < ' ' && c != '\t' || c == 0x7f || c > 0xff) {
+					throw new InvalidRequestHeadException("Invalid value of request header " + name);
+				}
+			}
+			head.append(name).append(": ").append(value).append("\r\n");
+		}
+		if (hasBody) {
+			if (contentLength >= 0) {
+				head.append("Content-Length: ").append(contentLength).append("\r\n");
+			} else {
+				head.append("Transfer-Encoding: chunked\r\n");
+			}
+		}
+		head.append("\r\n");
+		return head;
+	}
+
+	private static boolean isToken(String s) {
+		if (s == null || s.isEmpty()) return false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 128 || !TOKEN[c]) return false;
+		}
+		return true;
+	}
+
+	private void writeRequest(OriginConnection conn, StringBuilder head, InputStream body, long contentLength) throws IOException {
+		BufferPool buffers = BufferPool.getInstance();
+		int headLength = head.length();
+		byte[] buf = buffers.acquire(Math.max(headLength, BUFFER_SIZE));
+		try {
+			for (int i = 0; i < headLength; i++) {
+				buf[i] = (byte) head.charAt(i);
+			}
+			conn.write(ByteBuffer.wrap(buf, 0, headLength), socketTimeoutMs);
+			if (body != null) {
+				writeBody(conn, body, contentLength, buf);
+			}
+		} finally {
+			buffers.release(buf);
+		}
+	}
+
+	private void writeBody(OriginConnection conn, InputStream body, long contentLength, byte[] buf) throws IOException {
+		long sent = 0;
+		int n;
+		if (contentLength >= 0) {
+			while (sent < contentLength && (n = body.read(buf, 0, (int) Math.min(buf.length, contentLength - sent))) != -1) {
+				conn.write(ByteBuffer.wrap(buf, 0, n), socketTimeoutMs);
+				sent += n;
+			}
+			if (sent < contentLength) {
+				throw new EOFException("Request body ended after " + sent + " of " + contentLength + " bytes");
+			}
+			return;
+		}
+		// chunked: leave room for the chunk size line in front of the data
+		int room = 10;
+		while ((n = body.read(buf, room, buf.length - room - CRLF.length)) != -1) {
+			if (n == 0) continue;
+			String size = Integer.toHexString(n);
+			int start = room - size.length() - 2;
+			for (int i = 0; i < size.length(); i++) {
+				buf[start + i] = (byte) size.charAt(i);
+			}
+			buf[room - 2] = '\r';
+			buf[room - 1] = '\n';
+			buf[room + n] = '\r';
+			buf[room + n + 1] = '\n';
+			conn.write(ByteBuffer.wrap(buf, start, room + n + 2 - start), socketTimeoutMs);
+		}
+		conn.write(ByteBuffer.wrap(LAST_CHUNK), socketTimeoutMs);
+	}
+
+	private OriginResponse readResponse(OriginConnection conn, String method) throws IOException {
+		while (true) {
+			String statusLine = conn.readLine(MAX_LINE, socketTimeoutMs);
+			if (statusLine == null) {
+				throw new EOFException("Origin closed the connection without a response: " + conn.getOrigin());
+			}
+			// HTTP/1.1 200 OK
+			if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12 || statusLine.charAt(8) != ' ') {
+				throw new IOException("Malformed status line from origin " + conn.getOrigin() + ": " + statusLine);
+			}
+			boolean http11 = statusLine.charAt(7) != '0';
+			int status;
+			try {
+				status = Integer.parseInt(statusLine.substring(9, 12));
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed status line from origin " + conn.getOrigin() + ": " + statusLine);
+			}
+			String reason = statusLine.length() > 13 ? statusLine.substring(13) : "";
+
+			List<Pair<String, String>> headers = readHeaders(conn);
+			if (status >= 100 && status < 200 && status != 101) {
+				continue; // interim response, e.g. 100 Continue
+			}
+
+			long contentLength = -1;
+			boolean chunked = false;
+			boolean close = !http11;
+			for (Pair<String, String> header : headers) {
+				String name = header.first();
+				String value = header.second();
+				if (HeaderMap.nameEquals(name, "Content-Length")) {
+					try {
+						contentLength = Long.parseLong(value.trim());
+					} catch (NumberFormatException e) {
+						throw new IOException("Malformed Content-Length from origin " + conn.getOrigin() + ": " + value);
+					}
+				} else if (HeaderMap.nameEquals(name, "Transfer-Encoding")) {
+					chunked = value.toLowerCase().contains("chunked");
+				} else if (HeaderMap.nameEquals(name, "Connection")) {
+					if (value.equalsIgnoreCase("close")) close = true;
+					else if (value.equalsIgnoreCase("keep-alive")) close = false;
+				}
+			}
+
+			OriginBodyStream.Framing framing;
+			if ("HEAD".equals(method) || status == 204 || status == 304) {
+				framing = OriginBodyStream.Framing.NONE;
+			} else if (chunked) {
+				framing = OriginBodyStream.Framing.CHUNKED;
+				contentLength = -1;
+			} else if (contentLength >= 0) {
+				framing = OriginBodyStream.Framing.LENGTH;
+			} else {
+				framing = OriginBodyStream.Framing.CLOSE;
+				close = true;
+			}
+			OriginBodyStream body = new OriginBodyStream(conn, pool, framing, contentLength, !close, socketTimeoutMs);
+			return new OriginResponse(status, reason, headers, contentLength, body);
+		}
+	}
+
+	private List<Pair<String, String>> readHeaders(OriginConnection conn) throws IOException {
+		List<Pair<String, String>> headers = new ArrayList<>(16);
+		while (true) {
+			String line = conn.readLine(MAX_LINE, socketTimeoutMs);
+			if (line == null) {
+				throw new EOFException("Origin closed the connection in the response headers: " + conn.getOrigin());
+			}
+			if (line.isEmpty()) {
+				return headers;
+			}
+			if (headers.size() == MAX_HEADERS) {
+				throw new IOException("Too many response headers from origin " + conn.getOrigin());
+			}
+			char first = line.charAt(0);
+			if ((first == ' ' || first == '\t') && !headers.isEmpty()) {
+				// obsolete line folding
+				Pair<String, String> last = headers.get(headers.size() - 1);
+				last.setSecond(last.second() + " " + line.trim());
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				throw new IOException("Malformed response header from origin " + conn.getOrigin() + ": " + line);
+			}
+			headers.add(new Pair<>(line.substring(0, colon).trim(), line.substring(colon + 1).trim()));
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package com.andyadc.zuul.origin;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A keep-alive HTTP/1.1 connection to an origin over a non-blocking SocketChannel.
+ * The calling thread waits for readiness on the connection's own Selector, which gives exact connect and socket
+ * timeouts without a thread per connection. The Selector is opened on the first wait and closed with the connection,
+ * so a connection that moves between threads leaves nothing registered behind. Interrupting the waiting thread ends
+ * the wait with an InterruptedIOException, which is how a request in progress is cancelled.
+ * <p>
+ * A connection is used by one request at a time and is not thread safe.
+ */
+public class OriginConnection {
+
+	private final SocketChannel channel;
+	private final String origin;
+	private final ByteBuffer in;
+	private Selector selector;
+	private SelectionKey key;
+	private long lastUsedNanos = System.nanoTime();
+	private int requests;
+
+	private OriginConnection(SocketChannel channel, String origin, int bufferSize) {
+		this.channel = channel;
+		this.origin = origin;
+		this.in = ByteBuffer.allocate(bufferSize);
+		this.in.flip();
+	}
+
+	/**
+	 * Connects to an origin
+	 *
+	 * @param origin           the pool key of the origin, e.g. "host:port"
+	 * @param connectTimeoutMs the connect timeout, 0 for none
+	 * @param bufferSize       size of the read buffer
+	 */
+	public static OriginConnection open(InetSocketAddress address, String origin, int connectTimeoutMs, int bufferSize) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		OriginConnection conn = new OriginConnection(channel, origin, bufferSize);
+		try {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			if (!channel.connect(address)) {
+				conn.await(SelectionKey.OP_CONNECT, connectTimeoutMs, "connect");
+				channel.finishConnect();
+			}
+			return conn;
+		} catch (IOException | RuntimeException e) {
+			conn.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the pool key of the origin
+	 */
+	public String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * @return the number of requests sent on this connection
+	 */
+	public int getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return nanos since the connection was last returned to the pool
+	 */
+	public long idleNanos() {
+		return System.nanoTime() - lastUsedNanos;
+	}
+
+	void markIdle() {
+		lastUsedNanos = System.nanoTime();
+	}
+
+	void startRequest() {
+		requests++;
+	}
+
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	/**
+	 * Checks an idle connection: a readable idle connection has either been closed by the origin or received data it
+	 * should not have, so it can't be reused.
+	 */
+	boolean isStale() {
+		if (!channel.isOpen() || in.hasRemaining()) return true;
+		try {
+			in.clear();
+			int n = channel.read(in);
+			in.flip();
+			return n != 0;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Writes the whole buffer
+	 */
+	public void write(ByteBuffer src, int timeoutMs) throws IOException {
+		while (src.hasRemaining()) {
+			if (channel.write(src) == 0) {
+				await(SelectionKey.OP_WRITE, timeoutMs, "write");
+			}
+		}
+	}
+
+	/**
+	 * Reads buffered data, or waits for more
+	 *
+	 * @return the number of bytes read, -1 if the origin closed the connection
+	 */
+	public int read(byte[] b, int off, int len, int timeoutMs) throws IOException {
+		if (!in.hasRemaining()) {
+			if (len >= in.capacity()) {
+				// large reads go straight into the caller's array
+				ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+				int n;
+				while ((n = channel.read(dst)) == 0) {
+					await(SelectionKey.OP_READ, timeoutMs, "read");
+				}
+				return n;
+			}
+			if (fill(timeoutMs) < 0) return -1;
+		}
+		int n = Math.min(len, in.remaining());
+		in.get(b, off, n);
+		return n;
+	}
+
+	/**
+	 * Writes up to max bytes to out straight from the read buffer, waiting for data if none is buffered
+	 *
+	 * @return the number of bytes written, -1 if the origin closed the connection
+	 */
+	int transferTo(OutputStream out, long max, int timeoutMs) throws IOException {
+		if (!in.hasRemaining() && fill(timeoutMs) < 0) return -1;
+		int n = (int) Math.min(max, in.remaining());
+		out.write(in.array(), in.arrayOffset() + in.position(), n);
+		in.position(in.position() + n);
+		return n;
+	}
+
+	/**
+	 * @return the number of buffered bytes that can be read without waiting
+	 */
+	public int buffered() {
+		return in.remaining();
+	}
+
+	/**
+	 * Reads a CRLF or LF terminated line of ISO-8859-1 chars
+	 *
+	 * @return the line without its terminator, null if the origin closed the connection before a full line
+	 */
+	public String readLine(int maxLength, int timeoutMs) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		while (true) {
+			while (in.hasRemaining()) {
+				char c = (char) (in.get() & 0xff);
+				if (c == '\n') {
+					int len = line.length();
+					if (len > 0 && line.charAt(len - 1) == '\r') line.setLength(len - 1);
+					return line.toString();
+				}
+				line.append(c);
+				if (line.length() > maxLength) {
+					throw new IOException("Origin sent a line longer than " + maxLength);
+				}
+			}
+			if (fill(timeoutMs) < 0) return null;
+		}
+	}
+
+	private int fill(int timeoutMs) throws IOException {
+		in.compact();
+		try {
+			int n;
+			while ((n = channel.read(in)) == 0) {
+				await(SelectionKey.OP_READ, timeoutMs, "read");
+			}
+			return n;
+		} finally {
+			in.flip();
+		}
+	}
+
+	private void await(int ops, int timeoutMs, String what) throws IOException {
+		if (selector == null) {
+			selector = Selector.open();
+			key = channel.register(selector, ops);
+		} else {
+			key.interestOps(ops);
+		}
+		try {
+			long deadline = timeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) : 0;
+			while (true) {
+				long waitMs = 0;
+				if (timeoutMs > 0) {
+					waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (waitMs <= 0) {
+						throw new SocketTimeoutException("Origin " + what + " timed out after " + timeoutMs + "ms: " + origin);
+					}
+				}
+				selector.select(waitMs);
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException("Origin " + what + " interrupted: " + origin);
+				}
+				boolean ready = selector.selectedKeys().contains(key) && (key.readyOps() & ops) != 0;
+				selector.selectedKeys().clear();
+				if (ready) return;
+			}
+		} finally {
+			if (key.isValid()) key.interestOps(0);
+		}
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+		if (selector != null) {
+			try {
+				selector.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OriginConnection[" + origin + ", requests=" + requests + "]";
+	}
+}
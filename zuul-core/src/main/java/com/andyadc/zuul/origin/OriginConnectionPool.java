@@ -0,0 +1,92 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idle keep-alive connections, per origin.
+ * Connections are reused most recently used first, which keeps the warmest connections busy and lets the others
+ * expire. Expired and stale connections are closed lazily, when they are met on acquire or release.
+ */
+public class OriginConnectionPool {
+
+	private final ConcurrentHashMap<String, Idle> origins = new ConcurrentHashMap<>();
+	private final int maxIdlePerOrigin;
+	private final long idleTimeoutNanos;
+
+	/**
+	 * @param maxIdlePerOrigin  the number of idle connections kept per origin
+	 * @param idleTimeoutMillis how long a connection may be idle before it is closed
+	 */
+	public OriginConnectionPool(int maxIdlePerOrigin, long idleTimeoutMillis) {
+		this.maxIdlePerOrigin = maxIdlePerOrigin;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+	}
+
+	/**
+	 * @return an idle connection to the origin, null if there is none
+	 */
+	public OriginConnection acquire(String origin) {
+		Idle idle = origins.get(origin);
+		if (idle == null) return null;
+		OriginConnection conn;
+		while ((conn = idle.connections.pollFirst()) != null) {
+			idle.size.decrementAndGet();
+			if (conn.idleNanos() < idleTimeoutNanos && !conn.isStale()) {
+				return conn;
+			}
+			conn.close();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a connection whose last response has been read completely. It is closed if the pool for its origin is
+	 * full.
+	 */
+	public void release(OriginConnection conn) {
+		if (!conn.isOpen()) return;
+		Idle idle = origins.computeIfAbsent(conn.getOrigin(), k -> new Idle());
+		// drop an expired connection from the cold end on the way
+		OriginConnection oldest = idle.connections.peekLast();
+		if (oldest != null && oldest.idleNanos() >= idleTimeoutNanos && idle.connections.removeLastOccurrence(oldest)) {
+			idle.size.decrementAndGet();
+			oldest.close();
+		}
+		if (idle.size.incrementAndGet() > maxIdlePerOrigin) {
+			idle.size.decrementAndGet();
+			conn.close();
+			return;
+		}
+		conn.markIdle();
+		idle.connections.offerFirst(conn);
+	}
+
+	/**
+	 * @return the number of idle connections to the origin
+	 */
+	public int getIdleCount(String origin) {
+		Idle idle = origins.get(origin);
+		return idle == null ? 0 : idle.size.get();
+	}
+
+	/**
+	 * Closes all idle connections
+	 */
+	public void clear() {
+		for (Idle idle : origins.values()) {
+			OriginConnection conn;
+			while ((conn = idle.connections.pollFirst()) != null) {
+				idle.size.decrementAndGet();
+				conn.close();
+			}
+		}
+	}
+
+	private static final class Idle {
+		final ConcurrentLinkedDeque<OriginConnection> connections = new ConcurrentLinkedDeque<>();
+		final AtomicInteger size = new AtomicInteger();
+	}
+}
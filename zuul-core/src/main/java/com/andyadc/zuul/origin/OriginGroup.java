@@ -0,0 +1,149 @@
+package com.andyadc.zuul.origin;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The instances of an origin and the LoadBalancer spreading requests over them.
+ * <p>
+ * Instances are ejected passively, from the outcome of the requests sent to them: after the configured number of
+ * consecutive failures (5xx responses, connect errors and timeouts) an instance gets no requests for the base
+ * ejection time, multiplied by the number of times it was ejected recently. No more than the max ejection percent of
+ * the instances are ejected at a time, and if all instances are ejected requests are spread over all of them anyway.
+ * <p>
+ * The group also keeps the RetryBudget of its origin and a LatencyWindow of its successful requests, from which the
+ * route picks the delay of hedged requests.
+ */
+public class OriginGroup {
+
+	private final String name;
+	private final OriginInstance[] instances;
+	private final LoadBalancer balancer;
+	private final int consecutiveFailures;
+	private final long baseEjectionNanos;
+	private final long maxEjectionNanos;
+	private final int maxEjectionPercent;
+	private final RetryBudget retryBudget;
+	private final LatencyWindow latencies;
+
+	/**
+	 * @param consecutiveFailures failures in a row that eject an instance
+	 * @param baseEjectionNanos   how long an instance is ejected the first time
+	 * @param maxEjectionNanos    how long an instance is ejected at most
+	 * @param maxEjectionPercent  the percentage of the instances that may be ejected at a time
+	 * @param retryBudget         the budget for retries and hedged requests
+	 * @param latencies           the window to record the latencies of successful requests in
+	 */
+	public OriginGroup(String name, OriginInstance[] instances, LoadBalancer balancer,
+					   int consecutiveFailures, long baseEjectionNanos, long maxEjectionNanos, int maxEjectionPercent,
+					   RetryBudget retryBudget, LatencyWindow latencies) {
+		if (instances.length == 0) {
+			throw new IllegalArgumentException("Origin group " + name + " has no instances");
+		}
+		this.name = name;
+		this.instances = instances.clone();
+		this.balancer = balancer;
+		this.consecutiveFailures = consecutiveFailures;
+		this.baseEjectionNanos = baseEjectionNanos;
+		this.maxEjectionNanos = maxEjectionNanos;
+		this.maxEjectionPercent = maxEjectionPercent;
+		this.retryBudget = retryBudget;
+		this.latencies = latencies;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public OriginInstance[] getInstances() {
+		return instances.clone();
+	}
+
+	public LoadBalancer getBalancer() {
+		return balancer;
+	}
+
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+
+	/**
+	 * @return the latencies of the recent successful requests
+	 */
+	public LatencyWindow getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Picks the instance for a request and counts the request as outstanding on it.
+	 * The request must be completed with complete().
+	 */
+	public OriginInstance start() {
+		return start(null);
+	}
+
+	/**
+	 * Picks the instance for another attempt at a request, preferring an instance other than the one given, and
+	 * counts the request as outstanding on it. The request must be completed with complete() or cancel().
+	 *
+	 * @param avoid the instance of the previous attempt, may be null
+	 */
+	public OriginInstance start(OriginInstance avoid) {
+		long now = System.nanoTime();
+		OriginInstance instance = balancer.choose(instances, now);
+		for (int i = 0; i < 2 && instance == avoid && avoid != null && instances.length > 1; i++) {
+			instance = balancer.choose(instances, now);
+		}
+		if (instance == avoid && avoid != null && instances.length > 1) {
+			int next = ThreadLocalRandom.current().nextInt(instances.length - 1);
+			instance = instances[next] == avoid ? instances[instances.length - 1] : instances[next];
+		}
+		if (instance == null) {
+			// all ejected
+			instance = instances[ThreadLocalRandom.current().nextInt(instances.length)];
+		}
+		instance.start();
+		return instance;
+	}
+
+	/**
+	 * Records the outcome of a request to an instance obtained from start()
+	 *
+	 * @param latencyNanos time to the response head, or to the failure
+	 * @param success      false for 5xx responses, connect errors and timeouts
+	 */
+	public void complete(OriginInstance instance, long latencyNanos, boolean success) {
+		int failures = instance.complete(latencyNanos, success);
+		if (success) {
+			latencies.record(latencyNanos);
+			if (instance.getEjections() > 0) instance.recovered();
+		} else if (failures >= consecutiveFailures) {
+			eject(instance);
+		}
+	}
+
+	/**
+	 * Ends a request to an instance obtained from start() that was given up before it completed
+	 *
+	 * @param latencyNanos time until it was given up, 0 if it was never sent
+	 */
+	public void cancel(OriginInstance instance, long latencyNanos) {
+		instance.cancel(latencyNanos);
+	}
+
+	private synchronized void eject(OriginInstance instance) {
+		long now = System.nanoTime();
+		if (!instance.isAvailable(now)) return;
+		int ejected = 0;
+		for (OriginInstance i : instances) {
+			if (!i.isAvailable(now)) ejected++;
+		}
+		if ((ejected + 1) * 100 > maxEjectionPercent * instances.length) return;
+		instance.eject(now, baseEjectionNanos, maxEjectionNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "OriginGroup[" + name + ", " + Arrays.toString(instances) + "]";
+	}
+}
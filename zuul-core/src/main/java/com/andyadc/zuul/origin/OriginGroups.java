@@ -0,0 +1,89 @@
+package com.andyadc.zuul.origin;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates OriginGroups with the configured ejection and retry budget settings. Instances are shared by URL, so their
+ * latency and ejection state carries over when groups are rebuilt, e.g. on a route table reload, and is the same in
+ * every group an instance belongs to. Retry budgets and latency windows are shared by group name in the same way.
+ */
+public class OriginGroups {
+
+	private static final OriginGroups INSTANCE = new OriginGroups(
+		Long.getLong(ZuulConstants.ZUUL_ORIGIN_EWMA_DECAY_MILLIS, 10000),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_EJECTION_CONSECUTIVE_FAILURES, 5),
+		Long.getLong(ZuulConstants.ZUUL_ORIGIN_EJECTION_BASE_MILLIS, 30000),
+		Long.getLong(ZuulConstants.ZUUL_ORIGIN_EJECTION_MAX_MILLIS, 300000),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_EJECTION_MAX_PERCENT, 50),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_RETRY_BUDGET_PERCENT, 10),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_RETRY_BUDGET_MIN_PER_SECOND, 5),
+		Integer.getInteger(ZuulConstants.ZUUL_ORIGIN_RETRY_BUDGET_WINDOW_SECONDS, 10),
+		Integer.getInteger(ZuulConstants.ZUUL_ROUTE_HEDGE_PERCENTILE, 95));
+
+	private static final int LATENCY_WINDOW_SIZE = 1024;
+
+	private final ConcurrentHashMap<String, OriginInstance> instances = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, RetryBudget> retryBudgets = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+	private final long decayMillis;
+	private final int consecutiveFailures;
+	private final long baseEjectionMillis;
+	private final long maxEjectionMillis;
+	private final int maxEjectionPercent;
+	private final int retryPercent;
+	private final int minRetriesPerSecond;
+	private final int retryWindowSeconds;
+	private final int latencyPercentile;
+
+	/**
+	 * @param retryPercent        retries allowed per hundred requests to a group
+	 * @param minRetriesPerSecond retries allowed per second to a group regardless of its requests
+	 * @param retryWindowSeconds  the window retries are counted over
+	 * @param latencyPercentile   the latency percentile computed for each group, which is the hedging delay
+	 */
+	public OriginGroups(long decayMillis, int consecutiveFailures, long baseEjectionMillis, long maxEjectionMillis, int maxEjectionPercent,
+						int retryPercent, int minRetriesPerSecond, int retryWindowSeconds, int latencyPercentile) {
+		this.decayMillis = decayMillis;
+		this.consecutiveFailures = consecutiveFailures;
+		this.baseEjectionMillis = baseEjectionMillis;
+		this.maxEjectionMillis = maxEjectionMillis;
+		this.maxEjectionPercent = maxEjectionPercent;
+		this.retryPercent = retryPercent;
+		this.minRetriesPerSecond = minRetriesPerSecond;
+		this.retryWindowSeconds = retryWindowSeconds;
+		this.latencyPercentile = latencyPercentile;
+	}
+
+	/**
+	 * @return the shared OriginGroups
+	 */
+	public static OriginGroups getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the instance for the URL, created on first use
+	 */
+	public OriginInstance instance(URL url) {
+		return instances.computeIfAbsent(url.toExternalForm(), k -> new OriginInstance(url, decayMillis));
+	}
+
+	/**
+	 * @return a group of the instances for the URLs
+	 */
+	public OriginGroup group(String name, List<URL> urls, LoadBalancer balancer) {
+		OriginInstance[] members = new OriginInstance[urls.size()];
+		for (int i = 0; i < members.length; i++) {
+			members[i] = instance(urls.get(i));
+		}
+		return new OriginGroup(name, members, balancer, consecutiveFailures,
+			TimeUnit.MILLISECONDS.toNanos(baseEjectionMillis), TimeUnit.MILLISECONDS.toNanos(maxEjectionMillis), maxEjectionPercent,
+			retryBudgets.computeIfAbsent(name, k -> new RetryBudget(retryPercent, minRetriesPerSecond, retryWindowSeconds)),
+			latencies.computeIfAbsent(name, k -> new LatencyWindow(LATENCY_WINDOW_SIZE, latencyPercentile)));
+	}
+}
@@ -0,0 +1,141 @@
+package com.andyadc.zuul.origin;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One instance of an origin, with the load and health statistics load balancers work from: the number of requests
+ * outstanding, a latency EWMA, and the passive outlier ejection state kept by its OriginGroup.
+ * <p>
+ * The latency average decays with time rather than per sample, so an instance that has been idle for a while is
+ * judged by recent latencies only, and it jumps to any sample above it ("peak EWMA"), so an instance that turns slow
+ * is avoided at once and only slowly trusted again.
+ */
+public class OriginInstance {
+
+	private final URL url;
+	private final long decayNanos;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private double ewmaNanos;
+	private long lastSampleNanos = System.nanoTime();
+	private volatile double latency;
+	private volatile long ejectedUntilNanos;
+	private volatile int ejections;
+
+	/**
+	 * @param decayMillis time constant of the latency EWMA: a sample's weight falls to 1/e after this long
+	 */
+	public OriginInstance(URL url, long decayMillis) {
+		this.url = url;
+		this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+		this.ejectedUntilNanos = lastSampleNanos;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return the number of requests sent to the instance and not completed yet
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return the latency EWMA in nanos, 0 before the first sample
+	 */
+	public double getLatencyEwmaNanos() {
+		return latency;
+	}
+
+	/**
+	 * @return the expected latency of one more request: the latency EWMA scaled by the requests outstanding. An
+	 * instance without latency samples costs nothing until it has a request outstanding, and is avoided after that
+	 * until the request completes, so a new instance is probed rather than flooded.
+	 */
+	public double getCost() {
+		double ewma = latency;
+		int n = outstanding.get();
+		if (ewma == 0) {
+			return n == 0 ? 0 : Double.MAX_VALUE / 2;
+		}
+		return ewma * (n + 1);
+	}
+
+	/**
+	 * @return true unless the instance is ejected
+	 */
+	public boolean isAvailable(long nowNanos) {
+		return nowNanos - ejectedUntilNanos >= 0;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+
+	/**
+	 * @return the number of times the instance was ejected, less one for each success since it returned
+	 */
+	public int getEjections() {
+		return ejections;
+	}
+
+	void start() {
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Records the outcome of a request started with start()
+	 *
+	 * @return the number of consecutive failures, 0 after a success
+	 */
+	int complete(long latencyNanos, boolean success) {
+		outstanding.decrementAndGet();
+		// a failure counts as at least twice the usual latency, so an instance failing fast doesn't attract traffic
+		sample(success ? latencyNanos : Math.max(latencyNanos, (long) (2 * latency)));
+		if (success) {
+			consecutiveFailures.set(0);
+			return 0;
+		}
+		return consecutiveFailures.incrementAndGet();
+	}
+
+	/**
+	 * Ends a request started with start() that was given up before it completed, e.g. the slower of two hedged
+	 * requests. Its latency so far is a sample, unless it is 0; it is neither a success nor a failure.
+	 */
+	void cancel(long latencyNanos) {
+		outstanding.decrementAndGet();
+		if (latencyNanos > 0) sample(latencyNanos);
+	}
+
+	private synchronized void sample(long latencyNanos) {
+		long now = System.nanoTime();
+		if (ewmaNanos == 0 || latencyNanos > ewmaNanos) {
+			ewmaNanos = latencyNanos;
+		} else {
+			double w = Math.exp(-(double) Math.max(0, now - lastSampleNanos) / decayNanos);
+			ewmaNanos = ewmaNanos * w + latencyNanos * (1 - w);
+		}
+		lastSampleNanos = now;
+		latency = Math.max(ewmaNanos, 1);
+	}
+
+	synchronized void eject(long nowNanos, long baseNanos, long maxNanos) {
+		int n = ++ejections;
+		ejectedUntilNanos = nowNanos + Math.min(maxNanos, baseNanos * n);
+		consecutiveFailures.set(0);
+	}
+
+	synchronized void recovered() {
+		if (ejections > 0) ejections--;
+	}
+
+	@Override
+	public String toString() {
+		return "OriginInstance[" + url + ", outstanding=" + outstanding.get() + ", ewmaMs=" + latency / 1e6 + "]";
+	}
+}
@@ -0,0 +1,54 @@
+package com.andyadc.zuul.origin;
+
+import com.andyadc.zuul.util.Pair;
+
+import java.util.List;
+
+/**
+ * The status line and headers of an origin response, and a stream over its body
+ */
+public class OriginResponse {
+
+	private final int status;
+	private final String reason;
+	private final List<Pair<String, String>> headers;
+	private final long contentLength;
+	private final OriginBodyStream body;
+
+	OriginResponse(int status, String reason, List<Pair<String, String>> headers, long contentLength, OriginBodyStream body) {
+		this.status = status;
+		this.reason = reason;
+		this.headers = headers;
+		this.contentLength = contentLength;
+		this.body = body;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return the response headers in the order the origin sent them, hop-by-hop headers included
+	 */
+	public List<Pair<String, String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return the Content-Length of the response, -1 if the origin did not send one
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return the body; it must be read to its end or closed to free the connection
+	 */
+	public OriginBodyStream getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,41 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: of two random available instances, sends the request to the one with the lower cost, the
+ * latency EWMA scaled by the requests outstanding (see OriginInstance.getCost()). Load follows the fast instances
+ * without all of it piling onto the single fastest one, and costs O(1) however large the group.
+ */
+public class PeakEwmaBalancer implements LoadBalancer {
+
+	private static final int MAX_PICKS = 4;
+
+	@Override
+	public OriginInstance choose(OriginInstance[] instances, long nowNanos) {
+		int n = instances.length;
+		if (n == 1) {
+			return instances[0].isAvailable(nowNanos) ? instances[0] : null;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int pick = 0; pick < MAX_PICKS; pick++) {
+			int i = random.nextInt(n);
+			int j = random.nextInt(n - 1);
+			if (j >= i) j++;
+			OriginInstance a = instances[i];
+			OriginInstance b = instances[j];
+			// a pair with an ejected instance offers no choice, so draw again rather than take the other one blindly
+			if (a.isAvailable(nowNanos) && b.isAvailable(nowNanos)) {
+				return a.getCost() <= b.getCost() ? a : b;
+			}
+		}
+		// many instances are ejected: pick the cheapest of the rest
+		OriginInstance best = null;
+		for (OriginInstance instance : instances) {
+			if (instance.isAvailable(nowNanos) && (best == null || instance.getCost() < best.getCost())) {
+				best = instance;
+			}
+		}
+		return best;
+	}
+}
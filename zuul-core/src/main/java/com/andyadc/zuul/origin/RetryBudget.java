@@ -0,0 +1,96 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the retries and hedged requests sent to an origin at a percentage of its requests over a rolling window, plus
+ * a minimum number per second so origins with little traffic can still retry. When an origin fails every request,
+ * retries thus add at most that percentage to its load instead of multiplying it.
+ * <p>
+ * The window is kept in one second buckets, reused as time goes by.
+ */
+public class RetryBudget {
+
+	private final int percent;
+	private final long minRetries;
+	private final Bucket[] buckets;
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param percent       retries allowed per hundred requests
+	 * @param minPerSecond  retries allowed per second regardless of the requests
+	 * @param windowSeconds the length of the window
+	 */
+	public RetryBudget(int percent, int minPerSecond, int windowSeconds) {
+		this.percent = percent;
+		this.minRetries = (long) minPerSecond * windowSeconds;
+		this.buckets = new Bucket[Math.max(1, windowSeconds)];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new Bucket();
+		}
+	}
+
+	/**
+	 * Counts a request; every request counts once, whatever number of attempts it takes
+	 */
+	public void recordRequest() {
+		bucket(now()).requests.incrementAndGet();
+	}
+
+	/**
+	 * Withdraws one retry from the budget
+	 *
+	 * @return false if the budget is spent, in which case the request must not be retried
+	 */
+	public boolean tryRetry() {
+		long now = now();
+		Bucket current = bucket(now);
+		current.retries.incrementAndGet();
+		long requests = 0;
+		long retries = 0;
+		for (Bucket bucket : buckets) {
+			if (now - bucket.second < buckets.length) {
+				requests += bucket.requests.get();
+				retries += bucket.retries.get();
+			}
+		}
+		if (retries * 100 > minRetries * 100 + requests * percent) {
+			current.retries.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return retries refused since the budget was created
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	private static long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+
+	private Bucket bucket(long second) {
+		Bucket bucket = buckets[(int) (second % buckets.length)];
+		if (bucket.second != second) {
+			synchronized (bucket) {
+				if (bucket.second != second) {
+					bucket.requests.set(0);
+					bucket.retries.set(0);
+					bucket.second = second;
+				}
+			}
+		}
+		return bucket;
+	}
+
+	private static final class Bucket {
+		volatile long second = Long.MIN_VALUE / 2;
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong retries = new AtomicLong();
+	}
+}
@@ -0,0 +1,22 @@
+package com.andyadc.zuul.origin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to each available instance in turn
+ */
+public class RoundRobinBalancer implements LoadBalancer {
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Override
+	public OriginInstance choose(OriginInstance[] instances, long nowNanos) {
+		int n = instances.length;
+		int start = next.getAndIncrement() & Integer.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			OriginInstance instance = instances[(start + i) % n];
+			if (instance.isAvailable(nowNanos)) return instance;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,117 @@
+package com.andyadc.zuul.route;
+
+import com.andyadc.zuul.origin.OriginGroup;
+import com.andyadc.zuul.util.HeaderMap;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A route of the RouteTable: requests whose path matches the pattern, and whose method and headers match the
+ * predicates, are routed to the origin, or balanced over the instances of the origin group.
+ */
+public class Route {
+
+	private final String name;
+	private final String pattern;
+	private final URL origin;
+	private final OriginGroup group;
+	private final Set<String> methods;
+	private final String[] headerNames;
+	private final String[] headerValues;
+	private final int index;
+
+	/**
+	 * @param name         the route name, reported in the RequestContext
+	 * @param pattern      the path pattern, e.g. "/api/users/*&#47;orders" or "/static/**"
+	 * @param origin       the origin to route to
+	 * @param methods      the methods matched, upper case, null for any
+	 * @param headerNames  names of headers the request must have
+	 * @param headerValues the value each header must have, or null where any value will do
+	 * @param index        position of the route in its table, breaks ties in precedence
+	 */
+	public Route(String name, String pattern, URL origin, Set<String> methods, String[] headerNames, String[] headerValues, int index) {
+		this(name, pattern, origin, null, methods, headerNames, headerValues, index);
+	}
+
+	/**
+	 * @param group the origin group to balance requests over, null to route to the origin
+	 */
+	public Route(String name, String pattern, URL origin, OriginGroup group, Set<String> methods, String[] headerNames, String[] headerValues, int index) {
+		if (headerNames.length != headerValues.length) {
+			throw new IllegalArgumentException("headerNames and headerValues differ in length");
+		}
+		this.name = name;
+		this.pattern = pattern;
+		this.origin = origin;
+		this.group = group;
+		this.methods = methods;
+		this.headerNames = headerNames;
+		this.headerValues = headerValues;
+		this.index = index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the origin, the first instance for a route to a group
+	 */
+	public URL getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * @return the origin group, null for a route to a single origin
+	 */
+	public OriginGroup getGroup() {
+		return group;
+	}
+
+	/**
+	 * @return the methods matched, null for any
+	 */
+	public Set<String> getMethods() {
+		return methods;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the number of predicates besides the path; routes with more of them take precedence on the same path
+	 */
+	public int getPredicateCount() {
+		return (methods == null ? 0 : 1) + headerNames.length;
+	}
+
+	/**
+	 * @return true if the method and headers satisfy the predicates of the route
+	 */
+	public boolean matches(String method, HeaderMap headers) {
+		if (methods != null && !methods.contains(method.toUpperCase(Locale.ROOT))) {
+			return false;
+		}
+		for (int i = 0; i < headerNames.length; i++) {
+			String value = headers == null ? null : headers.getFirst(headerNames[i]);
+			if (value == null || (headerValues[i] != null && !headerValues[i].equals(value))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "Route[" + name + ", " + pattern + (methods == null ? "" : " " + methods)
+			+ (headerNames.length == 0 ? "" : " " + Arrays.toString(headerNames)) + " -> " + (group == null ? origin : group) + "]";
+	}
+}
@@ -0,0 +1,327 @@
+package com.andyadc.zuul.route;
+
+import com.andyadc.zuul.origin.LoadBalancer;
+import com.andyadc.zuul.origin.OriginGroup;
+import com.andyadc.zuul.origin.OriginGroups;
+import com.andyadc.zuul.util.HeaderMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable set of routes compiled into a radix tree over their path patterns. A lookup walks the request path
+ * once, plus some backtracking for wildcards, instead of testing every route; what it costs depends on the path and
+ * on how the patterns branch. Larger tables still cost more, mostly in cache misses; see RouteTableBenchmark.
+ * <p>
+ * Patterns are paths in which a segment may be "*" (or "{name}"), matching any one segment, and whose last segment
+ * may be "**", matching any number of segments including none: "/api/**" matches "/api" and "/api/a/b".
+ * The most specific route wins. Segment by segment from the left, a literal beats "*", which beats "**"; a route
+ * whose pattern can't match the rest of the path is passed over for a less specific one. Among routes with the same
+ * pattern, those with more method and header predicates are tried first, then the earlier one in the table.
+ * <p>
+ * The text format has one route per line, with whitespace separated fields; "#" starts a comment:
+ * <pre>
+ * # pattern           origin                        predicates
+ * /api/users/**       http://users.internal:8080    method=GET,HEAD  header:X-Canary=true  name=users-canary
+ * /api/users/**       http://users.internal:8080
+ * /**                 http://www.internal
+ * </pre>
+ * "header:Name" without a value only requires the header to be present.
+ * <p>
+ * The origin may be a comma separated list of instances, which form an OriginGroup balanced by "balancer=p2c" (the
+ * default), "balancer=least-outstanding" or "balancer=round-robin":
+ * <pre>
+ * /api/orders/**      http://orders-1:8080,http://orders-2:8080,http://orders-3:8080  balancer=p2c
+ * </pre>
+ */
+public class RouteTable {
+
+	private static final Route[] NO_ROUTES = new Route[0];
+	private static final Comparator<Route> PRECEDENCE =
+		Comparator.comparingInt(Route::getPredicateCount).reversed().thenComparingInt(Route::getIndex);
+
+	private final Node root = new Node("");
+	private final List<Route> routes;
+	private final Map<String, Route> byName = new HashMap<>();
+
+	public RouteTable(List<Route> routes) {
+		this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+		for (Route route : routes) {
+			insert(route);
+			if (route.getName() != null) byName.putIfAbsent(route.getName(), route);
+		}
+	}
+
+	/**
+	 * @return a table without routes
+	 */
+	public static RouteTable empty() {
+		return new RouteTable(Collections.emptyList());
+	}
+
+	public List<Route> getRoutes() {
+		return routes;
+	}
+
+	public int size() {
+		return routes.size();
+	}
+
+	/**
+	 * @return the first route of the table with the name, null if there is none
+	 */
+	public Route getRoute(String name) {
+		return name == null ? null : byName.get(name);
+	}
+
+	/**
+	 * Finds the route for a request
+	 *
+	 * @param method  the request method
+	 * @param path    the request path, without the query
+	 * @param headers the request headers, may be null
+	 * @return the most specific route matching the request, null if none does
+	 */
+	public Route match(String method, String path, HeaderMap headers) {
+		if (path == null || path.isEmpty()) path = "/";
+		return match(root, method, path, 0, headers);
+	}
+
+	private static Route match(Node node, String method, String path, int pos, HeaderMap headers) {
+		int length = path.length();
+		if (pos == length) {
+			Route route = select(node.routes, method, headers);
+			if (route != null) return route;
+		} else {
+			Node child = node.child(path.charAt(pos));
+			if (child != null && path.startsWith(child.label, pos)) {
+				Route route = match(child, method, path, pos + child.label.length(), headers);
+				if (route != null) return route;
+			}
+			if (node.param != null && path.charAt(pos) != '/') {
+				int end = path.indexOf('/', pos);
+				Route route = match(node.param, method, path, end < 0 ? length : end, headers);
+				if (route != null) return route;
+			}
+		}
+		if (node.catchAll != null && (pos == length || path.charAt(pos) == '/')) {
+			return select(node.catchAll.routes, method, headers);
+		}
+		return null;
+	}
+
+	private static Route select(Route[] candidates, String method, HeaderMap headers) {
+		for (Route route : candidates) {
+			if (route.matches(method, headers)) return route;
+		}
+		return null;
+	}
+
+	private void insert(Route route) {
+		String pattern = route.getPattern();
+		if (pattern.isEmpty() || pattern.charAt(0) != '/') {
+			throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+		}
+		Node node = root;
+		int start = 0;
+		int pos = 0;
+		int length = pattern.length();
+		while (pos < length) {
+			// pos is at a '/', the segment runs to the next one
+			int end = pattern.indexOf('/', pos + 1);
+			if (end < 0) end = length;
+			String segment = pattern.substring(pos + 1, end);
+			if (segment.equals("**")) {
+				if (end != length) {
+					throw new IllegalArgumentException("\"**\" must be the last segment: " + pattern);
+				}
+				node = insertLiteral(node, pattern.substring(start, pos));
+				if (node.catchAll == null) node.catchAll = new Node("");
+				node = node.catchAll;
+				start = length;
+				break;
+			}
+			if (segment.equals("*") || (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}')) {
+				node = insertLiteral(node, pattern.substring(start, pos + 1));
+				if (node.param == null) node.param = new Node("");
+				node = node.param;
+				start = end;
+			} else if (segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0) {
+				throw new IllegalArgumentException("Wildcards must span whole segments: " + pattern);
+			}
+			pos = end;
+		}
+		node = insertLiteral(node, pattern.substring(start));
+		node.add(route);
+	}
+
+	/**
+	 * @return the node reached from node by the literal text, splitting edges and adding nodes as needed
+	 */
+	private static Node insertLiteral(Node node, String text) {
+		int pos = 0;
+		while (pos < text.length()) {
+			Node child = node.child(text.charAt(pos));
+			if (child == null) {
+				child = new Node(text.substring(pos));
+				node.addChild(child);
+				return child;
+			}
+			String label = child.label;
+			int common = 0;
+			int max = Math.min(label.length(), text.length() - pos);
+			while (common < max && label.charAt(common) == text.charAt(pos + common)) common++;
+			if (common < label.length()) {
+				// split the edge: node -> split -> child
+				Node split = new Node(label.substring(0, common));
+				child.label = label.substring(common);
+				split.addChild(child);
+				node.replaceChild(split);
+				child = split;
+			}
+			node = child;
+			pos += common;
+		}
+		return node;
+	}
+
+	/**
+	 * Reads a route table in the text format
+	 *
+	 * @throws IllegalArgumentException for a malformed line, with its line number
+	 */
+	public static RouteTable parse(Reader reader) throws IOException {
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		List<Route> routes = new ArrayList<>();
+		String line;
+		int lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			int comment = line.indexOf('#');
+			if (comment >= 0) line = line.substring(0, comment);
+			line = line.trim();
+			if (line.isEmpty()) continue;
+			try {
+				routes.add(parseRoute(line, routes.size()));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid route on line " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+		return new RouteTable(routes);
+	}
+
+	/**
+	 * Reads a route table file in the text format
+	 */
+	public static RouteTable load(File file) throws IOException {
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			return parse(reader);
+		}
+	}
+
+	private static Route parseRoute(String line, int index) {
+		String[] fields = line.split("\\s+");
+		if (fields.length < 2) {
+			throw new IllegalArgumentException("expected a pattern and an origin");
+		}
+		String pattern = fields[0];
+		List<URL> origins = new ArrayList<>();
+		for (String origin : fields[1].split(",")) {
+			try {
+				origins.add(new URL(origin));
+			} catch (MalformedURLException e) {
+				throw new IllegalArgumentException("malformed origin " + origin);
+			}
+		}
+		String name = pattern;
+		String balancer = null;
+		Set<String> methods = null;
+		List<String> headerNames = new ArrayList<>();
+		List<String> headerValues = new ArrayList<>();
+		for (int i = 2; i < fields.length; i++) {
+			String field = fields[i];
+			if (field.startsWith("method=")) {
+				methods = new HashSet<>(Arrays.asList(field.substring(7).toUpperCase(Locale.ROOT).split(",")));
+			} else if (field.startsWith("header:")) {
+				int eq = field.indexOf('=');
+				headerNames.add(eq < 0 ? field.substring(7) : field.substring(7, eq));
+				headerValues.add(eq < 0 ? null : field.substring(eq + 1));
+			} else if (field.startsWith("name=")) {
+				name = field.substring(5);
+			} else if (field.startsWith("balancer=")) {
+				balancer = field.substring(9);
+			} else {
+				throw new IllegalArgumentException("unknown predicate " + field);
+			}
+		}
+		OriginGroup group = null;
+		if (origins.size() > 1 || balancer != null) {
+			group = OriginGroups.getInstance().group(name, origins, LoadBalancer.forName(balancer == null ? "p2c" : balancer));
+		}
+		return new Route(name, pattern, origins.get(0), group, methods,
+			headerNames.toArray(new String[0]), headerValues.toArray(new String[0]), index);
+	}
+
+	private static final class Node {
+
+		String label;
+		char[] indices = new char[0];
+		Node[] children = new Node[0];
+		// matches one whole segment
+		Node param;
+		// matches the rest of the path, if empty or starting with '/'
+		Node catchAll;
+		Route[] routes = NO_ROUTES;
+
+		Node(String label) {
+			this.label = label;
+		}
+
+		Node child(char c) {
+			int i = Arrays.binarySearch(indices, c);
+			return i < 0 ? null : children[i];
+		}
+
+		void addChild(Node child) {
+			char c = child.label.charAt(0);
+			int i = -Arrays.binarySearch(indices, c) - 1;
+			char[] newIndices = new char[indices.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(indices, 0, newIndices, 0, i);
+			System.arraycopy(children, 0, newChildren, 0, i);
+			newIndices[i] = c;
+			newChildren[i] = child;
+			System.arraycopy(indices, i, newIndices, i + 1, indices.length - i);
+			System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+			indices = newIndices;
+			children = newChildren;
+		}
+
+		void replaceChild(Node child) {
+			children[Arrays.binarySearch(indices, child.label.charAt(0))] = child;
+		}
+
+		void add(Route route) {
+			Route[] newRoutes = Arrays.copyOf(routes, routes.length + 1);
+			newRoutes[routes.length] = route;
+			Arrays.sort(newRoutes, PRECEDENCE);
+			routes = newRoutes;
+		}
+	}
+}
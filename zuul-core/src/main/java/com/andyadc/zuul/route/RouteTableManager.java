@@ -0,0 +1,127 @@
+package com.andyadc.zuul.route;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Holds the current RouteTable, loaded from a file that is polled for changes.
+ * A changed file is compiled into a new table off the request path, which then replaces the current one in a single
+ * volatile write: a request sees either the old table or the new one, never a mix. A file that fails to load is
+ * logged and the current table is kept.
+ */
+public class RouteTableManager {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RouteTableManager.class);
+	private static final RouteTableManager INSTANCE = new RouteTableManager();
+
+	private volatile RouteTable table = RouteTable.empty();
+	private File file;
+	private long lastModified;
+	private long length;
+	private Thread poller;
+	private volatile boolean bRunning;
+
+	RouteTableManager() {
+	}
+
+	public static RouteTableManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Loads the route table file and polls it for changes
+	 *
+	 * @param path                   path of the route table file
+	 * @param pollingIntervalSeconds the polling interval in seconds
+	 * @throws IOException if the file can't be read
+	 */
+	public static void init(String path, int pollingIntervalSeconds) throws IOException {
+		INSTANCE.start(new File(path), pollingIntervalSeconds);
+	}
+
+	/**
+	 * Stops polling the file
+	 */
+	public static void shutdown() {
+		INSTANCE.stopPoller();
+	}
+
+	/**
+	 * @return the current route table
+	 */
+	public RouteTable getRouteTable() {
+		return table;
+	}
+
+	/**
+	 * Replaces the current route table
+	 */
+	public void setRouteTable(RouteTable table) {
+		this.table = table;
+	}
+
+	synchronized void start(File file, int pollingIntervalSeconds) throws IOException {
+		stopPoller();
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.length = file.length();
+		setRouteTable(RouteTable.load(file));
+		LOG.info("Loaded {} routes from {}", table.size(), file);
+		startPoller(pollingIntervalSeconds);
+	}
+
+	void startPoller(int pollingIntervalSeconds) {
+		bRunning = true;
+		poller = new Thread("RouteTableFilePoller") {
+			public void run() {
+				while (bRunning) {
+					try {
+						sleep(pollingIntervalSeconds * 1000L);
+						reloadIfChanged();
+					} catch (InterruptedException e) {
+						return;
+					} catch (Exception e) {
+						LOG.error("Error polling route table file " + file, e);
+					}
+				}
+			}
+		};
+		poller.setDaemon(true);
+		poller.start();
+	}
+
+	synchronized void stopPoller() {
+		bRunning = false;
+		if (poller != null) {
+			poller.interrupt();
+			poller = null;
+		}
+	}
+
+	/**
+	 * Reloads the file if its modification time or length changed
+	 *
+	 * @return true if a new table was swapped in
+	 */
+	synchronized boolean reloadIfChanged() {
+		long modified = file.lastModified();
+		long size = file.length();
+		if (modified == lastModified && size == length) {
+			return false;
+		}
+		lastModified = modified;
+		length = size;
+		try {
+			RouteTable loaded = RouteTable.load(file);
+			setRouteTable(loaded);
+			LOG.info("Reloaded {} routes from {}", loaded.size(), file);
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			LOG.error("Error loading route table " + file + ", keeping the current " + table.size() + " routes", e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.andyadc.zuul.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free pool of reusable byte arrays in power of two size classes, 1KB to 1MB by default.
+ * acquire() hands out an array of at least the requested size, taken from the pool when one is available.
+ * Requests above the largest size class get an exactly sized array that is not pooled.
+ * Each size class keeps a bounded number of arrays, so the memory retained by the pool is bounded too.
+ */
+public class BufferPool {
+
+	private static final int MIN_SHIFT = 10;
+	private static final int MAX_SHIFT = 20;
+	private static final int BYTES_PER_CLASS = 8 * 1024 * 1024;
+	private static final int MAX_SLOTS = 64;
+
+	private static final BufferPool INSTANCE = new BufferPool(MIN_SHIFT, MAX_SHIFT, BYTES_PER_CLASS);
+
+	private final int minShift;
+	private final int maxShift;
+	private final AtomicReferenceArray<byte[]>[] classes;
+
+	/**
+	 * @param minShift      log2 of the smallest size class
+	 * @param maxShift      log2 of the largest size class
+	 * @param bytesPerClass the number of bytes each size class may retain
+	 */
+	@SuppressWarnings("unchecked")
+	public BufferPool(int minShift, int maxShift, int bytesPerClass) {
+		this.minShift = minShift;
+		this.maxShift = maxShift;
+		this.classes = new AtomicReferenceArray[maxShift - minShift + 1];
+		for (int i = 0; i < classes.length; i++) {
+			int slots = Math.max(2, Math.min(MAX_SLOTS, bytesPerClass >> (minShift + i)));
+			classes[i] = new AtomicReferenceArray<>(slots);
+		}
+	}
+
+	/**
+	 * @return the shared BufferPool
+	 */
+	public static BufferPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the size of the largest pooled arrays
+	 */
+	public int getMaxPooledSize() {
+		return 1 << maxShift;
+	}
+
+	/**
+	 * Returns an array of at least minSize bytes. Its content is undefined.
+	 */
+	public byte[] acquire(int minSize) {
+		int index = classIndex(minSize);
+		if (index < 0) {
+			return new byte[minSize];
+		}
+		AtomicReferenceArray<byte[]> slots = classes[index];
+		int n = slots.length();
+		int start = ThreadLocalRandom.current().nextInt(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			if (slots.get(slot) != null) {
+				byte[] buf = slots.getAndSet(slot, null);
+				if (buf != null) {
+					return buf;
+				}
+			}
+		}
+		return new byte[1 << (minShift + index)];
+	}
+
+	/**
+	 * Returns an array obtained from acquire() to the pool. Arrays that don't match a size class, or that don't fit
+	 * into a full size class, are left to the garbage collector. The caller must not use the array afterwards.
+	 */
+	public void release(byte[] buf) {
+		if (buf == null) return;
+		int len = buf.length;
+		if (Integer.bitCount(len) != 1) return;
+		int shift = Integer.numberOfTrailingZeros(len);
+		if (shift < minShift || shift > maxShift) return;
+		AtomicReferenceArray<byte[]> slots = classes[shift - minShift];
+		int n = slots.length();
+		int start = ThreadLocalRandom.current().nextInt(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			if (slots.get(slot) == null && slots.compareAndSet(slot, null, buf)) {
+				return;
+			}
+		}
+	}
+
+	private int classIndex(int size) {
+		if (size > (1 << maxShift)) return -1;
+		int shift = size <= (1 << minShift) ? minShift : 32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift - minShift;
+	}
+}
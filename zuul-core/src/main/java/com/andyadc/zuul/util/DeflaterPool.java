@@ -0,0 +1,64 @@
+package com.andyadc.zuul.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.Deflater;
+
+/**
+ * Lock-free pool of Deflaters with one compression level and header mode.
+ * A Deflater holds native zlib memory that is only freed by end() or finalization, so reusing them avoids both the
+ * allocation per response and the native memory churn. Deflaters are reset when released. Ones that don't fit into
+ * the full pool are ended right away.
+ */
+public class DeflaterPool {
+
+	private final int level;
+	private final boolean nowrap;
+	private final AtomicReferenceArray<Deflater> slots;
+
+	/**
+	 * @param level   the compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+	 * @param nowrap  true for raw deflate data (as in gzip), false for the zlib format
+	 * @param maxIdle the number of idle Deflaters the pool retains
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maxIdle) {
+		this.level = level;
+		this.nowrap = nowrap;
+		this.slots = new AtomicReferenceArray<>(Math.max(1, maxIdle));
+	}
+
+	/**
+	 * @return a Deflater ready for new input
+	 */
+	public Deflater acquire() {
+		int n = slots.length();
+		int start = ThreadLocalRandom.current().nextInt(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			if (slots.get(slot) != null) {
+				Deflater deflater = slots.getAndSet(slot, null);
+				if (deflater != null) {
+					return deflater;
+				}
+			}
+		}
+		return new Deflater(level, nowrap);
+	}
+
+	/**
+	 * Returns a Deflater obtained from acquire(). The caller must not use it afterwards.
+	 */
+	public void release(Deflater deflater) {
+		if (deflater == null) return;
+		deflater.reset();
+		int n = slots.length();
+		int start = ThreadLocalRandom.current().nextInt(n);
+		for (int i = 0; i < n; i++) {
+			int slot = (start + i) % n;
+			if (slots.get(slot) == null && slots.compareAndSet(slot, null, deflater)) {
+				return;
+			}
+		}
+		deflater.end();
+	}
+}
@@ -1,28 +1,38 @@
 package com.andyadc.zuul.util;
 
+import com.andyadc.zuul.constants.ZuulConstants;
 import com.andyadc.zuul.context.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
-import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.TreeMap;
 
 /**
  * Some handy methods for workign with HTTP requests
  */
 public class HTTPRequestUtils {
 
+	private static final Logger LOG = LoggerFactory.getLogger(HTTPRequestUtils.class);
+
 	private final static HTTPRequestUtils INSTANCE = new HTTPRequestUtils();
 
 	private static final String X_FORWARDED_FOR_HEADER = "x-forwarded-for";
 
+	private volatile IpPrefixTrie trustedProxies = loadTrustedProxies();
+
+	private static IpPrefixTrie loadTrustedProxies() {
+		try {
+			return IpPrefixTrie.parse(System.getProperty(ZuulConstants.ZUUL_TRUSTED_PROXIES));
+		} catch (IllegalArgumentException e) {
+			LOG.error("Ignoring invalid " + ZuulConstants.ZUUL_TRUSTED_PROXIES, e);
+			return new IpPrefixTrie();
+		}
+	}
+
 	/**
 	 * return singleton HTTPRequestUtils object
 	 *
@@ -36,24 +46,48 @@ public class HTTPRequestUtils {
 	 * Get the IP address of client making the request.
 	 * <p>
 	 * Uses the "x-forwarded-for" HTTP header if available, otherwise uses the remote
-	 * IP of requester.
+	 * IP of requester. See resolveClientIP(). The result is cached in the RequestContext of the request.
 	 *
 	 * @param request <code>HttpServletRequest</code>
 	 * @return <code>String</code> IP address
 	 */
 	public String getClientIP(HttpServletRequest request) {
-		final String xForwardedFor = request.getHeader(X_FORWARDED_FOR_HEADER);
-		String clientIP;
-		if (xForwardedFor == null) {
-			clientIP = request.getRemoteAddr();
-		} else {
-			clientIP = extractClientIpFromXForwardedFor(xForwardedFor);
+		RequestContext ctx = RequestContext.getCurrentContext();
+		if (ctx.getRequest() != request) {
+			return resolveClientIP(request.getHeader(X_FORWARDED_FOR_HEADER), request.getRemoteAddr());
+		}
+		String clientIP = ctx.getClientIP();
+		if (clientIP == null) {
+			clientIP = resolveClientIP(ctx.getRequestHeaders().getFirst(X_FORWARDED_FOR_HEADER), request.getRemoteAddr());
+			ctx.setClientIP(clientIP);
 		}
 		return clientIP;
 	}
 
 	/**
-	 * Extract the client IP address from an x-forwarded-for header. Returns null if there is no x-forwarded-for header
+	 * Resolves the client IP from the x-forwarded-for header and the address of the peer.
+	 * <p>
+	 * The header is only believed if the peer is a trusted proxy (or no trusted proxies are configured). Hops are then
+	 * scanned right to left, skipping trusted proxies; the first untrusted hop is the client, since anything left of it
+	 * may have been sent by the client itself. If every hop is trusted the leftmost one is returned.
+	 *
+	 * @param xForwardedFor the x-forwarded-for header, may be null
+	 * @param remoteAddr    the address of the peer, may be null
+	 * @return <code>String</code> IP address
+	 */
+	public String resolveClientIP(String xForwardedFor, String remoteAddr) {
+		IpPrefixTrie trusted = trustedProxies;
+		if (remoteAddr != null && !trusted.isEmpty() && !trusted.contains(remoteAddr)) {
+			return remoteAddr;
+		}
+		String clientIP = extractClientIpFromXForwardedFor(xForwardedFor);
+		return clientIP == null ? remoteAddr : clientIP;
+	}
+
+	/**
+	 * Extract the client IP address from an x-forwarded-for header: the rightmost hop that is not a trusted proxy.
+	 * The header is scanned in place, only the returned hop is copied. Returns null if there is no x-forwarded-for
+	 * header or it has no hops.
 	 *
 	 * @param xForwardedFor a <code>String</code> value
 	 * @return a <code>String</code> value
@@ -62,13 +96,41 @@ public class HTTPRequestUtils {
 		if (xForwardedFor == null) {
 			return null;
 		}
-		xForwardedFor = xForwardedFor.trim();
-		String[] tokenized = xForwardedFor.split(",");
-		if (tokenized.length == 0) {
-			return null;
-		} else {
-			return tokenized[0].trim();
+		IpPrefixTrie trusted = trustedProxies;
+		int leftmostStart = -1;
+		int leftmostEnd = -1;
+		int end = xForwardedFor.length();
+		while (end >= 0) {
+			int comma = xForwardedFor.lastIndexOf(',', end - 1);
+			int start = comma + 1;
+			int hopEnd = end;
+			while (start < hopEnd && xForwardedFor.charAt(start) <= ' ') start++;
+			while (hopEnd > start && xForwardedFor.charAt(hopEnd - 1) <= ' ') hopEnd--;
+			if (start < hopEnd) {
+				if (!trusted.contains(xForwardedFor, start, hopEnd)) {
+					return xForwardedFor.substring(start, hopEnd);
+				}
+				leftmostStart = start;
+				leftmostEnd = hopEnd;
+			}
+			end = comma;
 		}
+		return leftmostStart < 0 ? null : xForwardedFor.substring(leftmostStart, leftmostEnd);
+	}
+
+	/**
+	 * @return the trusted proxy blocks, configured by the "zuul.trusted-proxies" system property
+	 */
+	public IpPrefixTrie getTrustedProxies() {
+		return trustedProxies;
+	}
+
+	/**
+	 * sets the trusted proxy blocks that are skipped when resolving the client IP. The trie must not be modified
+	 * afterwards.
+	 */
+	public void setTrustedProxies(IpPrefixTrie trustedProxies) {
+		this.trustedProxies = trustedProxies == null ? new IpPrefixTrie() : trustedProxies;
 	}
 
 	/**
@@ -78,7 +140,7 @@ public class HTTPRequestUtils {
 	 * @return a <code>String</code> value
 	 */
 	public String getHeaderValue(String sHeaderName) {
-		return RequestContext.getCurrentContext().getRequest().getHeader(sHeaderName);
+		return RequestContext.getCurrentContext().getRequestHeaders().getFirst(sHeaderName);
 	}
 
 	/**
@@ -92,29 +154,26 @@ public class HTTPRequestUtils {
 	}
 
 	/**
-	 * returns headers as a Map with String keys and Lists of Strings as values
+	 * returns headers as a Map with String keys and Lists of Strings as values. Lookups are case-insensitive and
+	 * repeated headers keep all their values. The map is a copy that callers may change without affecting the
+	 * request; RequestContext.getRequestHeaders() is the live, cheaper alternative.
 	 */
 	public Map<String, List<String>> getRequestHeaderMap() {
-		HttpServletRequest request = RequestContext.getCurrentContext().getRequest();
-		Map<String, List<String>> headers = new HashMap<>();
-		Enumeration<String> headerNames = request.getHeaderNames();
-		if (headerNames != null) {
-			while (headerNames.hasMoreElements()) {
-				String name = headerNames.nextElement();
-				String value = request.getHeader(name);
-
-				if (name != null && !name.isEmpty() && value != null) {
-					List<String> valueList = new ArrayList<>();
-					if (headers.containsKey(name)) {
-						headers.get(name).add(value);
-					}
-					valueList.add(value);
-					headers.put(name, valueList);
-				}
-			}
+		Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> header : RequestContext.getCurrentContext().getRequestHeaders().asListMap().entrySet()) {
+			headers.put(header.getKey(), new ArrayList<>(header.getValue()));
 		}
-		return Collections.unmodifiableMap(headers);
+		return headers;
+	}
 
+	/**
+	 * returns all values of the given request header
+	 *
+	 * @param sHeaderName a <code>String</code> value
+	 * @return the values, empty if the header is absent
+	 */
+	public List<String> getHeaderValues(String sHeaderName) {
+		return RequestContext.getCurrentContext().getRequestHeaders().getAll(sHeaderName);
 	}
 
 	/**
@@ -127,67 +186,57 @@ public class HTTPRequestUtils {
 			return qp;
 		}
 
-		HttpServletRequest request = RequestContext.getCurrentContext().getRequest();
-
-		qp = new LinkedHashMap<>();
-
-		if (request.getQueryString() == null) {
+		UrlEncodedParameters parsed = getParsedQueryParams();
+		if (parsed == null) {
 			return null;
 		}
-		StringTokenizer st = new StringTokenizer(request.getQueryString(), "&");
-		int i;
-
-		while (st.hasMoreTokens()) {
-			String s = st.nextToken();
-			i = s.indexOf("=");
-			if (i > 0 && s.length() >= i + 1) {
-				String name = s.substring(0, i);
-				String value = s.substring(i + 1);
-
-				try {
-					name = URLDecoder.decode(name, "UTF-8");
-					value = URLDecoder.decode(value, "UTF-8");
-				} catch (Exception e) {
-				}
+		qp = parsed.toListMap();
 
-				List<String> valueList = qp.get(name);
-				if (valueList == null) {
-					valueList = new LinkedList<>();
-					qp.put(name, valueList);
-				}
-
-				valueList.add(value);
-			} else if (i == -1) {
-				String name = s;
-				String value = "";
-				try {
-					name = URLDecoder.decode(name, "UTF-8");
-				} catch (Exception e) {
-				}
-
-				List<String> valueList = qp.get(name);
-				if (valueList == null) {
-					valueList = new LinkedList<>();
-					qp.put(name, valueList);
-				}
+		RequestContext.getCurrentContext().setRequestQueryParams(qp);
+		return qp;
+	}
 
-				valueList.add(value);
+	/**
+	 * returns the query params of the request, decoded lazily. Use this or getQueryParam() to avoid decoding
+	 * parameters that are never read. Changes made to the getQueryParams() map are not reflected.
+	 *
+	 * @return the parsed query string, null if the request has none
+	 */
+	public UrlEncodedParameters getParsedQueryParams() {
+		RequestContext ctx = RequestContext.getCurrentContext();
+		UrlEncodedParameters parsed = ctx.getParsedRequestQueryParams();
+		if (parsed == null) {
+			String queryString = ctx.getRequest().getQueryString();
+			if (queryString == null) {
+				return null;
 			}
+			parsed = UrlEncodedParameters.parseQuery(queryString);
+			ctx.setParsedRequestQueryParams(parsed);
 		}
+		return parsed;
+	}
 
-		RequestContext.getCurrentContext().setRequestQueryParams(qp);
-		return qp;
+	/**
+	 * returns the first value of a query param, decoding only that param
+	 *
+	 * @param sName the param name
+	 * @return the value, null if the param is absent
+	 */
+	public String getQueryParam(String sName) {
+		Map<String, List<String>> qp = RequestContext.getCurrentContext().getRequestQueryParams();
+		if (qp != null) {
+			List<String> v = qp.get(sName);
+			return v == null || v.isEmpty() ? null : v.get(0);
+		}
+		UrlEncodedParameters parsed = getParsedQueryParams();
+		return parsed == null ? null : parsed.getFirst(sName);
 	}
 
 	/**
 	 * Checks headers, query string, and form body for a given parameter
 	 */
 	public String getValueFromRequestElements(String sName) {
-		String sValue = null;
-		if (getQueryParams() != null) {
-			final List<String> v = getQueryParams().get(sName);
-			if (v != null && !v.isEmpty()) sValue = v.iterator().next();
-		}
+		String sValue = getQueryParam(sName);
 		if (sValue != null) return sValue;
 		sValue = getHeaderValue(sName);
 		if (sValue != null) return sValue;
@@ -0,0 +1,486 @@
+package com.andyadc.zuul.util;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Multi-valued map of HTTP headers with ASCII case-insensitive names.
+ * Names are hashed by folding A-Z while hashing and compared the same way, so neither lookups nor adds lower case
+ * (and allocate) the name. Names keep the case they were first added with, and iteration is in insertion order.
+ * Not thread safe; instances are request scoped.
+ */
+public final class HeaderMap {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Header[] table = new Header[INITIAL_CAPACITY];
+	private Header head;
+	private Header tail;
+	private int size;
+	private int modCount;
+
+	private Map<String, List<String>> listMap;
+	private Map<String, String> singleValueMap;
+
+	/**
+	 * Indexes all headers of a request, keeping every value of repeated headers
+	 */
+	public static HeaderMap fromRequest(HttpServletRequest request) {
+		HeaderMap headers = new HeaderMap();
+		Enumeration<String> names = request.getHeaderNames();
+		if (names == null) {
+			return headers;
+		}
+		while (names.hasMoreElements()) {
+			String name = names.nextElement();
+			if (name == null || name.isEmpty() || headers.containsName(name)) {
+				continue;
+			}
+			Enumeration<String> values = request.getHeaders(name);
+			if (values == null) {
+				String value = request.getHeader(name);
+				if (value != null) headers.add(name, value);
+			} else {
+				while (values.hasMoreElements()) {
+					String value = values.nextElement();
+					if (value != null) headers.add(name, value);
+				}
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * ASCII case-insensitive hash of a header name
+	 */
+	public static int hash(String name) {
+		int h = 0;
+		for (int i = 0, len = name.length(); i < len; i++) {
+			char c = name.charAt(i);
+			if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+			h = 31 * h + c;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * ASCII case-insensitive comparison of two header names
+	 */
+	public static boolean nameEquals(String a, String b) {
+		if (a == b) return true;
+		int len = a.length();
+		if (len != b.length()) return false;
+		for (int i = 0; i < len; i++) {
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+			if (x != y) {
+				if (x >= 'A' && x <= 'Z') x += 'a' - 'A';
+				if (y >= 'A' && y <= 'Z') y += 'a' - 'A';
+				if (x != y) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of distinct header names
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsName(String name) {
+		return name != null && find(name, hash(name)) != null;
+	}
+
+	/**
+	 * @return the first value of the header, null if it is absent
+	 */
+	public String getFirst(String name) {
+		if (name == null) return null;
+		Header e = find(name, hash(name));
+		return e == null ? null : e.values[0];
+	}
+
+	/**
+	 * @return an unmodifiable list of all values of the header, empty if it is absent
+	 */
+	public List<String> getAll(String name) {
+		Header e = name == null ? null : find(name, hash(name));
+		return e == null ? new Values(null) : new Values(e);
+	}
+
+	/**
+	 * Adds a value, keeping any existing values of the header
+	 */
+	public void add(String name, String value) {
+		int hash = hash(name);
+		Header e = find(name, hash);
+		if (e == null) {
+			insert(name, hash, value);
+		} else {
+			if (e.count == e.values.length) {
+				e.values = Arrays.copyOf(e.values, e.count * 2);
+			}
+			e.values[e.count++] = value;
+		}
+	}
+
+	/**
+	 * Sets the header to a single value, replacing existing values
+	 *
+	 * @return the previous first value, null if the header was absent
+	 */
+	public String set(String name, String value) {
+		int hash = hash(name);
+		Header e = find(name, hash);
+		if (e == null) {
+			insert(name, hash, value);
+			return null;
+		}
+		String old = e.values[0];
+		if (e.count > 1) {
+			Arrays.fill(e.values, 1, e.count, null);
+		}
+		e.values[0] = value;
+		e.count = 1;
+		return old;
+	}
+
+	/**
+	 * Removes all values of the header
+	 *
+	 * @return the removed values, empty if the header was absent
+	 */
+	public List<String> remove(String name) {
+		Header e = name == null ? null : find(name, hash(name));
+		if (e == null) return new Values(null);
+		unlink(e);
+		return Arrays.asList(Arrays.copyOf(e.values, e.count));
+	}
+
+	public void clear() {
+		Arrays.fill(table, null);
+		head = tail = null;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * @return an independent copy with the same headers, in the same order
+	 */
+	public HeaderMap copy() {
+		HeaderMap copy = new HeaderMap();
+		copy.setAll(this);
+		return copy;
+	}
+
+	/**
+	 * Replaces all headers with the headers of another map
+	 */
+	public void setAll(HeaderMap other) {
+		if (other == this) return;
+		clear();
+		for (Header e = other.head; e != null; e = e.after) {
+			for (int i = 0; i < e.count; i++) {
+				add(e.name, e.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return a live, read only view with the values of each header
+	 */
+	public Map<String, List<String>> asListMap() {
+		if (listMap == null) listMap = new ListMapView();
+		return listMap;
+	}
+
+	/**
+	 * @return a live view with the first value of each header. put() replaces all values of a header.
+	 */
+	public Map<String, String> asSingleValueMap() {
+		if (singleValueMap == null) singleValueMap = new SingleValueMapView();
+		return singleValueMap;
+	}
+
+	@Override
+	public String toString() {
+		return asListMap().toString();
+	}
+
+	private Header find(String name, int hash) {
+		for (Header e = table[hash & (table.length - 1)]; e != null; e = e.next) {
+			if (e.hash == hash && nameEquals(e.name, name)) return e;
+		}
+		return null;
+	}
+
+	private void insert(String name, int hash, String value) {
+		if (size >= table.length - (table.length >>> 2)) {
+			resize();
+		}
+		Header e = new Header(name, hash, value);
+		int i = hash & (table.length - 1);
+		e.next = table[i];
+		table[i] = e;
+		e.before = tail;
+		if (tail == null) head = e;
+		else tail.after = e;
+		tail = e;
+		size++;
+		modCount++;
+	}
+
+	private void resize() {
+		Header[] newTable = new Header[table.length * 2];
+		int mask = newTable.length - 1;
+		for (Header e = head; e != null; e = e.after) {
+			int i = e.hash & mask;
+			e.next = newTable[i];
+			newTable[i] = e;
+		}
+		table = newTable;
+	}
+
+	private void unlink(Header e) {
+		int i = e.hash & (table.length - 1);
+		Header prev = null;
+		for (Header c = table[i]; c != null; prev = c, c = c.next) {
+			if (c == e) {
+				if (prev == null) table[i] = c.next;
+				else prev.next = c.next;
+				break;
+			}
+		}
+		if (e.before == null) head = e.after;
+		else e.before.after = e.after;
+		if (e.after == null) tail = e.before;
+		else e.after.before = e.before;
+		size--;
+		modCount++;
+	}
+
+	private static final class Header {
+		final String name;
+		final int hash;
+		String[] values;
+		int count;
+		Header next;
+		Header before;
+		Header after;
+
+		Header(String name, int hash, String value) {
+			this.name = name;
+			this.hash = hash;
+			this.values = new String[]{value};
+			this.count = 1;
+		}
+	}
+
+	/**
+	 * Read only view of the values of one header
+	 */
+	private static final class Values extends AbstractList<String> {
+		private final Header entry;
+
+		Values(Header entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public String get(int index) {
+			if (entry == null || index < 0 || index >= entry.count) throw new IndexOutOfBoundsException("" + index);
+			return entry.values[index];
+		}
+
+		@Override
+		public int size() {
+			return entry == null ? 0 : entry.count;
+		}
+	}
+
+	private abstract class HeaderIterator<T> implements Iterator<T> {
+		private Header next = head;
+		private Header last;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		Header nextHeader() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (next == null) throw new NoSuchElementException();
+			last = next;
+			next = next.after;
+			return last;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			unlink(last);
+			last = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	private final class ListMapView extends AbstractMap<String, List<String>> {
+		private final Set<Map.Entry<String, List<String>>> entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+			@Override
+			public Iterator<Map.Entry<String, List<String>>> iterator() {
+				return new HeaderIterator<Map.Entry<String, List<String>>>() {
+					@Override
+					public Map.Entry<String, List<String>> next() {
+						Header e = nextHeader();
+						return new SimpleImmutableEntry<>(e.name, new Values(e));
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<String, List<String>>> entrySet() {
+			return entrySet;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && containsName((String) key);
+		}
+
+		@Override
+		public List<String> get(Object key) {
+			if (!(key instanceof String)) return null;
+			Header e = find((String) key, hash((String) key));
+			return e == null ? null : new Values(e);
+		}
+	}
+
+	private final class SingleValueMapView extends AbstractMap<String, String> {
+		private final Set<Map.Entry<String, String>> entrySet = new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new HeaderIterator<Map.Entry<String, String>>() {
+					@Override
+					public Map.Entry<String, String> next() {
+						final Header e = nextHeader();
+						return new Map.Entry<String, String>() {
+							@Override
+							public String getKey() {
+								return e.name;
+							}
+
+							@Override
+							public String getValue() {
+								return e.values[0];
+							}
+
+							@Override
+							public String setValue(String value) {
+								return set(e.name, value);
+							}
+
+							@Override
+							public boolean equals(Object o) {
+								if (!(o instanceof Map.Entry)) return false;
+								Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+								return e.name.equals(other.getKey()) && Objects.equals(e.values[0], other.getValue());
+							}
+
+							@Override
+							public int hashCode() {
+								return e.name.hashCode() ^ Objects.hashCode(e.values[0]);
+							}
+
+							@Override
+							public String toString() {
+								return e.name + "=" + e.values[0];
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				HeaderMap.this.clear();
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return entrySet;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && containsName((String) key);
+		}
+
+		@Override
+		public String get(Object key) {
+			return key instanceof String ? getFirst((String) key) : null;
+		}
+
+		@Override
+		public String put(String key, String value) {
+			return set(key, value);
+		}
+
+		@Override
+		public String remove(Object key) {
+			if (!(key instanceof String)) return null;
+			List<String> removed = HeaderMap.this.remove((String) key);
+			return removed.isEmpty() ? null : removed.get(0);
+		}
+
+		@Override
+		public void clear() {
+			HeaderMap.this.clear();
+		}
+	}
+}
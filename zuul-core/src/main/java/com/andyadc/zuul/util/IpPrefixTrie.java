@@ -0,0 +1,275 @@
+package com.andyadc.zuul.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of IPv4 and IPv6 CIDR blocks, held in a binary prefix trie.
+ * Nodes live in a flat int array (two child slots per node) with a parallel terminal flag, so a lookup is at most
+ * 32 or 128 array reads. Lookups parse the address straight from the chars and do not allocate.
+ * IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) match IPv4 blocks.
+ * <p>
+ * Build the trie with add() before sharing it; it is not safe to add blocks while other threads read it.
+ */
+public final class IpPrefixTrie {
+
+	private static final int V4_ROOT = 0;
+	private static final int V6_ROOT = 1;
+
+	private static final ThreadLocal<long[]> V6_SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+	// children[2 * node] is the 0 branch, children[2 * node + 1] the 1 branch. 0 means no child (the roots are never children)
+	private int[] children = new int[64];
+	private boolean[] terminal = new boolean[32];
+	private int nodes = 2;
+	private int blocks;
+
+	/**
+	 * Parses a comma separated list of CIDR blocks or single addresses, e.g. "10.0.0.0/8, 2001:db8::/32, 127.0.0.1"
+	 *
+	 * @throws IllegalArgumentException if a block is malformed
+	 */
+	public static IpPrefixTrie parse(String cidrs) {
+		IpPrefixTrie trie = new IpPrefixTrie();
+		if (cidrs == null) {
+			return trie;
+		}
+		for (String cidr : cidrs.split(",")) {
+			cidr = cidr.trim();
+			if (!cidr.isEmpty()) {
+				trie.add(cidr);
+			}
+		}
+		return trie;
+	}
+
+	/**
+	 * Adds a CIDR block such as "192.168.0.0/16" or "fc00::/7". An address without a prefix length is a single host.
+	 *
+	 * @throws IllegalArgumentException if the block is malformed
+	 */
+	public void add(String cidr) {
+		int slash = cidr.indexOf('/');
+		int addrEnd = slash < 0 ? cidr.length() : slash;
+		int prefix;
+
+		long v4 = parseV4(cidr, 0, addrEnd);
+		if (v4 >= 0) {
+			prefix = prefixLength(cidr, slash, 32);
+			insert(V4_ROOT, v4 << 32, 0, prefix);
+		} else {
+			long[] addr = new long[2];
+			if (!parseV6(cidr, 0, addrEnd, addr)) {
+				throw new IllegalArgumentException("Invalid CIDR block: " + cidr);
+			}
+			prefix = prefixLength(cidr, slash, 128);
+			insert(V6_ROOT, addr[0], addr[1], prefix);
+		}
+		blocks++;
+	}
+
+	/**
+	 * @return the number of blocks added
+	 */
+	public int size() {
+		return blocks;
+	}
+
+	public boolean isEmpty() {
+		return blocks == 0;
+	}
+
+	/**
+	 * @return true if the address is in one of the blocks, false if it is not or is not a valid address
+	 */
+	public boolean contains(CharSequence address) {
+		return address != null && contains(address, 0, address.length());
+	}
+
+	/**
+	 * Checks the address in chars [start, end). The address may be wrapped in brackets and may carry a port
+	 * ("[::1]:8080", "10.0.0.1:8080") or an IPv6 zone id ("fe80::1%eth0").
+	 *
+	 * @return true if the address is in one of the blocks, false if it is not or is not a valid address
+	 */
+	public boolean contains(CharSequence s, int start, int end) {
+		if (blocks == 0 || start >= end) {
+			return false;
+		}
+		if (s.charAt(start) == '[') {
+			int close = indexOf(s, ']', start, end);
+			if (close < 0) return false;
+			start++;
+			end = close;
+		} else {
+			int colon = indexOf(s, ':', start, end);
+			if (colon >= 0 && indexOf(s, ':', colon + 1, end) < 0) {
+				end = colon; // IPv4 with port
+			}
+		}
+		int zone = indexOf(s, '%', start, end);
+		if (zone >= 0) end = zone;
+
+		long v4 = parseV4(s, start, end);
+		if (v4 >= 0) {
+			return lookup(V4_ROOT, v4 << 32, 0, 32);
+		}
+		long[] addr = V6_SCRATCH.get();
+		if (!parseV6(s, start, end, addr)) {
+			return false;
+		}
+		if (addr[0] == 0 && (addr[1] >>> 32) == 0xffffL) {
+			return lookup(V4_ROOT, addr[1] << 32, 0, 32);
+		}
+		return lookup(V6_ROOT, addr[0], addr[1], 128);
+	}
+
+	private boolean lookup(int node, long hi, long lo, int bits) {
+		if (terminal[node]) return true;
+		for (int i = 0; i < bits; i++) {
+			long bit = i < 64 ? (hi >>> (63 - i)) & 1 : (lo >>> (127 - i)) & 1;
+			node = children[2 * node + (int) bit];
+			if (node == 0) return false;
+			if (terminal[node]) return true;
+		}
+		return false;
+	}
+
+	private void insert(int node, long hi, long lo, int prefix) {
+		for (int i = 0; i < prefix; i++) {
+			long bit = i < 64 ? (hi >>> (63 - i)) & 1 : (lo >>> (127 - i)) & 1;
+			int slot = 2 * node + (int) bit;
+			int child = children[slot];
+			if (child == 0) {
+				child = newNode(); // may grow the arrays, so store after
+				children[slot] = child;
+			}
+			node = child;
+		}
+		terminal[node] = true;
+	}
+
+	private int newNode() {
+		if (nodes == terminal.length) {
+			terminal = Arrays.copyOf(terminal, nodes * 2);
+			children = Arrays.copyOf(children, nodes * 4);
+		}
+		return nodes++;
+	}
+
+	private static int prefixLength(String cidr, int slash, int max) {
+		if (slash < 0) return max;
+		try {
+			int prefix = Integer.parseInt(cidr.substring(slash + 1).trim());
+			if (prefix >= 0 && prefix <= max) return prefix;
+		} catch (NumberFormatException ignored) {
+		}
+		throw new IllegalArgumentException("Invalid CIDR prefix length: " + cidr);
+	}
+
+	private static int indexOf(CharSequence s, char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == c) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the address as an unsigned 32 bit value, -1 if chars [start, end) are not a dotted quad
+	 */
+	static long parseV4(CharSequence s, int start, int end) {
+		long addr = 0;
+		int octets = 0;
+		int i = start;
+		while (i < end) {
+			int value = 0;
+			int digits = 0;
+			char c;
+			while (i < end && (c = s.charAt(i)) >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				if (++digits > 3) return -1;
+				i++;
+			}
+			if (digits == 0 || value > 255) return -1;
+			addr = addr << 8 | value;
+			octets++;
+			if (i == end) break;
+			if (s.charAt(i) != '.' || octets == 4) return -1;
+			i++;
+			if (i == end) return -1;
+		}
+		return octets == 4 ? addr : -1;
+	}
+
+	/**
+	 * Parses an IPv6 address, with "::" compression and an optional trailing dotted quad, into out[0] (high 64 bits)
+	 * and out[1] (low 64 bits)
+	 *
+	 * @return false if chars [start, end) are not an IPv6 address
+	 */
+	static boolean parseV6(CharSequence s, int start, int end, long[] out) {
+		out[0] = 0;
+		out[1] = 0;
+		int groups = 0;
+		int gap = -1;
+		int i = start;
+		if (end - start >= 2 && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+			gap = 0;
+			i += 2;
+		} else if (i < end && s.charAt(i) == ':') {
+			return false;
+		}
+		while (i < end) {
+			if (groups == 8) return false;
+			int j = i;
+			int value = 0;
+			int digit;
+			while (j < end && j - i < 4 && (digit = Character.digit(s.charAt(j), 16)) >= 0) {
+				value = value << 4 | digit;
+				j++;
+			}
+			if (j < end && s.charAt(j) == '.') {
+				// trailing IPv4, e.g. ::ffff:10.0.0.1
+				if (groups > 6) return false;
+				long v4 = parseV4(s, i, end);
+				if (v4 < 0) return false;
+				setGroup(out, groups++, (int) (v4 >>> 16));
+				setGroup(out, groups++, (int) (v4 & 0xffff));
+				break;
+			}
+			if (j == i) return false;
+			setGroup(out, groups++, value);
+			if (j == end) break;
+			if (s.charAt(j) != ':') return false;
+			j++;
+			if (j < end && s.charAt(j) == ':') {
+				if (gap >= 0) return false;
+				gap = groups;
+				j++;
+			} else if (j == end) {
+				return false;
+			}
+			i = j;
+		}
+		if (gap < 0) {
+			return groups == 8;
+		}
+		if (groups == 8) return false;
+		// move the groups after "::" to the end
+		int tail = groups - gap;
+		for (int k = tail - 1; k >= 0; k--) {
+			int value = getGroup(out, gap + k);
+			setGroup(out, gap + k, 0);
+			setGroup(out, 8 - tail + k, value);
+		}
+		return true;
+	}
+
+	private static int getGroup(long[] out, int group) {
+		return (int) (out[group >> 2] >>> ((3 - (group & 3)) * 16)) & 0xffff;
+	}
+
+	private static void setGroup(long[] out, int group, int value) {
+		int shift = (3 - (group & 3)) * 16;
+		out[group >> 2] = out[group >> 2] & ~(0xffffL << shift) | ((long) value & 0xffff) << shift;
+	}
+}
@@ -0,0 +1,307 @@
+package com.andyadc.zuul.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder for application/x-www-form-urlencoded data, i.e. query strings and form bodies.
+ * Parsing is a single pass over the raw chars or bytes that only records where each name and value starts and ends.
+ * Names and values are percent-decoded on first access, straight from the source into a scratch byte array, and
+ * cached. A lookup by name compares undecoded names in place, so parameters nobody reads are never decoded.
+ * Malformed percent escapes are kept literally.
+ */
+public final class UrlEncodedParameters {
+
+	private static final int[] EMPTY_BOUNDS = new int[0];
+
+	private final String chars;
+	private final ByteBuffer bytes;
+	private final Charset charset;
+	// per parameter: nameStart, nameEnd, valueStart, valueEnd. valueStart is -1 if there was no '='
+	private final int[] bounds;
+	private final int count;
+	private final String[] names;
+	private final String[] values;
+	private byte[] scratch;
+
+	private UrlEncodedParameters(String chars, ByteBuffer bytes, Charset charset, int[] bounds, int count) {
+		this.chars = chars;
+		this.bytes = bytes;
+		this.charset = charset;
+		this.bounds = bounds;
+		this.count = count;
+		this.names = new String[count];
+		this.values = new String[count];
+	}
+
+	/**
+	 * Parses a query string. Parameters without a value ("a" or "a=") get an empty value; parameters with an empty
+	 * name are dropped.
+	 *
+	 * @param query the raw query string, may be null
+	 */
+	public static UrlEncodedParameters parseQuery(String query) {
+		if (query == null || query.isEmpty()) {
+			return new UrlEncodedParameters(query, null, StandardCharsets.UTF_8, EMPTY_BOUNDS, 0);
+		}
+		int[] bounds = new int[16];
+		int count = 0;
+		int len = query.length();
+		int start = 0;
+		int eq = -1;
+		for (int i = 0; i <= len; i++) {
+			char c = i < len ? query.charAt(i) : '&';
+			if (c == '=' && eq < 0) {
+				eq = i;
+			} else if (c == '&') {
+				if (eq != start && i > start) {
+					bounds = ensure(bounds, count);
+					int b = count * 4;
+					bounds[b] = start;
+					bounds[b + 1] = eq < 0 ? i : eq;
+					bounds[b + 2] = eq < 0 ? -1 : eq + 1;
+					bounds[b + 3] = i;
+					count++;
+				}
+				start = i + 1;
+				eq = -1;
+			}
+		}
+		return new UrlEncodedParameters(query, null, StandardCharsets.UTF_8, bounds, count);
+	}
+
+	/**
+	 * Parses a form body. As for browsers' form posts, only parameters with a non empty name and value are kept.
+	 * The buffer is read with absolute gets and not modified; it must stay valid until all parameters are decoded.
+	 *
+	 * @param data    the body, from its position to its limit
+	 * @param charset the charset of the body, used for raw and percent-encoded bytes alike
+	 */
+	public static UrlEncodedParameters parseForm(ByteBuffer data, Charset charset) {
+		int[] bounds = new int[16];
+		int count = 0;
+		int end = data.limit();
+		int start = data.position();
+		int eq = -1;
+		for (int i = start; i <= end; i++) {
+			byte c = i < end ? data.get(i) : (byte) '&';
+			if (c == '=' && eq < 0) {
+				eq = i;
+			} else if (c == '&') {
+				if (eq > start && i > eq + 1) {
+					bounds = ensure(bounds, count);
+					int b = count * 4;
+					bounds[b] = start;
+					bounds[b + 1] = eq;
+					bounds[b + 2] = eq + 1;
+					bounds[b + 3] = i;
+					count++;
+				}
+				start = i + 1;
+				eq = -1;
+			}
+		}
+		return new UrlEncodedParameters(null, data, charset, bounds, count);
+	}
+
+	private static int[] ensure(int[] bounds, int count) {
+		if (count * 4 + 4 > bounds.length) {
+			return Arrays.copyOf(bounds, bounds.length * 2);
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return the number of parameters, counting repeated names
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the decoded name of the i-th parameter
+	 */
+	public synchronized String name(int i) {
+		String name = names[i];
+		if (name == null) {
+			name = decode(bounds[i * 4], bounds[i * 4 + 1]);
+			names[i] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * @return the decoded value of the i-th parameter, "" if it has none
+	 */
+	public synchronized String value(int i) {
+		String value = values[i];
+		if (value == null) {
+			int start = bounds[i * 4 + 2];
+			value = start < 0 ? "" : decode(start, bounds[i * 4 + 3]);
+			values[i] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the first value of the named parameter, null if there is none. Only that value is decoded.
+	 */
+	public synchronized String getFirst(String name) {
+		for (int i = 0; i < count; i++) {
+			if (nameEquals(i, name)) {
+				return value(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return all values of the named parameter, null if there are none
+	 */
+	public synchronized String[] getAll(String name) {
+		String[] result = null;
+		for (int i = 0; i < count; i++) {
+			if (nameEquals(i, name)) {
+				String v = value(i);
+				if (result == null) {
+					result = new String[]{v};
+				} else {
+					result = Arrays.copyOf(result, result.length + 1);
+					result[result.length - 1] = v;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a new, modifiable map of all parameters in order of appearance
+	 */
+	public synchronized Map<String, List<String>> toListMap() {
+		Map<String, List<String>> map = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			map.computeIfAbsent(name(i), k -> new ArrayList<>(1)).add(value(i));
+		}
+		return map;
+	}
+
+	/**
+	 * Adds all parameters to the map, appending to the arrays of names already present
+	 */
+	public synchronized void appendTo(Map<String, String[]> map) {
+		for (int i = 0; i < count; i++) {
+			String name = name(i);
+			String value = value(i);
+			String[] existing = map.get(name);
+			if (existing == null) {
+				map.put(name, new String[]{value});
+			} else {
+				String[] grown = Arrays.copyOf(existing, existing.length + 1);
+				grown[existing.length] = value;
+				map.put(name, grown);
+			}
+		}
+	}
+
+	private boolean nameEquals(int i, String name) {
+		String decoded = names[i];
+		if (decoded != null) {
+			return decoded.equals(name);
+		}
+		int start = bounds[i * 4];
+		int end = bounds[i * 4 + 1];
+		if (needsDecoding(start, end)) {
+			return name(i).equals(name);
+		}
+		if (chars != null) {
+			return end - start == name.length() && chars.regionMatches(start, name, 0, end - start);
+		}
+		// undecoded bytes can only be compared directly for ASCII names
+		if (end - start != name.length()) {
+			return false;
+		}
+		for (int k = 0; k < name.length(); k++) {
+			char c = name.charAt(k);
+			if (c > 0x7f || bytes.get(start + k) != (byte) c) {
+				return c > 0x7f && name(i).equals(name);
+			}
+		}
+		return true;
+	}
+
+	private boolean needsDecoding(int start, int end) {
+		for (int k = start; k < end; k++) {
+			int c = chars != null ? chars.charAt(k) : bytes.get(k) & 0xff;
+			if (c == '%' || c == '+' || (chars == null && c > 0x7f)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String decode(int start, int end) {
+		if (!needsDecoding(start, end)) {
+			if (chars != null) {
+				return chars.substring(start, end);
+			}
+			byte[] buf = scratch(end - start);
+			for (int k = start; k < end; k++) {
+				buf[k - start] = bytes.get(k);
+			}
+			return new String(buf, 0, end - start, StandardCharsets.ISO_8859_1);
+		}
+		// a char may take up to 3 bytes in UTF-8, a byte never grows
+		byte[] buf = scratch(chars != null ? (end - start) * 3 : end - start);
+		int n = 0;
+		int k = start;
+		while (k < end) {
+			int c = chars != null ? chars.charAt(k) : bytes.get(k) & 0xff;
+			if (c == '+') {
+				buf[n++] = ' ';
+				k++;
+			} else if (c == '%') {
+				int hi = k + 1 < end ? hex(k + 1) : -1;
+				int lo = k + 2 < end ? hex(k + 2) : -1;
+				if (hi >= 0 && lo >= 0) {
+					buf[n++] = (byte) ((hi << 4) | lo);
+					k += 3;
+				} else {
+					buf[n++] = '%';
+					k++;
+				}
+			} else if (chars != null && c > 0x7f) {
+				// non ASCII chars in a query string are taken as is
+				int cp = chars.codePointAt(k);
+				byte[] encoded = new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(encoded, 0, buf, n, encoded.length);
+				n += encoded.length;
+				k += Character.charCount(cp);
+			} else {
+				buf[n++] = (byte) c;
+				k++;
+			}
+		}
+		return new String(buf, 0, n, chars != null ? StandardCharsets.UTF_8 : charset);
+	}
+
+	private int hex(int k) {
+		int c = chars != null ? chars.charAt(k) : bytes.get(k) & 0xff;
+		if (c >= '0' && c <= '9') return c - '0';
+		if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+		return -1;
+	}
+
+	private byte[] scratch(int size) {
+		if (scratch == null || scratch.length < size) {
+			scratch = new byte[Math.max(size, 64)];
+		}
+		return scratch;
+	}
+}
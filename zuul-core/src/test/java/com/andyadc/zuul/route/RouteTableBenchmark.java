@@ -0,0 +1,87 @@
+package com.andyadc.zuul.route;
+
+import com.andyadc.zuul.util.HeaderMap;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures RouteTable.match() for tables of 100 to 10,000 routes. Route names have a fixed width, so the request
+ * paths are equally long for every table size and the numbers show what the route count itself costs.
+ * Each size is measured with paths spread over the whole table, which mostly miss the CPU caches on large tables,
+ * and with paths to 16 routes only, which stay cached.
+ * <p>
+ * Run with: java -cp zuul-core/target/classes:zuul-core/target/test-classes:&lt;slf4j-api jar&gt;
+ * com.andyadc.zuul.route.RouteTableBenchmark [iterations]
+ */
+public class RouteTableBenchmark {
+
+	private static final int[] SIZES = {100, 1000, 10000};
+	private static final int PATHS = 4096;
+	private static final int ROUNDS = 7;
+
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		System.out.printf("%8s %14s %14s%n", "routes", "spread ns/op", "hot ns/op");
+		for (int size : SIZES) {
+			RouteTable table = table(size);
+			double spread = measure(table, paths(size, size), iterations);
+			double hot = measure(table, paths(size, 16), iterations);
+			System.out.printf("%8d %14.1f %14.1f%n", size, spread, hot);
+		}
+		if (sink == 42) System.out.println();
+	}
+
+	/**
+	 * Alternates "/svcNNNNN/vN/{id}/items" and "/svcNNNNN/vN/**" routes, behind a catch-all route
+	 */
+	static RouteTable table(int size) throws Exception {
+		List<Route> routes = new ArrayList<>(size + 1);
+		String[] none = new String[0];
+		for (int i = 0; i < size; i++) {
+			String pattern = String.format("/svc%05d/v%d", i, i % 3) + (i % 2 == 0 ? "/*/items" : "/**");
+			routes.add(new Route("r" + i, pattern, new URL("http://origin-" + i), null, none, none, i));
+		}
+		routes.add(new Route("default", "/**", new URL("http://default"), null, none, none, size));
+		return new RouteTable(routes);
+	}
+
+	/**
+	 * @return request paths to the first distinct routes of the table, in random order
+	 */
+	static String[] paths(int size, int distinct) {
+		Random random = new Random(1);
+		String[] paths = new String[PATHS];
+		for (int i = 0; i < paths.length; i++) {
+			int k = random.nextInt(Math.min(size, distinct));
+			paths[i] = String.format("/svc%05d/v%d", k, k % 3) + "/12345/items";
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the median time per lookup over the rounds, after a warm up round
+	 */
+	static double measure(RouteTable table, String[] paths, int iterations) {
+		HeaderMap headers = new HeaderMap();
+		int mask = paths.length - 1;
+		double[] results = new double[ROUNDS];
+		for (int round = -1; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				Route route = table.match("GET", paths[i & mask], headers);
+				sink += route.getIndex();
+			}
+			if (round >= 0) {
+				results[round] = (System.nanoTime() - start) / (double) iterations;
+			}
+		}
+		Arrays.sort(results);
+		return results[ROUNDS / 2];
+	}
+}
@@ -0,0 +1,123 @@
+package com.andyadc.zuul.server;
+
+import com.andyadc.zuul.ExecutionStatus;
+import com.andyadc.zuul.FilterProcessor;
+import com.andyadc.zuul.FilterUsageNotifier;
+import com.andyadc.zuul.StripedFilterUsageNotifier;
+import com.andyadc.zuul.cache.ResponseCache;
+import com.andyadc.zuul.coalesce.RequestCoalescer;
+import com.andyadc.zuul.monitoring.CounterFactory;
+import com.andyadc.zuul.monitoring.LocalCounterFactory;
+import com.andyadc.zuul.monitoring.LocalTracerFactory;
+import com.andyadc.zuul.monitoring.MonitoringHelper;
+import com.andyadc.zuul.monitoring.PrometheusTextWriter;
+import com.andyadc.zuul.monitoring.TracerFactory;
+import com.andyadc.zuul.origin.ConcurrencyLimiter;
+import com.andyadc.zuul.origin.ConcurrencyLimiters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Serves the in-process Zuul counters, tracer histograms, filter usage, response cache, request coalescing and origin
+ * concurrency limit metrics in the Prometheus text format.
+ * Unless the "init-monitoring" init parameter is "false", the servlet installs the local CounterFactory and
+ * TracerFactory when it is initialized, so it should be loaded on startup.
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsServlet.class);
+
+	private static final long serialVersionUID = 2954406186385478437L;
+
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+
+		if (!"false".equals(config.getInitParameter("init-monitoring"))) {
+			MonitoringHelper.initLocal();
+			logger.info("Local Zuul monitoring initialized.");
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		resp.setContentType(PrometheusTextWriter.CONTENT_TYPE);
+		Writer out = resp.getWriter();
+		PrometheusTextWriter writer = new PrometheusTextWriter(out);
+
+		CounterFactory counterFactory = CounterFactory.instance();
+		if (counterFactory instanceof LocalCounterFactory) {
+			writer.writeCounters((LocalCounterFactory) counterFactory);
+		}
+		TracerFactory tracerFactory = TracerFactory.instance();
+		if (tracerFactory instanceof LocalTracerFactory) {
+			writer.writeTracers((LocalTracerFactory) tracerFactory);
+		}
+
+		FilterUsageNotifier notifier = FilterProcessor.getInstance().getFilterUsageNotifier();
+		if (notifier instanceof StripedFilterUsageNotifier) {
+			writer.writeType("zuul_filter_executions_total", "counter");
+			for (StripedFilterUsageNotifier.FilterUsage usage : ((StripedFilterUsageNotifier) notifier).snapshot()) {
+				for (ExecutionStatus status : ExecutionStatus.values()) {
+					writer.writeSample("zuul_filter_executions_total", usage.getCount(status),
+						"filter", usage.getFilterName(), "type", usage.getFilterType(), "status", status.name());
+				}
+			}
+		}
+
+		ResponseCache cache = ResponseCache.getInstance();
+		writer.writeType("zuul_response_cache_lookups_total", "counter");
+		writer.writeSample("zuul_response_cache_lookups_total", cache.getHits(), "result", "hit");
+		writer.writeSample("zuul_response_cache_lookups_total", cache.getRevalidations(), "result", "revalidated");
+		writer.writeSample("zuul_response_cache_lookups_total", cache.getMisses(), "result", "miss");
+		writer.writeType("zuul_response_cache_hit_bytes_total", "counter");
+		writer.writeSample("zuul_response_cache_hit_bytes_total", cache.getHitBytes());
+		writer.writeType("zuul_response_cache_stores_total", "counter");
+		writer.writeSample("zuul_response_cache_stores_total", cache.getStores());
+		writer.writeType("zuul_response_cache_rejections_total", "counter");
+		writer.writeSample("zuul_response_cache_rejections_total", cache.getRejections());
+		writer.writeType("zuul_response_cache_evictions_total", "counter");
+		writer.writeSample("zuul_response_cache_evictions_total", cache.getEvictions());
+		writer.writeType("zuul_response_cache_bytes", "gauge");
+		writer.writeSample("zuul_response_cache_bytes", cache.getBytes());
+		writer.writeType("zuul_response_cache_entries", "gauge");
+		writer.writeSample("zuul_response_cache_entries", cache.getEntryCount());
+
+		RequestCoalescer coalescer = RequestCoalescer.getInstance();
+		writer.writeType("zuul_request_coalescing_requests_total", "counter");
+		writer.writeSample("zuul_request_coalescing_requests_total", coalescer.getLeaders(), "result", "leader");
+		writer.writeSample("zuul_request_coalescing_requests_total", coalescer.getCoalesced(), "result", "coalesced");
+		writer.writeSample("zuul_request_coalescing_requests_total", coalescer.getOverflows(), "result", "overflow");
+		writer.writeSample("zuul_request_coalescing_requests_total", coalescer.getTimeouts(), "result", "timeout");
+		writer.writeType("zuul_request_coalescing_abandoned_total", "counter");
+		writer.writeSample("zuul_request_coalescing_abandoned_total", coalescer.getAbandoned());
+		writer.writeType("zuul_request_coalescing_flights", "gauge");
+		writer.writeSample("zuul_request_coalescing_flights", coalescer.getFlightCount());
+
+		List<ConcurrencyLimiter> limiters = ConcurrencyLimiters.getInstance().getLimiters();
+		if (!limiters.isEmpty()) {
+			writer.writeType("zuul_origin_concurrency_limit", "gauge");
+			for (ConcurrencyLimiter limiter : limiters) {
+				writer.writeSample("zuul_origin_concurrency_limit", limiter.getLimit(), "origin", limiter.getOrigin());
+			}
+			writer.writeType("zuul_origin_concurrency_in_flight", "gauge");
+			for (ConcurrencyLimiter limiter : limiters) {
+				writer.writeSample("zuul_origin_concurrency_in_flight", limiter.getInFlight(), "origin", limiter.getOrigin());
+			}
+			writer.writeType("zuul_origin_concurrency_rejected_total", "counter");
+			for (ConcurrencyLimiter limiter : limiters) {
+				writer.writeSample("zuul_origin_concurrency_rejected_total", limiter.getRejected(), "origin", limiter.getOrigin());
+			}
+		}
+		out.flush();
+	}
+}
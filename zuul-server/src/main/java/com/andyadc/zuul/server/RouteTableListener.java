@@ -0,0 +1,48 @@
+package com.andyadc.zuul.server;
+
+import com.andyadc.zuul.constants.ZuulConstants;
+import com.andyadc.zuul.route.RouteTableManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.IOException;
+
+/**
+ * Loads the route table file when the web application starts and stops polling it when it stops.
+ * The file is given by the "zuul.route.table.path" system property, or else the context parameter of the same name,
+ * and polled every "zuul.route.table.poll-interval-seconds" (10 by default). Without a file the route table stays
+ * empty. A file that can't be loaded fails the startup.
+ */
+public class RouteTableListener implements ServletContextListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(RouteTableListener.class);
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		String path = setting(context, ZuulConstants.ZUUL_ROUTE_TABLE_PATH);
+		if (path == null || path.isEmpty()) {
+			logger.info("No route table configured, set " + ZuulConstants.ZUUL_ROUTE_TABLE_PATH + " to load one");
+			return;
+		}
+		String interval = setting(context, ZuulConstants.ZUUL_ROUTE_TABLE_POLL_INTERVAL_SECONDS);
+		try {
+			RouteTableManager.init(path, interval == null ? 10 : Integer.parseInt(interval.trim()));
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalStateException("Could not load route table " + path, e);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		RouteTableManager.shutdown();
+	}
+
+	private static String setting(ServletContext context, String name) {
+		String value = System.getProperty(name);
+		return value != null ? value : context.getInitParameter(name);
+	}
+}
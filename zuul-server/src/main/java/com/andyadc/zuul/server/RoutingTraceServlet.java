@@ -0,0 +1,134 @@
+package com.andyadc.zuul.server;
+
+import com.andyadc.zuul.context.RoutingTrace;
+import com.andyadc.zuul.context.RoutingTraceStore;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Serves the recent routing traces kept in the RoutingTraceStore as JSON, most recent first.
+ * <ul>
+ *     <li>id - only return the trace with this id</li>
+ *     <li>uri - only return traces whose request URI starts with this prefix</li>
+ *     <li>limit - the maximum number of traces to return, 50 by default</li>
+ * </ul>
+ */
+public class RoutingTraceServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -6315770424785131541L;
+	private static final int DEFAULT_LIMIT = 50;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		List<RoutingTrace> traces;
+		String id = req.getParameter("id");
+		if (id != null) {
+			RoutingTrace trace = null;
+			try {
+				trace = RoutingTraceStore.getInstance().get(Long.parseLong(id));
+			} catch (NumberFormatException e) {
+				resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "invalid id");
+				return;
+			}
+			traces = trace == null ? Collections.emptyList() : Collections.singletonList(trace);
+		} else {
+			traces = RoutingTraceStore.getInstance().getRecent();
+		}
+
+		String uri = req.getParameter("uri");
+		int limit = DEFAULT_LIMIT;
+		String limitParam = req.getParameter("limit");
+		if (limitParam != null) {
+			try {
+				limit = Integer.parseInt(limitParam);
+			} catch (NumberFormatException e) {
+				resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "invalid limit");
+				return;
+			}
+		}
+
+		resp.setContentType("application/json; charset=utf-8");
+		Writer out = resp.getWriter();
+		out.write('[');
+		int n = 0;
+		for (RoutingTrace trace : traces) {
+			if (n >= limit) break;
+			if (uri != null && (trace.getUri() == null || !trace.getUri().startsWith(uri))) continue;
+			if (n++ > 0) out.write(',');
+			writeTrace(out, trace);
+		}
+		out.write(']');
+		out.flush();
+	}
+
+	private static void writeTrace(Writer out, RoutingTrace trace) throws IOException {
+		out.write("{\"id\":");
+		out.write(Long.toString(trace.getId()));
+		out.write(",\"method\":");
+		writeString(out, trace.getMethod());
+		out.write(",\"uri\":");
+		writeString(out, trace.getUri());
+		out.write(",\"startTimeMillis\":");
+		out.write(Long.toString(trace.getStartTimeMillis()));
+		out.write(",\"durationMicros\":");
+		out.write(Long.toString(trace.getDurationMicros()));
+		out.write(",\"status\":");
+		out.write(Integer.toString(trace.getResponseStatus()));
+		out.write(",\"filterExecutions\":");
+		writeString(out, trace.getFilterExecutions());
+		out.write(",\"droppedEvents\":");
+		out.write(Integer.toString(trace.getDroppedEvents()));
+		out.write(",\"events\":[");
+		int i = 0;
+		for (RoutingTrace.Event event : trace.getEvents()) {
+			if (i++ > 0) out.write(',');
+			out.write("{\"offsetMicros\":");
+			out.write(Long.toString(event.getOffsetMicros()));
+			out.write(",\"message\":");
+			writeString(out, event.getMessage());
+			out.write('}');
+		}
+		out.write("]}");
+	}
+
+	private static void writeString(Writer out, String s) throws IOException {
+		if (s == null) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						out.write(String.format("\\u%04x", (int) c));
+					} else {
+						out.write(c);
+					}
+			}
+		}
+		out.write('"');
+	}
+}